@@ -242,153 +242,86 @@ interface ASTVisitor {
 
 /* ---------------- Interpreter ---------------- */
 
+/*
+ * Ejecuta el programa compilado a bytecode (ver Bytecode.java) sobre una pila
+ * explícita int[] con punteros de marco (ver Execution). Una llamada de Mini
+ * no consume marcos de Java, así que la profundidad de recursión solo está
+ * limitada por el presupuesto de memoria de la pila (setStackBudget), no por -Xss.
+ */
 class Interpreter implements ASTVisitor {
-    private Map<String, FunctionNode> functions = new HashMap<>();
-    private SymbolTable globalSymtab = new SymbolTable();
-    private Stack<SymbolTable> callStack = new Stack<>();
-    private SymbolTable currentSymtab;
-    private Integer returnValue = null;
+    private CompiledProgram program;
+    private Execution execution;
+    private boolean memoize = true;
+    private boolean trace = false;
+    private boolean profiling = false;
+    private long stackBudget = Execution.DEFAULT_STACK_BUDGET;
     
-    public Interpreter() {
-        currentSymtab = globalSymtab;
-    }
+    public Interpreter() { }
+
+    public void setMemoization(boolean enabled) { this.memoize = enabled; }
+    public void setTrace(boolean enabled) { this.trace = enabled; }
+    public void setProfiling(boolean enabled) { this.profiling = enabled; }
+    public void setStackBudget(long bytes) { this.stackBudget = bytes; }
+    public CompiledProgram getProgram() { return program; }
+    public Set<String> getPureFunctions() { return program.getPureFunctions(); }
+    public long getMemoHits() { return execution.getMemoHits(); }
+    public long getMemoMisses() { return execution.getMemoMisses(); }
+    public Profiler getProfiler() { return execution.getProfiler(); }
 
     @Override
     public void visit(ProgramNode node) {
-        // Paso 1: Registrar todas las funciones
-        if (node.functions != null) {
-            for (FunctionNode func : node.functions.functions) {
-                functions.put(func.name, func);
-                System.out.println("Registrada función: " + func.returnType + " " + func.name);
-            }
+        // Paso 1: Registrar y compilar todas las funciones
+        load(node);
+        for (CompiledFunction f : program.functions()) {
+            System.out.println("Registrada función: " + f.name);
         }
         
         // Paso 2: Ejecutar main
-        FunctionNode mainFunc = functions.get("main");
-        if (mainFunc == null) {
+        if (program.function("main") == null) {
             throw new RuntimeException("No se encontró la función 'main'");
         }
         
         System.out.println("\n=== Ejecutando main() ===");
-        executeFunction(mainFunc, new ArrayList<>());
-        
-        System.out.println("\n=== Tabla de símbolos global ===");
-        globalSymtab.printTable();
+        int result = call("main");
+        if (!trace) System.out.println("Return: " + result);
     }
 
-    private Integer executeFunction(FunctionNode func, List<Integer> argValues) {
-        // Crear nuevo contexto para la función
-        SymbolTable functionSymtab = new SymbolTable();
-        callStack.push(currentSymtab);
-        currentSymtab = functionSymtab;
-        returnValue = null;
-        
-        // Asignar argumentos a parámetros
-        if (func.params != null && func.params.params != null) {
-            for (int i = 0; i < func.params.params.size(); i++) {
-                ParamNode param = func.params.params.get(i);
-                Integer argValue = argValues.get(i);
-                currentSymtab.add(param.name, param.type);
-                currentSymtab.assign(param.name, argValue);
-            }
-        }
-        
-        // Ejecutar el cuerpo de la función
-        func.body.accept(this);
-        
-        // Restaurar contexto anterior
-        currentSymtab = callStack.pop();
-        
-        return returnValue;
+    /** Compila el programa sin ejecutarlo; luego se pueden invocar funciones con call(). */
+    public void load(ProgramNode node) {
+        program = CompiledProgram.compile(node, trace, profiling);
+        execution = new Execution(program, System.out);
+        execution.setMemoization(memoize);
+        execution.setStackBudget(stackBudget);
     }
 
-    @Override
-    public void visit(FunctionListNode node) {
-        for (FunctionNode f : node.functions) {
-            f.accept(this);
-        }
+    public int call(String name, int... args) {
+        return execution.call(name, args);
     }
 
     @Override
-    public void visit(FunctionNode node) {
-        // Ya registrada en ProgramNode
-    }
-
+    public void visit(FunctionListNode node) { }
+    @Override
+    public void visit(FunctionNode node) { }
     @Override
     public void visit(ParamListNode node) { }
-
     @Override
     public void visit(ParamNode node) { }
-
     @Override
-    public void visit(BlockNode node) {
-        // Declarar e inicializar variables locales
-        if (node.decls != null) {
-            for (DeclNode d : node.decls.decls) {
-                currentSymtab.add(d.name, d.type);
-                
-                if (d.init != null) {
-                    int value = eval(d.init);
-                    currentSymtab.assign(d.name, value);
-                }
-            }
-        }
-
-        // Ejecutar sentencias
-        if (node.stmts != null) {
-            node.stmts.accept(this);
-        }
-    }
-
+    public void visit(BlockNode node) { }
     @Override
     public void visit(DeclListNode node) { }
-
     @Override
     public void visit(DeclNode node) { }
-
     @Override
-    public void visit(StmtListNode node) {
-        for (StmtNode s : node.stmts) {
-            if (returnValue != null) break;  // Si ya hay return, no ejecutar más
-            s.accept(this);
-        }
-    }
-
+    public void visit(StmtListNode node) { }
     @Override
-    public void visit(AssignNode node) {
-        int value = eval(node.expr);
-        currentSymtab.assign(node.name, value);
-    }
-
+    public void visit(AssignNode node) { }
     @Override
-    public void visit(IfNode node) {
-        int cond = eval(node.condition);
-        if (cond != 0) {
-            node.thenBlock.accept(this);
-        } else if (node.elseBlock != null) {
-            node.elseBlock.accept(this);
-        }
-    }
-
+    public void visit(IfNode node) { }
     @Override
-    public void visit(WhileNode node) {
-        while (eval(node.condition) != 0) {
-            node.body.accept(this);
-            if (returnValue != null) break;  // Si hay return en el loop, salir
-        }
-    }
-
+    public void visit(WhileNode node) { }
     @Override
-    public void visit(ReturnNode node) {
-        if (node.expr != null) {
-            returnValue = eval(node.expr);
-            System.out.println("Return: " + returnValue);
-        } else {
-            returnValue = 0;  // void return
-            System.out.println("Return (void)");
-        }
-    }
-
+    public void visit(ReturnNode node) { }
     @Override
     public void visit(BinOpNode node) { }
     @Override
@@ -399,93 +332,119 @@ class Interpreter implements ASTVisitor {
     public void visit(IdNode node) { }
     @Override
     public void visit(CallNode node) { }
-
-    private int eval(ExprNode e) {
-        if (e instanceof NumNode) {
-            return ((NumNode) e).value;
-        }
-        
-        if (e instanceof IdNode) {
-            SymbolInfo s = currentSymtab.lookup(((IdNode) e).name);
-            if (s == null || s.getValue() == null) {
-                throw new RuntimeException("Variable no inicializada: " + ((IdNode) e).name);
-            }
-            return s.getValue();
-        }
-        
-        if (e instanceof CallNode) {
-            CallNode call = (CallNode) e;
-            FunctionNode func = functions.get(call.functionName);
-            if (func == null) {
-                throw new RuntimeException("Función no definida: " + call.functionName);
-            }
-            
-            // Evaluar argumentos
-            List<Integer> argValues = new ArrayList<>();
-            for (ExprNode arg : call.args) {
-                argValues.add(eval(arg));
-            }
-            
-            // Ejecutar función
-            Integer result = executeFunction(func, argValues);
-            return result != null ? result : 0;
-        }
-        
-        if (e instanceof BinOpNode) {
-            BinOpNode b = (BinOpNode) e;
-            int l = eval(b.left);
-            int r = eval(b.right);
-            switch (b.op) {
-                case "+": return l + r;
-                case "-": return l - r;
-                case "*": return l * r;
-                case "/":
-                    if (r == 0) throw new RuntimeException("División por cero");
-                    return l / r;
-                case "==": return l == r ? 1 : 0;
-                case "<": return l < r ? 1 : 0;
-                case ">": return l > r ? 1 : 0;
-                case "&&": return (l != 0 && r != 0) ? 1 : 0;
-                case "||": return (l != 0 || r != 0) ? 1 : 0;
-            }
-        }
-        
-        if (e instanceof UnaryOpNode) {
-            UnaryOpNode u = (UnaryOpNode) e;
-            int val = eval(u.expr);
-            switch (u.op) {
-                case "-": return -val;
-                case "!": return val == 0 ? 1 : 0;
-            }
-        }
-        
-        throw new RuntimeException("Expresión no soportada: " + e);
-    }
 }
 
 /* ---------------- X86_64Generator (simplificado para múltiples funciones) ---------------- */
 
+/*
+ * Cada función se recorre dos veces. La primera pasada no emite código: solo
+ * numera posiciones y arma los intervalos de vida de variables y temporales
+ * (el operando izquierdo de un BinOpNode, los argumentos de un CallNode).
+ * LinearScanAllocator les asigna registros o, bajo presión, una posición en
+ * el marco. La segunda pasada emite el código usando esas ubicaciones.
+ */
 class X86_64Generator implements ASTVisitor {
+    static final String[] ARG_REGS = {"%rdi", "%rsi", "%rdx", "%rcx", "%r8", "%r9"};
+
     private final StringBuilder text = new StringBuilder();
-    private final Map<String, Integer> varOffsets = new LinkedHashMap<>();
-    private int stackOffset = 0;
     private int labelCounter = 0;
     private String currentFunction = null;
-    private boolean hasReturn = false;
+
+    // Estado de la función actual
+    private boolean numbering;              // true en la primera pasada
+    private int pos;
+    private Map<String, LiveInterval> varIntervals;
+    private Map<Object, LiveInterval> tempIntervals;
+    private List<Integer> callPositions;
+    private List<int[]> loops;              // {inicio, fin} de cada while
+    private List<Set<String>> loopLocals;   // variables propias de cada iteración
+    private Map<String, Integer> declPositions;
+    private String returnLabel;
+    private int stackDepth;                 // bytes apilados desde el último subq del prólogo
+
+    // Código de la función actual y estadísticas del peephole
+    private List<Insn> code;
+    private boolean peephole = true;
+    private int instructionsBefore = 0;
+    private int instructionsAfter = 0;
+    private int spilledValues = 0;
+    private int frameSlots = 0;
+    private int leafFunctions = 0;
+    private int framelessFunctions = 0;
+    private int conditionalMoves = 0;
+    private int jumps = 0;
+    private int conditionalJumps = 0;
+
+    // Perfil de ejecución: orden de las ramas, bloques y funciones frías
+    private ProfileData profile;
+    private int coldBlocks = 0;
+    private int coldFunctions = 0;
+    private int reorderedBranches = 0;
+
+    // Nivel de optimización: 0 genera directo del AST, 1 y 2 pasan por la IR SSA
+    private int optLevel = 1;
+    private PassManager passes = PassManager.forLevel(1, Collections.emptySet());
+    private StringBuilder irDump = null;
+
+    public void setPeephole(boolean enabled) { this.peephole = enabled; }
+    public void setOptLevel(int level) {
+        this.optLevel = level;
+        this.passes = PassManager.forLevel(level, Collections.emptySet());
+    }
+    public void setDumpIr(boolean enabled) { this.irDump = enabled ? new StringBuilder() : null; }
+    public int getOptLevel() { return optLevel; }
+    public PassManager getPassManager() { return passes; }
+    public String getIrDump() { return irDump != null ? irDump.toString() : ""; }
+    public int getInstructionsBefore() { return instructionsBefore; }
+    public int getInstructionsAfter() { return instructionsAfter; }
+    public int getSpilledValues() { return spilledValues; }
+    public int getFrameSlots() { return frameSlots; }
+    public int getLeafFunctions() { return leafFunctions; }
+    public int getFramelessFunctions() { return framelessFunctions; }
+    public int getConditionalMoves() { return conditionalMoves; }
+    public int getJumps() { return jumps; }
+    public int getConditionalJumps() { return conditionalJumps; }
+    public void setProfile(ProfileData profile) { this.profile = profile; }
+    public int getColdBlocks() { return coldBlocks; }
+    public int getColdFunctions() { return coldFunctions; }
+    public int getReorderedBranches() { return reorderedBranches; }
+
+    void countColdBlocks(int n) { coldBlocks += n; }
+    void countReorderedBranch() { reorderedBranches++; }
+
+    /** Suma los derrames y el tipo de marco de una función a las estadísticas del programa. */
+    void account(LinearScanAllocator allocator, Frame frame) {
+        spilledValues += allocator.getSpilled();
+        frameSlots += allocator.getSpillSlots();
+        if (frame.leaf) leafFunctions++;
+        if (frame.kind != Frame.Kind.FULL) framelessFunctions++;
+    }
 
     public String getAsm() {
         return text.toString();
     }
 
-    private void emit(String s) {
-        text.append("        ").append(s).append("\n");
+    private void emit(String op, String... args) {
+        if (numbering) return;
+        code.add(Insn.op(op, args));
+    }
+
+    private void emit(Insn insn) {
+        if (numbering) return;
+        code.add(insn);
+    }
+
+    private void emitComment(String s) {
+        if (numbering) return;
+        code.add(Insn.comment(s));
     }
 
     private void emitLabel(String label) {
-        text.append(label).append(":\n");
+        if (numbering) return;
+        code.add(Insn.label(label));
     }
 
-    private String newLabel(String prefix) {
+    String newLabel(String prefix) {
         return prefix + "_" + (labelCounter++);
     }
 
@@ -493,11 +452,26 @@ class X86_64Generator implements ASTVisitor {
     public void visit(ProgramNode node) {
         text.append(".text\n");
         text.append(".globl main\n\n");
+
+        // gvn reusa llamadas repetidas solo si la función es pura
+        PurityAnalyzer purity = new PurityAnalyzer();
+        node.accept(purity);
+        passes = PassManager.forLevel(optLevel, purity.getPureFunctions());
         
         if (node.functions != null) {
+            // Las funciones que el perfil nunca vio llamar van al final del
+            // código, lejos de las que sí corren
+            List<FunctionNode> cold = new ArrayList<>();
             for (FunctionNode func : node.functions.functions) {
-                func.accept(this);
+                if (profile != null && profile.isCold(func.name)) {
+                    cold.add(func);
+                } else {
+                    func.accept(this);
+                }
             }
+            if (!cold.isEmpty()) text.append("# funciones frías (sin llamadas en el perfil)\n\n");
+            for (FunctionNode func : cold) func.accept(this);
+            coldFunctions += cold.size();
         }
     }
 
@@ -507,64 +481,177 @@ class X86_64Generator implements ASTVisitor {
     @Override
     public void visit(FunctionNode node) {
         currentFunction = node.name;
-        varOffsets.clear();
-        stackOffset = 0;
-        hasReturn = false;
-        
-        // Prólogo de función
-        emitLabel(node.name);
-        emit("pushq   %rbp");
-        emit("movq    %rsp, %rbp");
-        
-        // Guardar parámetros en la pila
-        String[] paramRegs = {"%rdi", "%rsi", "%rdx", "%rcx", "%r8", "%r9"};
-        if (node.params != null && node.params.params != null) {
-            for (int i = 0; i < node.params.params.size() && i < 6; i++) {
-                ParamNode param = node.params.params.get(i);
-                stackOffset -= 8;
-                varOffsets.put(param.name, stackOffset);
-            }
+        if (optLevel >= 1) {
+            SsaBuilder builder = new SsaBuilder();
+            builder.setProfile(profile);
+            IrFunction f = builder.build(node);
+            passes.run(f);
+            if (irDump != null) irDump.append(f).append('\n');
+            code = new SsaLowering(f, this).lower();
+            finish();
+            return;
         }
-        
-        // Primera pasada: contar variables locales para reservar espacio
-        int localVarCount = countLocalVars(node.body);
-        int totalStackSize = Math.abs(stackOffset) + (localVarCount * 8);
-        
-        // Alinear a 16 bytes (requerido por ABI x86-64)
-        if ((totalStackSize % 16) != 0) {
-            totalStackSize += 16 - (totalStackSize % 16);
+        List<ParamNode> params = node.params != null ? node.params.params : new ArrayList<>();
+
+        // Primera pasada: intervalos de vida
+        numbering = true;
+        pos = 0;
+        varIntervals = new LinkedHashMap<>();
+        tempIntervals = new IdentityHashMap<>();
+        callPositions = new ArrayList<>();
+        loops = new ArrayList<>();
+        loopLocals = new ArrayList<>();
+        declPositions = new HashMap<>();
+        // Todos los parámetros llegan a la vez: nacen en la misma posición
+        for (int i = 0; i < params.size(); i++) {
+            LiveInterval it = new LiveInterval(params.get(i).name, 0);
+            if (i < 6) it.hint = ARG_REGS[i];
+            varIntervals.put(it.key.toString(), it);
         }
-        
-        if (totalStackSize > 0) {
-            emit("subq    $" + totalStackSize + ", %rsp");
+        pos = 1;
+        node.body.accept(this);
+        extendOverLoops();
+
+        List<LiveInterval> intervals = new ArrayList<>(varIntervals.values());
+        intervals.addAll(tempIntervals.values());
+        int[] calls = new int[callPositions.size()];
+        for (int i = 0; i < calls.length; i++) calls[i] = callPositions.get(i);
+        LinearScanAllocator allocator = new LinearScanAllocator();
+        allocator.allocate(intervals, calls);
+
+        Frame frame = new Frame(allocator, intervals, calls.length == 0);
+        account(allocator, frame);
+
+        // Segunda pasada: emitir código
+        numbering = false;
+        returnLabel = newLabel("L_ret");
+        code = new ArrayList<>();
+        frame.prologue(code, node.name);
+
+        // Llevar los parámetros desde los registros del ABI a su ubicación
+        ParallelMove entry = new ParallelMove();
+        for (int i = 0; i < params.size() && i < 6; i++) {
+            LiveInterval it = varIntervals.get(params.get(i).name);
+            if (it != null) entry.add(ARG_REGS[i], it.loc.toString());
         }
-        
-        // Guardar parámetros desde registros
-        if (node.params != null && node.params.params != null) {
-            for (int i = 0; i < node.params.params.size() && i < 6; i++) {
-                ParamNode param = node.params.params.get(i);
-                int offset = varOffsets.get(param.name);
-                emit("movq    " + paramRegs[i] + ", " + offset + "(%rbp)");
+        for (Insn mv : entry.sequence("%rax")) emit(mv);
+        // Del 7º en adelante llegan en la pila, arriba de la dirección de retorno
+        for (int i = 6; i < params.size(); i++) {
+            LiveInterval it = varIntervals.get(params.get(i).name);
+            if (it == null) continue;
+            String src = frame.stackParam(i - 6);
+            if (it.loc.isReg()) {
+                emit("movq", src, it.loc.toString());
+            } else {
+                emit("movq", src, "%rax");
+                emit("movq", "%rax", it.loc.toString());
             }
         }
+        stackDepth = 0;
         
         // Visitar cuerpo
         node.body.accept(this);
         
-        // Epílogo por defecto (solo si no hubo return explícito)
-        if (!hasReturn) {
-            if (node.returnType.equals("int")) {
-                emit("movq    $0, %rax");
+        // Caer al final de la función devuelve 0
+        if (node.returnType.equals("int")) {
+            emit("movq", "$0", "%rax");
+        }
+
+        // Epílogo único: todos los return saltan aquí
+        frame.epilogue(code, returnLabel);
+        finish();
+    }
+
+    /** Peephole y volcado del código de la función actual. */
+    private void finish() {
+        instructionsBefore += Peephole.count(code);
+        if (peephole) code = new Peephole().run(code);
+        instructionsAfter += Peephole.count(code);
+        for (Insn insn : code) {
+            if (insn.isOp() && insn.op.startsWith("cmov")) conditionalMoves++;
+            if (insn.is("jmp")) {
+                jumps++;
+            } else if (insn.isJump()) {
+                conditionalJumps++;
             }
-            emit("leave");
-            emit("ret");
         }
+
+        for (Insn insn : code) text.append(insn).append("\n");
         text.append("\n");
     }
-    
-    private int countLocalVars(BlockNode block) {
-        if (block.decls == null) return 0;
-        return block.decls.decls.size();
+
+    /* ---------- Intervalos de vida ---------- */
+
+    private void def(String name) {
+        use(name);
+    }
+
+    private void use(String name) {
+        if (!numbering) return;
+        LiveInterval it = varIntervals.get(name);
+        if (it == null) {
+            varIntervals.put(name, new LiveInterval(name, pos));
+        } else {
+            it.cover(pos);
+        }
+        pos++;
+    }
+
+    private void tempStart(Object key) {
+        if (!numbering) return;
+        // La condición de un while se emite dos veces: un mismo temporal cubre ambas
+        LiveInterval it = tempIntervals.get(key);
+        if (it != null) {
+            it.cover(pos++);
+        } else {
+            tempIntervals.put(key, new LiveInterval(key, pos++));
+        }
+    }
+
+    private void tempEnd(Object key) {
+        if (!numbering) return;
+        tempIntervals.get(key).cover(pos++);
+    }
+
+    private void callAt() {
+        if (!numbering) return;
+        callPositions.add(pos++);
+    }
+
+    /**
+     * Una variable viva en cualquier punto de un while y fuera de él se
+     * extiende a todo el bucle: el salto hacia atrás la mantiene viva.
+     * Las que se declaran con inicialización en el cuerpo, no se leen antes
+     * y no sobreviven al bucle son propias de cada iteración y no se extienden.
+     */
+    private void extendOverLoops() {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int l = 0; l < loops.size(); l++) {
+                int[] loop = loops.get(l);
+                for (LiveInterval it : varIntervals.values()) {
+                    String name = (String) it.key;
+                    if (loopLocals.get(l).contains(name) && declPositions.get(name) == it.start
+                            && it.end <= loop[1]) continue;
+                    boolean overlaps = it.start <= loop[1] && it.end >= loop[0];
+                    if (overlaps && (it.start > loop[0] || it.end < loop[1])) {
+                        it.cover(loop[0]);
+                        it.cover(loop[1]);
+                        changed = true;
+                    }
+                }
+            }
+        }
+    }
+
+    private Loc locOf(String name) {
+        LiveInterval it = varIntervals.get(name);
+        return it != null ? it.loc : null;
+    }
+
+    private Loc tempLoc(Object key) {
+        return tempIntervals.get(key).loc;
     }
 
     @Override
@@ -586,12 +673,8 @@ class X86_64Generator implements ASTVisitor {
 
     @Override
     public void visit(DeclNode node) {
-        stackOffset -= 8;
-        varOffsets.put(node.name, stackOffset);
-
         if (node.init != null) {
-            generateExpr(node.init);
-            emit("movq    %rax, " + stackOffset + "(%rbp)");
+            assign(node.name, node.init, true);
         }
     }
 
@@ -602,55 +685,191 @@ class X86_64Generator implements ASTVisitor {
 
     @Override
     public void visit(AssignNode node) {
-        generateExpr(node.expr);
-        int offset = varOffsets.get(node.name);
-        emit("movq    %rax, " + offset + "(%rbp)");
+        assign(node.name, node.expr, false);
+    }
+
+    private void assign(String name, ExprNode expr, boolean isDecl) {
+        // Constantes y variables van directo a destino, sin pasar por %rax
+        String src = isSimple(expr) ? operand(expr) : null;
+        if (src == null) generateExpr(expr);
+        if (isDecl && numbering) declPositions.putIfAbsent(name, pos);
+        def(name);
+        if (numbering) return;
+
+        String dst = locOf(name).toString();
+        if (src == null) {
+            emit("movq", "%rax", dst);
+        } else if (!src.equals(dst)) {
+            if (src.startsWith("$") || src.startsWith("%") || dst.startsWith("%")) {
+                emit("movq", src, dst);
+            } else {
+                emit("movq", src, "%rax");
+                emit("movq", "%rax", dst);
+            }
+        }
     }
 
     @Override
     public void visit(IfNode node) {
-        String elseLabel = newLabel("L_else");
+        AssignNode[] arms = selectArms(node);
+        if (arms != null) {
+            select(node.condition, arms[0], arms[1]);
+            return;
+        }
         String endLabel = newLabel("L_end");
+        if (node.elseBlock == null) {
+            // Sin else, la condición falsa salta directo al final
+            branchIfFalse(node.condition, endLabel);
+            node.thenBlock.accept(this);
+            emitLabel(endLabel);
+            return;
+        }
+        long[] counts = profile != null ? profile.branch(node) : null;
+        if (counts != null && counts[1] > counts[0]) {
+            // El else corre más: va primero y el then queda fuera del camino
+            if (!numbering) reorderedBranches++;
+            String thenLabel = newLabel("L_then");
+            branch(node.condition, true, thenLabel);
+            node.elseBlock.accept(this);
+            if (!endsInReturn(node.elseBlock)) emit("jmp", endLabel);
+            emitLabel(thenLabel);
+            node.thenBlock.accept(this);
+            emitLabel(endLabel);
+            return;
+        }
+        String elseLabel = newLabel("L_else");
 
-        generateExpr(node.condition);
-        emit("cmpq    $0, %rax");
-        emit("je      " + elseLabel);
+        branchIfFalse(node.condition, elseLabel);
 
         node.thenBlock.accept(this);
-        emit("jmp     " + endLabel);
+        // Un then que termina en return no llega al final del if
+        if (!endsInReturn(node.thenBlock)) emit("jmp", endLabel);
 
         emitLabel(elseLabel);
-        if (node.elseBlock != null) {
-            node.elseBlock.accept(this);
-        }
+        node.elseBlock.accept(this);
 
         emitLabel(endLabel);
     }
 
+    /** El bloque termina en return por todos sus caminos. */
+    private static boolean endsInReturn(BlockNode block) {
+        if (block.stmts == null || block.stmts.stmts.isEmpty()) return false;
+        StmtNode last = block.stmts.stmts.get(block.stmts.stmts.size() - 1);
+        if (last instanceof ReturnNode) return true;
+        if (last instanceof IfNode) {
+            IfNode ifn = (IfNode) last;
+            return ifn.elseBlock != null && endsInReturn(ifn.thenBlock) && endsInReturn(ifn.elseBlock);
+        }
+        return false;
+    }
+
+    /**
+     * if (c) then { x = a; } else { x = b; } con a y b operandos simples y c
+     * sin && ni ||: ramas {then, else}, o null si no tiene esa forma. Sin
+     * else, la rama que falta es x = x.
+     */
+    private static AssignNode[] selectArms(IfNode node) {
+        ExprNode c = node.condition;
+        while (c instanceof UnaryOpNode && ((UnaryOpNode) c).op.equals("!")) c = ((UnaryOpNode) c).expr;
+        if (isLogical(c)) return null;
+        AssignNode a = singleAssign(node.thenBlock);
+        if (a == null) return null;
+        AssignNode b = node.elseBlock != null ? singleAssign(node.elseBlock) : new AssignNode(a.name, new IdNode(a.name));
+        if (b == null || !b.name.equals(a.name)) return null;
+        return new AssignNode[] {a, b};
+    }
+
+    private static AssignNode singleAssign(BlockNode block) {
+        if (block.decls != null && !block.decls.decls.isEmpty()) return null;
+        if (block.stmts == null || block.stmts.stmts.size() != 1) return null;
+        StmtNode s = block.stmts.stmts.get(0);
+        if (!(s instanceof AssignNode) || !isSimple(((AssignNode) s).expr)) return null;
+        return (AssignNode) s;
+    }
+
+    /**
+     * x = c ? a : b sin saltos: las banderas de c, b al registro de x (movq
+     * no las toca) y cmovcc con a. cmovcc no admite inmediato ni destino en
+     * memoria: esos casos pasan por %rcx y %rax.
+     */
+    private void select(ExprNode cond, AssignNode then, AssignNode other) {
+        String cc = flags(cond);
+        String b = operand(other.expr);
+        String a = operand(then.expr);
+        def(then.name);
+        if (numbering) return;
+
+        String dst = locOf(then.name).toString();
+        if (dst.startsWith("%") && a.equals(dst) && !b.startsWith("$")) {
+            // a ya está en x: solo se mueve b con la condición opuesta
+            if (!b.equals(dst)) emit("cmov" + negate(cc), b, dst);
+            return;
+        }
+        String acc = dst.startsWith("%") && !a.equals(dst) ? dst : "%rax";
+        if (!b.equals(acc)) emit("movq", b, acc);
+        if (a.startsWith("$")) {
+            emit("movq", a, "%rcx");
+            a = "%rcx";
+        }
+        emit("cmov" + cc, a, acc);
+        if (!acc.equals(dst)) emit("movq", acc, dst);
+    }
+
+    /**
+     * Bucle rotado: la condición se prueba una vez antes de entrar y otra al
+     * final del cuerpo, así cada vuelta hace un solo salto condicional hacia
+     * atrás en lugar de la prueba arriba más un jmp al final del cuerpo.
+     */
     @Override
     public void visit(WhileNode node) {
-        String startLabel = newLabel("L_while");
+        String bodyLabel = newLabel("L_while");
         String endLabel = newLabel("L_end");
 
-        emitLabel(startLabel);
-        generateExpr(node.condition);
-        emit("cmpq    $0, %rax");
-        emit("je      " + endLabel);
+        branchIfFalse(node.condition, endLabel);
 
+        int loopStart = pos++;
+
+        emitLabel(bodyLabel);
         node.body.accept(this);
-        emit("jmp     " + startLabel);
+        branch(node.condition, true, bodyLabel);
 
         emitLabel(endLabel);
+
+        if (numbering) {
+            Set<String> locals = new HashSet<>();
+            if (node.body.decls != null) {
+                for (DeclNode d : node.body.decls.decls) {
+                    if (d.init != null) locals.add(d.name);
+                }
+            }
+            // La condición lee el valor de la vuelta anterior: no es propia de una vuelta
+            locals.removeAll(namesIn(node.condition));
+            loops.add(new int[] {loopStart, pos++});
+            loopLocals.add(locals);
+        }
+    }
+
+    private static Set<String> namesIn(ExprNode e) {
+        Set<String> out = new HashSet<>();
+        if (e instanceof IdNode) {
+            out.add(((IdNode) e).name);
+        } else if (e instanceof BinOpNode) {
+            out.addAll(namesIn(((BinOpNode) e).left));
+            out.addAll(namesIn(((BinOpNode) e).right));
+        } else if (e instanceof UnaryOpNode) {
+            out.addAll(namesIn(((UnaryOpNode) e).expr));
+        } else if (e instanceof CallNode) {
+            for (ExprNode a : ((CallNode) e).args) out.addAll(namesIn(a));
+        }
+        return out;
     }
 
     @Override
     public void visit(ReturnNode node) {
-        hasReturn = true;
         if (node.expr != null) {
             generateExpr(node.expr);
         }
-        emit("leave");
-        emit("ret");
+        emit("jmp", returnLabel);
     }
 
     @Override
@@ -664,97 +883,370 @@ class X86_64Generator implements ASTVisitor {
     @Override
     public void visit(CallNode node) { }
 
+    /* ---------- Selección de instrucciones ---------- */
+
+    /** Origen de un argumento ya evaluado: operando simple, %rax o su temporal. */
+    private String argSource(ExprNode arg, ExprNode inRax) {
+        if (isSimple(arg)) return operand(arg);
+        if (arg == inRax) return "%rax";
+        tempEnd(arg);
+        return numbering ? "" : tempLoc(arg).toString();
+    }
+
+    // Peso de una llamada en el etiquetado: destruye todos los caller-saved
+    private static final int CALL_NEED = 1000;
+
+    /** Hoja que puede usarse como operando inmediato o de memoria/registro. */
+    private static boolean isSimple(ExprNode e) {
+        return e instanceof NumNode || e instanceof IdNode
+            || (e instanceof UnaryOpNode && ((UnaryOpNode) e).op.equals("-")
+                && ((UnaryOpNode) e).expr instanceof NumNode);
+    }
+
+    /** Texto del operando de una hoja simple ($k, registro o posición de memoria). */
+    private String operand(ExprNode e) {
+        if (e instanceof NumNode) return "$" + ((NumNode) e).value;
+        if (e instanceof UnaryOpNode) return "$" + (-((NumNode) ((UnaryOpNode) e).expr).value);
+        String name = ((IdNode) e).name;
+        use(name);
+        Loc loc = locOf(name);
+        return loc != null ? loc.toString() : "$0";
+    }
+
+    /**
+     * Etiquetado de Sethi-Ullman: registros que necesita el subárbol. Una
+     * hoja simple a la derecha no ocupa registro (va como operando); las
+     * llamadas pesan más que cualquier expresión para evaluarlas primero y
+     * que ningún temporal tenga que sobrevivirlas.
+     */
+    private static int need(ExprNode e) {
+        if (isSimple(e)) return 1;
+        if (e instanceof CallNode) return CALL_NEED;
+        if (e instanceof UnaryOpNode) return need(((UnaryOpNode) e).expr);
+        if (e instanceof BinOpNode) {
+            BinOpNode b = (BinOpNode) e;
+            int l = need(b.left);
+            if (isSimple(b.right)) return l;
+            int r = need(b.right);
+            return l == r ? l + 1 : Math.max(l, r);
+        }
+        return 1;
+    }
+
     private void generateExpr(ExprNode e) {
-        if (e instanceof NumNode) {
-            emit("movq    $" + ((NumNode) e).value + ", %rax");
-        } else if (e instanceof IdNode) {
-            Integer offset = varOffsets.get(((IdNode) e).name);
-            if (offset != null) {
-                emit("movq    " + offset + "(%rbp), %rax");
-            }
+        if (isSimple(e)) {
+            String src = operand(e);
+            emit("movq", src, "%rax");
         } else if (e instanceof CallNode) {
             CallNode call = (CallNode) e;
-            String[] argRegs = {"%rdi", "%rsi", "%rdx", "%rcx", "%r8", "%r9"};
             
-            // Alinear stack a 16 bytes antes de call (si es necesario)
-            emit("# Preparando llamada a " + call.functionName);
-            
-            // Evaluar y colocar argumentos en registros (de izquierda a derecha)
-            for (int i = 0; i < call.args.size() && i < 6; i++) {
-                generateExpr(call.args.get(i));
-                if (i == 0) {
-                    emit("movq    %rax, %rdi");
-                } else {
-                    // Guardar temporalmente en la pila y luego mover al registro
-                    emit("pushq   %rax");
-                }
+            emitComment("Preparando llamada a " + call.functionName);
+
+            // Evaluar los argumentos compuestos, los más pesados primero; el
+            // último queda en %rax y va directo a su destino, el resto pasa
+            // por temporales. Variables y constantes se leen al final
+            int n = call.args.size();
+            List<ExprNode> complex = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                if (!isSimple(call.args.get(i))) complex.add(call.args.get(i));
             }
-            
-            // Mover argumentos apilados a sus registros correspondientes (de derecha a izquierda)
-            for (int i = call.args.size() - 1; i > 0 && i < 6; i--) {
-                emit("popq    " + argRegs[i]);
+            complex.sort((x, y) -> Integer.compare(need(y), need(x)));
+            ExprNode inRax = complex.isEmpty() ? null : complex.get(complex.size() - 1);
+            for (ExprNode arg : complex) {
+                generateExpr(arg);
+                if (arg == inRax) break;
+                tempStart(arg);
+                if (!numbering) emit("movq", "%rax", tempLoc(arg).toString());
+            }
+
+            // Del 7º en adelante van en la pila, el 7º más arriba; el relleno
+            // deja %rsp alineado a 16 bytes en el call
+            int onStack = Math.max(0, n - 6);
+            int padding = (stackDepth + 8 * onStack) % 16;
+            if (padding != 0) {
+                emit("subq", "$" + padding, "%rsp");
+                stackDepth += padding;
+            }
+            for (int i = n - 1; i >= 6; i--) {
+                emit("pushq", argSource(call.args.get(i), inRax));
+                stackDepth += 8;
+            }
+
+            // Cargar los registros de argumentos como un movimiento paralelo
+            ParallelMove moves = new ParallelMove();
+            for (int i = 0; i < n && i < 6; i++) {
+                String src = argSource(call.args.get(i), inRax);
+                if (!numbering) moves.add(src, ARG_REGS[i]);
+            }
+            for (Insn mv : moves.sequence("%rax")) emit(mv);
+            callAt();
+            emit("call", call.functionName);
+            if (onStack > 0 || padding != 0) {
+                emit("addq", "$" + (8 * onStack + padding), "%rsp");
+                stackDepth -= 8 * onStack + padding;
             }
-            
-            // Alinear stack a 16 bytes (requerido por ABI)
-            emit("andq    $-16, %rsp");
-            emit("call    " + call.functionName);
             // Resultado en %rax
         } else if (e instanceof BinOpNode) {
             BinOpNode b = (BinOpNode) e;
 
-            generateExpr(b.left);
-            emit("pushq   %rax");
-
-            generateExpr(b.right);
-            emit("popq    %rcx");
-
-            switch (b.op) {
-                case "+":
-                    emit("addq    %rcx, %rax");
-                    break;
-                case "-":
-                    emit("subq    %rax, %rcx");
-                    emit("movq    %rcx, %rax");
-                    break;
-                case "*":
-                    emit("imulq   %rcx, %rax");
-                    break;
-                case "/":
-                    emit("movq    %rax, %rbx");
-                    emit("movq    %rcx, %rax");
-                    emit("cqto");
-                    emit("idivq   %rbx");
-                    break;
-                case "==":
-                    emit("cmpq    %rax, %rcx");
-                    emit("sete    %al");
-                    emit("movzbq  %al, %rax");
-                    break;
-                case "<":
-                    emit("cmpq    %rax, %rcx");
-                    emit("setl    %al");
-                    emit("movzbq  %al, %rax");
-                    break;
-                case ">":
-                    emit("cmpq    %rax, %rcx");
-                    emit("setg    %al");
-                    emit("movzbq  %al, %rax");
-                    break;
+            if (isLogical(b)) {
+                // Valor 0/1 de && y ||: se arma con los mismos saltos que en una condición
+                String falseLabel = newLabel("L_false");
+                String endLabel = newLabel("L_end");
+                branchIfFalse(b, falseLabel);
+                emit("movq", "$1", "%rax");
+                emit("jmp", endLabel);
+                emitLabel(falseLabel);
+                emit("movq", "$0", "%rax");
+                emitLabel(endLabel);
+            } else if (isComparison(b)) {
+                setcc(compare(b));
+            } else if (isSimple(b.right)) {
+                // a op k / a op x: el operando derecho va directo en la instrucción
+                generateExpr(b.left);
+                applyOp(b.op, operand(b.right));
+            } else if (isSimple(b.left)) {
+                generateExpr(b.right);
+                applyReversed(b.op, operand(b.left));
+            } else {
+                // Ambos compuestos: primero el subárbol que necesita más registros
+                boolean leftFirst = need(b.left) >= need(b.right);
+                generateExpr(leftFirst ? b.left : b.right);
+                tempStart(b);
+                String t = numbering ? null : tempLoc(b).toString();
+                emit("movq", "%rax", t);
+                generateExpr(leftFirst ? b.right : b.left);
+                tempEnd(b);
+                if (leftFirst) {
+                    applyReversed(b.op, t);
+                } else {
+                    applyOp(b.op, t);
+                }
             }
         } else if (e instanceof UnaryOpNode) {
             UnaryOpNode u = (UnaryOpNode) e;
+            if (u.op.equals("!") && isComparison(u.expr)) {
+                setcc(negate(compare((BinOpNode) u.expr)));
+                return;
+            }
             generateExpr(u.expr);
 
             switch (u.op) {
                 case "-":
-                    emit("negq    %rax");
+                    emit("negq", "%rax");
                     break;
                 case "!":
-                    emit("cmpq    $0, %rax");
-                    emit("sete    %al");
-                    emit("movzbq  %al, %rax");
+                    emit("testq", "%rax", "%rax");
+                    setcc("e");
                     break;
             }
         }
     }
+
+    /** %rax = %rax op src */
+    private void applyOp(String op, String src) {
+        switch (op) {
+            case "+":
+                emit("addq", src, "%rax");
+                break;
+            case "-":
+                emit("subq", src, "%rax");
+                break;
+            case "*":
+                if (reduce(src != null && src.startsWith("$") ? StrengthReducer.multiply(constant(src)) : null)) break;
+                emit("imulq", src, "%rax");
+                break;
+            case "/":
+                if (reduce(src != null && src.startsWith("$") ? StrengthReducer.divide(constant(src)) : null)) break;
+                // idivq no admite inmediato (divisor 0: se conserva la falla en tiempo de ejecución)
+                if (src != null && src.startsWith("$")) {
+                    emit("movq", src, "%rcx");
+                    src = "%rcx";
+                }
+                emit("cqto");
+                emit("idivq", src);
+                break;
+        }
+    }
+
+    private static long constant(String imm) {
+        return Long.parseLong(imm.substring(1));
+    }
+
+    /** Emite la secuencia reducida, si la hay. */
+    private boolean reduce(List<Insn> seq) {
+        if (seq == null) return false;
+        for (Insn i : seq) emit(i);
+        return true;
+    }
+
+    /** %rax = src op %rax */
+    private void applyReversed(String op, String src) {
+        switch (op) {
+            case "+":
+            case "*":
+                applyOp(op, src);
+                break;
+            case "-":
+                emit("negq", "%rax");
+                emit("addq", src, "%rax");
+                break;
+            case "/":
+                emit("movq", "%rax", "%rcx");
+                emit("movq", src, "%rax");
+                emit("cqto");
+                emit("idivq", "%rcx");
+                break;
+        }
+    }
+
+    /* ---------- Comparaciones y saltos ---------- */
+
+    private static boolean isComparison(ExprNode e) {
+        if (!(e instanceof BinOpNode)) return false;
+        String op = ((BinOpNode) e).op;
+        return op.equals("==") || op.equals("<") || op.equals(">");
+    }
+
+    private static boolean isLogical(ExprNode e) {
+        if (!(e instanceof BinOpNode)) return false;
+        String op = ((BinOpNode) e).op;
+        return op.equals("&&") || op.equals("||");
+    }
+
+    private static String condCode(String op) {
+        return op.equals("==") ? "e" : op.equals("<") ? "l" : "g";
+    }
+
+    /** Condición opuesta: la que vale cuando cc no vale. */
+    static String negate(String cc) {
+        switch (cc) {
+            case "e":  return "ne";
+            case "ne": return "e";
+            case "l":  return "ge";
+            case "ge": return "l";
+            case "g":  return "le";
+            default:   return "g";     // "le"
+        }
+    }
+
+    /** Condición equivalente con los operandos intercambiados. */
+    static String swap(String cc) {
+        switch (cc) {
+            case "l":  return "g";
+            case "g":  return "l";
+            case "le": return "ge";
+            case "ge": return "le";
+            default:   return cc;
+        }
+    }
+
+    /**
+     * Emite el cmpq de una comparación y devuelve el código de condición
+     * (e, l, g, ...) que vale cuando la comparación es verdadera.
+     */
+    private String compare(BinOpNode b) {
+        String cc = condCode(b.op);
+
+        if (isSimple(b.left) && isSimple(b.right)) {
+            // Ninguno pasa por %rax si el izquierdo puede ser destino de cmpq
+            String l = operand(b.left);
+            String r = operand(b.right);
+            boolean bothInMemory = Loc.isMem(l) && Loc.isMem(r);
+            if (!l.startsWith("$") && !bothInMemory) {
+                emit("cmpq", r, l);
+                return cc;
+            }
+            if (l.startsWith("$") && !r.startsWith("$")) {
+                emit("cmpq", l, r);
+                return swap(cc);
+            }
+            emit("movq", l, "%rax");
+            emit("cmpq", r, "%rax");
+            return cc;
+        }
+
+        if (isSimple(b.right)) {
+            generateExpr(b.left);
+            emit("cmpq", operand(b.right), "%rax");
+            return cc;
+        }
+        if (isSimple(b.left)) {
+            generateExpr(b.right);
+            emit("cmpq", operand(b.left), "%rax");
+            return swap(cc);
+        }
+
+        boolean leftFirst = need(b.left) >= need(b.right);
+        generateExpr(leftFirst ? b.left : b.right);
+        tempStart(b);
+        String t = numbering ? null : tempLoc(b).toString();
+        emit("movq", "%rax", t);
+        generateExpr(leftFirst ? b.right : b.left);
+        tempEnd(b);
+        emit("cmpq", t, "%rax");
+        return leftFirst ? swap(cc) : cc;
+    }
+
+    /**
+     * Salta a `label` si la condición es falsa. Las comparaciones terminan
+     * directo en un salto condicional, sin materializar 0/1 en %rax; `!`
+     * solo invierte el salto. && y || se bajan con cortocircuito: el operando
+     * derecho no se evalúa si el izquierdo ya decide (b == 0 || a / b > 3).
+     */
+    private void branchIfFalse(ExprNode cond, String label) {
+        branch(cond, false, label);
+    }
+
+    private void branch(ExprNode cond, boolean whenTrue, String label) {
+        if (cond instanceof UnaryOpNode && ((UnaryOpNode) cond).op.equals("!")) {
+            branch(((UnaryOpNode) cond).expr, !whenTrue, label);
+        } else if (isLogical(cond)) {
+            BinOpNode b = (BinOpNode) cond;
+            // El izquierdo decide cuando es falso en && o verdadero en ||
+            boolean decidesOn = b.op.equals("||");
+            if (whenTrue == decidesOn) {
+                branch(b.left, whenTrue, label);
+                branch(b.right, whenTrue, label);
+            } else {
+                String next = newLabel("L_next");
+                branch(b.left, decidesOn, next);
+                branch(b.right, whenTrue, label);
+                emitLabel(next);
+            }
+        } else {
+            String cc = flags(cond);
+            emit("j" + (whenTrue ? cc : negate(cc)), label);
+        }
+    }
+
+    /**
+     * Deja en las banderas una condición sin && ni || y devuelve el código
+     * de condición que vale cuando es verdadera.
+     */
+    private String flags(ExprNode cond) {
+        if (cond instanceof UnaryOpNode && ((UnaryOpNode) cond).op.equals("!")) {
+            return negate(flags(((UnaryOpNode) cond).expr));
+        }
+        if (isComparison(cond)) return compare((BinOpNode) cond);
+        if (cond instanceof IdNode) {
+            // Una variable se prueba en su lugar, sin copiarla a %rax
+            String v = operand(cond);
+            if (v.startsWith("%")) {
+                emit("testq", v, v);
+            } else {
+                emit("cmpq", "$0", v);
+            }
+        } else {
+            generateExpr(cond);
+            emit("testq", "%rax", "%rax");
+        }
+        return "ne";
+    }
+
+    private void setcc(String cc) {
+        emit("set" + cc, "%al");
+        emit("movzbq", "%al", "%rax");
+    }
+
 }
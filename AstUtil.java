@@ -0,0 +1,153 @@
+import java.util.*;
+
+/* ---------------- Consultas comunes sobre el AST ---------------- */
+
+/*
+ * Reglas que comparten las pasadas sobre el AST. Están en un solo lugar
+ * para que todas decidan igual qué se puede mover, borrar o repetir.
+ */
+final class AstUtil {
+
+    private AstUtil() { }
+
+    /**
+     * Puede fallar o no terminar: llamadas y divisiones por algo distinto de
+     * una constante no nula. Una expresión así no se borra, no se adelanta
+     * y no se evalúa donde antes podía no evaluarse.
+     */
+    static boolean mayFail(ExprNode e) {
+        if (e instanceof CallNode) return true;
+        if (e instanceof UnaryOpNode) return mayFail(((UnaryOpNode) e).expr);
+        if (e instanceof BinOpNode) {
+            BinOpNode b = (BinOpNode) e;
+            if (b.op.equals("/") && !(b.right instanceof NumNode && ((NumNode) b.right).value != 0)) return true;
+            return mayFail(b.left) || mayFail(b.right);
+        }
+        return false;
+    }
+
+    /** Después de esta sentencia no se sigue ejecutando la lista. */
+    static boolean exits(StmtNode s) {
+        if (s instanceof ReturnNode) return true;
+        if (s instanceof IfNode) {
+            IfNode ifn = (IfNode) s;
+            return ifn.elseBlock != null && alwaysReturns(ifn.thenBlock) && alwaysReturns(ifn.elseBlock);
+        }
+        return false;
+    }
+
+    /** El bloque termina siempre en un return. */
+    static boolean alwaysReturns(BlockNode block) {
+        if (block.stmts == null) return false;
+        for (StmtNode s : block.stmts.stmts) {
+            if (exits(s)) return true;
+        }
+        return false;
+    }
+
+    /** Variables que el bloque asigna o declara, en cualquier nivel. */
+    static Set<String> assignedIn(BlockNode block) {
+        Set<String> out = new HashSet<>();
+        assignedIn(block, out);
+        return out;
+    }
+
+    static void assignedIn(BlockNode block, Set<String> out) {
+        if (block.decls != null) {
+            for (DeclNode d : block.decls.decls) out.add(d.name);
+        }
+        if (block.stmts == null) return;
+        for (StmtNode s : block.stmts.stmts) {
+            if (s instanceof AssignNode) {
+                out.add(((AssignNode) s).name);
+            } else if (s instanceof IfNode) {
+                assignedIn(((IfNode) s).thenBlock, out);
+                if (((IfNode) s).elseBlock != null) assignedIn(((IfNode) s).elseBlock, out);
+            } else if (s instanceof WhileNode) {
+                assignedIn(((WhileNode) s).body, out);
+            }
+        }
+    }
+
+    /** Forma textual de una expresión, para reconocer repeticiones. */
+    static String key(ExprNode e) {
+        if (e instanceof NumNode) return Integer.toString(((NumNode) e).value);
+        if (e instanceof IdNode) return ((IdNode) e).name;
+        if (e instanceof BinOpNode) {
+            BinOpNode b = (BinOpNode) e;
+            return "(" + key(b.left) + " " + b.op + " " + key(b.right) + ")";
+        }
+        if (e instanceof UnaryOpNode) {
+            UnaryOpNode u = (UnaryOpNode) e;
+            return "(" + u.op + key(u.expr) + ")";
+        }
+        CallNode c = (CallNode) e;
+        StringBuilder sb = new StringBuilder(c.functionName).append("(");
+        for (int i = 0; i < c.args.size(); i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(key(c.args.get(i)));
+        }
+        return sb.append(")").toString();
+    }
+
+    /** Copia de un bloque; names renombra variables (las que no están quedan igual). */
+    static BlockNode copy(BlockNode block, Map<String, String> names) {
+        DeclListNode decls = new DeclListNode();
+        if (block.decls != null) {
+            for (DeclNode d : block.decls.decls) {
+                decls.add(new DeclNode(names.getOrDefault(d.name, d.name), d.type, d.init != null ? copy(d.init, names) : null));
+            }
+        }
+        StmtListNode stmts = new StmtListNode();
+        if (block.stmts != null) {
+            for (StmtNode s : block.stmts.stmts) stmts.add(copy(s, names));
+        }
+        return new BlockNode(decls, stmts);
+    }
+
+    static StmtNode copy(StmtNode s, Map<String, String> names) {
+        if (s instanceof AssignNode) {
+            AssignNode a = (AssignNode) s;
+            return new AssignNode(names.getOrDefault(a.name, a.name), copy(a.expr, names));
+        }
+        if (s instanceof IfNode) {
+            IfNode ifn = (IfNode) s;
+            return new IfNode(copy(ifn.condition, names), copy(ifn.thenBlock, names),
+                              ifn.elseBlock != null ? copy(ifn.elseBlock, names) : null);
+        }
+        if (s instanceof WhileNode) {
+            WhileNode w = (WhileNode) s;
+            return new WhileNode(copy(w.condition, names), copy(w.body, names));
+        }
+        ReturnNode r = (ReturnNode) s;
+        return new ReturnNode(r.expr != null ? copy(r.expr, names) : null);
+    }
+
+    static ExprNode copy(ExprNode e, Map<String, String> names) {
+        if (e instanceof NumNode) return new NumNode(((NumNode) e).value);
+        if (e instanceof IdNode) {
+            String name = ((IdNode) e).name;
+            return new IdNode(names.getOrDefault(name, name));
+        }
+        if (e instanceof UnaryOpNode) {
+            UnaryOpNode u = (UnaryOpNode) e;
+            return new UnaryOpNode(u.op, copy(u.expr, names));
+        }
+        if (e instanceof BinOpNode) {
+            BinOpNode b = (BinOpNode) e;
+            return new BinOpNode(b.op, copy(b.left, names), copy(b.right, names));
+        }
+        CallNode c = (CallNode) e;
+        List<ExprNode> args = new ArrayList<>();
+        for (ExprNode a : c.args) args.add(copy(a, names));
+        return new CallNode(c.functionName, args);
+    }
+
+    static StmtNode copy(StmtNode s) {
+        return copy(s, Collections.<String, String>emptyMap());
+    }
+
+    static ExprNode copy(ExprNode e) {
+        return copy(e, Collections.<String, String>emptyMap());
+    }
+}
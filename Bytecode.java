@@ -0,0 +1,591 @@
+import java.util.*;
+
+/* ---------------- Bytecode del intérprete ---------------- */
+
+/*
+ * El intérprete no recorre el AST: cada FunctionNode se compila a un int[]
+ * de instrucciones para una máquina de pila que ejecuta Execution sobre
+ * una pila explícita de enteros (ver Execution.run).
+ *
+ * Formato de un marco en la pila de la VM:
+ *
+ *   fp + 0 .. fp + numSlots - 1    parámetros y variables locales
+ *   fp + numSlots + 0              fp del llamador
+ *   fp + numSlots + 1              pc de retorno
+ *   fp + numSlots + 2              índice de la función llamadora
+ *   fp + numSlots + 3 ..           pila de operandos
+ */
+final class Op {
+    static final int CONST = 0;     // CONST k        -> push k
+    static final int LOAD = 1;      // LOAD s         -> push local[s]
+    static final int LOADC = 2;     // LOADC s f      -> como LOAD, pero falla si local[f] == 0
+    static final int STORE = 3;     // STORE s        -> local[s] = pop
+    static final int SETF = 4;      // SETF f         -> local[f] = 1 (marca de inicialización)
+    static final int ADD = 5;
+    static final int SUB = 6;
+    static final int MUL = 7;
+    static final int DIV = 8;
+    static final int EQ = 9;
+    static final int LT = 10;
+    static final int GT = 11;
+    static final int NEG = 12;
+    static final int NOT = 13;
+    static final int JMP = 14;      // JMP t
+    static final int JZ = 15;       // JZ t           -> salta si pop == 0
+    static final int CALL = 16;     // CALL fn        -> los argumentos están en la pila
+    static final int RET = 17;      // RET            -> devuelve pop al llamador
+    static final int TRACE_STORE = 18;  // TRACE_STORE s  (solo con traza)
+    static final int TRACE_RET = 19;    // TRACE_RET      (solo con traza)
+    static final int PROF_ENTER = 20;   // PROF_ENTER     (solo con perfil)
+    static final int PROF_EXIT = 21;    // PROF_EXIT
+    static final int PROF_LOOP = 22;    // PROF_LOOP id k -> k = 1 entrada al while, 0 iteración
+    static final int PROF_BRANCH = 23;  // PROF_BRANCH id t -> t = 1 rama then, 0 rama else
+    static final int PROF_CALL = 24;    // PROF_CALL id   -> antes del CALL de un CallNode
+
+    static final int HEADER = 3;    // palabras de control por marco
+
+    /** Cantidad de operandos de cada instrucción. */
+    static final int[] ARITY = {
+        1, 1, 2, 1, 1, 0, 0, 0, 0, 0,
+        0, 0, 0, 0, 1, 1, 1, 0,
+        1, 0, 0, 0, 2, 2,
+        1
+    };
+
+    private Op() { }
+}
+
+/** Código de una función. Inmutable: se comparte entre ejecuciones concurrentes. */
+final class CompiledFunction {
+    final String name;
+    final int index;
+    final int numParams;
+    final int numSlots;         // parámetros + locales + marcas de inicialización
+    final int maxStack;         // profundidad máxima de la pila de operandos
+    final boolean pure;
+    private final int[] code;
+    private final String[] slotNames;
+
+    CompiledFunction(String name, int index, int numParams, int numSlots, int maxStack,
+                     int[] code, String[] slotNames, boolean pure) {
+        this.name = name;
+        this.index = index;
+        this.numParams = numParams;
+        this.numSlots = numSlots;
+        this.maxStack = maxStack;
+        this.code = code;
+        this.slotNames = slotNames;
+        this.pure = pure;
+    }
+
+    /** El arreglo es compartido: la VM lo lee pero nunca lo modifica. */
+    int[] code() { return code; }
+
+    String slotName(int slot) { return slotNames[slot]; }
+
+    /** Cantidad de instrucciones (no de palabras) del código. */
+    int instructionCount() {
+        int n = 0;
+        for (int pc = 0; pc < code.length; pc += 1 + Op.ARITY[code[pc]]) n++;
+        return n;
+    }
+
+    /** Palabras de pila que necesita un marco de esta función. */
+    int frameSize() {
+        return numSlots + Op.HEADER + maxStack;
+    }
+}
+
+/*
+ * Programa listo para ejecutar: funciones compiladas, resultado del análisis
+ * de pureza y rótulos del perfilador (con el nodo del AST de cada contador,
+ * para que ProfileData los asocie). No guarda estado de ejecución, así que
+ * una misma instancia sirve a cualquier cantidad de Execution en paralelo.
+ */
+final class CompiledProgram {
+    private final CompiledFunction[] functions;
+    private final Map<String, CompiledFunction> byName;
+    private final Set<String> pureFunctions;
+    private final String[] loopLabels;
+    private final String[] branchLabels;
+    private final String[] callLabels;
+    private final ASTNode[] loopNodes;
+    private final ASTNode[] branchNodes;
+    private final ASTNode[] callNodes;
+    final boolean traced;
+    final boolean profiled;
+
+    private CompiledProgram(List<CompiledFunction> functions, Set<String> pureFunctions,
+                            BytecodeCompiler compiler, boolean traced, boolean profiled) {
+        this.functions = functions.toArray(new CompiledFunction[0]);
+        Map<String, CompiledFunction> map = new LinkedHashMap<>();
+        for (CompiledFunction f : functions) map.put(f.name, f);
+        this.byName = Collections.unmodifiableMap(map);
+        this.pureFunctions = Collections.unmodifiableSet(new LinkedHashSet<>(pureFunctions));
+        this.loopLabels = compiler.getLoopLabels().toArray(new String[0]);
+        this.branchLabels = compiler.getBranchLabels().toArray(new String[0]);
+        this.callLabels = compiler.getCallLabels().toArray(new String[0]);
+        this.loopNodes = compiler.getLoopNodes().toArray(new ASTNode[0]);
+        this.branchNodes = compiler.getBranchNodes().toArray(new ASTNode[0]);
+        this.callNodes = compiler.getCallNodes().toArray(new ASTNode[0]);
+        this.traced = traced;
+        this.profiled = profiled;
+    }
+
+    static CompiledProgram compile(ProgramNode node, boolean trace, boolean profile) {
+        // Detectar funciones puras (candidatas a memoización)
+        PurityAnalyzer purity = new PurityAnalyzer();
+        node.accept(purity);
+
+        BytecodeCompiler compiler = new BytecodeCompiler(trace, profile, purity.getPureFunctions());
+        node.accept(compiler);
+        return new CompiledProgram(compiler.getFunctions(), purity.getPureFunctions(), compiler, trace, profile);
+    }
+
+    CompiledFunction function(int index) { return functions[index]; }
+    CompiledFunction function(String name) { return byName.get(name); }
+    int functionCount() { return functions.length; }
+    Collection<CompiledFunction> functions() { return byName.values(); }
+    Set<String> getPureFunctions() { return pureFunctions; }
+
+    /** Nodos del AST de cada contador del perfilador, indexados por id. */
+    ASTNode loopNode(int id) { return loopNodes[id]; }
+    ASTNode branchNode(int id) { return branchNodes[id]; }
+    ASTNode callNode(int id) { return callNodes[id]; }
+
+    /** Perfilador nuevo con los arreglos dimensionados para este programa. */
+    Profiler newProfiler() {
+        String[] names = new String[functions.length];
+        for (CompiledFunction f : functions) names[f.index] = f.name;
+        return new Profiler(names, loopLabels, branchLabels, callLabels);
+    }
+}
+
+/* ---------------- Compilador AST -> bytecode ---------------- */
+
+class BytecodeCompiler implements ASTVisitor {
+    private final boolean trace;
+    private final boolean profile;
+    private final Set<String> pure;
+    private final Map<String, Integer> indexOf = new HashMap<>();
+    private final List<CompiledFunction> compiled = new ArrayList<>();
+
+    // Ids de nodo para el perfilador, en orden de aparición
+    private final List<String> loopLabels = new ArrayList<>();
+    private final List<String> branchLabels = new ArrayList<>();
+    private final List<String> callLabels = new ArrayList<>();
+    private final List<ASTNode> loopNodes = new ArrayList<>();
+    private final List<ASTNode> branchNodes = new ArrayList<>();
+    private final List<ASTNode> callNodes = new ArrayList<>();
+    private int loopIds;
+    private int branchIds;
+    private int callIds;
+
+    // Estado de la función que se está compilando
+    private FunctionNode fn;
+    private int[] code;
+    private int size;
+    private int depth;
+    private int maxDepth;
+    private Map<String, Integer> slots;
+    private Map<String, Integer> flags;     // variables que requieren chequeo en tiempo de ejecución
+    private Set<String> assigned;           // variables definitivamente asignadas en este punto
+    private Set<String> needsFlag;
+    private boolean collecting;             // primera pasada: solo detectar lecturas dudosas
+
+    BytecodeCompiler(boolean trace, boolean profile, Set<String> pure) {
+        this.trace = trace;
+        this.profile = profile;
+        this.pure = pure;
+    }
+
+    public List<CompiledFunction> getFunctions() { return compiled; }
+
+    /** Rótulos de los WhileNode, indexados por id de nodo. */
+    public List<String> getLoopLabels() { return loopLabels; }
+
+    /** Rótulos de los IfNode, indexados por id de nodo. */
+    public List<String> getBranchLabels() { return branchLabels; }
+
+    /** Rótulos de los CallNode, indexados por id de nodo. */
+    public List<String> getCallLabels() { return callLabels; }
+
+    public List<ASTNode> getLoopNodes() { return loopNodes; }
+    public List<ASTNode> getBranchNodes() { return branchNodes; }
+    public List<ASTNode> getCallNodes() { return callNodes; }
+
+    @Override
+    public void visit(ProgramNode node) {
+        if (node.functions == null) return;
+
+        // Los índices se asignan antes de compilar para resolver llamadas hacia adelante
+        for (FunctionNode func : node.functions.functions) {
+            indexOf.put(func.name, indexOf.size());
+        }
+        for (FunctionNode func : node.functions.functions) {
+            func.accept(this);
+        }
+    }
+
+    @Override
+    public void visit(FunctionListNode node) { }
+
+    @Override
+    public void visit(FunctionNode node) {
+        fn = node;
+
+        // Dos pasadas: la primera descubre qué variables se leen sin estar
+        // definitivamente asignadas; solo esas pagan la marca de inicialización
+        needsFlag = new HashSet<>();
+        collecting = true;
+        int firstLoop = loopIds, firstBranch = branchIds, firstCall = callIds;
+        compileFunction(node);
+        collecting = false;
+        loopIds = firstLoop;
+        branchIds = firstBranch;
+        callIds = firstCall;
+        compileFunction(node);
+
+        int numSlots = slots.size() + flags.size();
+        String[] slotNames = new String[numSlots];
+        for (Map.Entry<String, Integer> e : slots.entrySet()) slotNames[e.getValue()] = e.getKey();
+        for (Map.Entry<String, Integer> e : flags.entrySet()) slotNames[e.getValue()] = e.getKey() + "$init";
+
+        int numParams = node.params == null ? 0 : node.params.params.size();
+        compiled.add(new CompiledFunction(node.name, indexOf.get(node.name), numParams, numSlots, maxDepth,
+                                          Arrays.copyOf(code, size), slotNames, pure.contains(node.name)));
+    }
+
+    private void compileFunction(FunctionNode node) {
+        code = new int[64];
+        size = 0;
+        depth = 0;
+        maxDepth = 1;
+        slots = new LinkedHashMap<>();
+        flags = new LinkedHashMap<>();
+        assigned = new HashSet<>();
+
+        if (node.params != null) node.params.accept(this);
+
+        // Todos los nombres de la función comparten un único ámbito plano
+        declareLocals(node.body);
+        for (String name : needsFlag) {
+            flags.put(name, slots.size() + flags.size());
+        }
+
+        if (profile) emit(Op.PROF_ENTER);
+        node.body.accept(this);
+
+        // Caer al final de la función devuelve 0 (int) o nada (void)
+        emit(Op.CONST, 0);
+        if (trace && node.returnType.equals("int")) emit(Op.TRACE_RET);
+        emitReturn();
+    }
+
+    private void emitReturn() {
+        if (profile) emit(Op.PROF_EXIT);
+        emit(Op.RET);
+    }
+
+    private void declareLocals(BlockNode block) {
+        if (block.decls != null) {
+            for (DeclNode d : block.decls.decls) slotFor(d.name);
+        }
+        if (block.stmts == null) return;
+        for (StmtNode s : block.stmts.stmts) {
+            if (s instanceof IfNode) {
+                declareLocals(((IfNode) s).thenBlock);
+                if (((IfNode) s).elseBlock != null) declareLocals(((IfNode) s).elseBlock);
+            } else if (s instanceof WhileNode) {
+                declareLocals(((WhileNode) s).body);
+            }
+        }
+    }
+
+    private int slotFor(String name) {
+        Integer s = slots.get(name);
+        if (s == null) {
+            s = slots.size();
+            slots.put(name, s);
+        }
+        return s;
+    }
+
+    /** Texto de una condición para los rótulos del perfil, con paréntesis en cada operación binaria. */
+    private static String source(ExprNode e) {
+        if (e instanceof NumNode) return String.valueOf(((NumNode) e).value);
+        if (e instanceof IdNode) return ((IdNode) e).name;
+        if (e instanceof CallNode) {
+            CallNode c = (CallNode) e;
+            StringJoiner args = new StringJoiner(", ");
+            for (ExprNode a : c.args) args.add(source(a));
+            return c.functionName + "(" + args + ")";
+        }
+        if (e instanceof BinOpNode) {
+            BinOpNode b = (BinOpNode) e;
+            return "(" + source(b.left) + " " + b.op + " " + source(b.right) + ")";
+        }
+        UnaryOpNode u = (UnaryOpNode) e;
+        return u.op + source(u.expr);
+    }
+
+    @Override
+    public void visit(ParamListNode node) {
+        for (ParamNode p : node.params) p.accept(this);
+    }
+
+    @Override
+    public void visit(ParamNode node) {
+        slotFor(node.name);
+        assigned.add(node.name);
+    }
+
+    @Override
+    public void visit(BlockNode node) {
+        if (node.decls != null) node.decls.accept(this);
+        if (node.stmts != null) node.stmts.accept(this);
+    }
+
+    @Override
+    public void visit(DeclListNode node) {
+        for (DeclNode d : node.decls) d.accept(this);
+    }
+
+    @Override
+    public void visit(DeclNode node) {
+        if (node.init != null) {
+            compileExpr(node.init);
+            store(node.name);
+        }
+    }
+
+    @Override
+    public void visit(StmtListNode node) {
+        for (StmtNode s : node.stmts) s.accept(this);
+    }
+
+    @Override
+    public void visit(AssignNode node) {
+        compileExpr(node.expr);
+        store(node.name);
+    }
+
+    @Override
+    public void visit(IfNode node) {
+        int id = branchIds++;
+        if (profile && !collecting) {
+            branchLabels.add(fn.name + ": if " + source(node.condition));
+            branchNodes.add(node);
+        }
+
+        compileExpr(node.condition);
+        int jElse = emitJump(Op.JZ);
+
+        Set<String> before = assigned;
+        assigned = new HashSet<>(before);
+        if (profile) emit(Op.PROF_BRANCH, id, 1);
+        node.thenBlock.accept(this);
+        Set<String> afterThen = assigned;
+
+        if (profile && node.elseBlock == null) {
+            // Con perfil, la rama no tomada necesita su propio contador
+            int jEnd = emitJump(Op.JMP);
+            patch(jElse, size);
+            emit(Op.PROF_BRANCH, id, 0);
+            patch(jEnd, size);
+            assigned = before;
+        } else if (node.elseBlock != null) {
+            int jEnd = emitJump(Op.JMP);
+            patch(jElse, size);
+            assigned = new HashSet<>(before);
+            if (profile) emit(Op.PROF_BRANCH, id, 0);
+            node.elseBlock.accept(this);
+            // Una rama que siempre retorna no aporta al estado posterior
+            if (AstUtil.alwaysReturns(node.elseBlock)) {
+                assigned = afterThen;
+            } else if (!AstUtil.alwaysReturns(node.thenBlock)) {
+                assigned.retainAll(afterThen);
+            }
+            patch(jEnd, size);
+        } else {
+            patch(jElse, size);
+            assigned = before;
+        }
+    }
+
+    @Override
+    public void visit(WhileNode node) {
+        int id = loopIds++;
+        if (profile && !collecting) {
+            loopLabels.add(fn.name + ": while " + source(node.condition));
+            loopNodes.add(node);
+        }
+        if (profile) emit(Op.PROF_LOOP, id, 1);
+
+        int start = size;
+        compileExpr(node.condition);
+        int jEnd = emitJump(Op.JZ);
+
+        // El cuerpo puede no ejecutarse: lo que asigna no cuenta después del bucle
+        Set<String> before = assigned;
+        assigned = new HashSet<>(before);
+        if (profile) emit(Op.PROF_LOOP, id, 0);
+        node.body.accept(this);
+        assigned = before;
+
+        emit(Op.JMP, start);
+        patch(jEnd, size);
+    }
+
+    @Override
+    public void visit(ReturnNode node) {
+        if (node.expr != null) {
+            compileExpr(node.expr);
+            if (trace) emit(Op.TRACE_RET);
+        } else {
+            emit(Op.CONST, 0);
+        }
+        emitReturn();
+        pop(1);
+    }
+
+    @Override
+    public void visit(BinOpNode node) { }
+    @Override
+    public void visit(UnaryOpNode node) { }
+    @Override
+    public void visit(NumNode node) { }
+    @Override
+    public void visit(IdNode node) { }
+    @Override
+    public void visit(CallNode node) { }
+
+    private void compileExpr(ExprNode e) {
+        if (e instanceof NumNode) {
+            emit(Op.CONST, ((NumNode) e).value);
+            push(1);
+        } else if (e instanceof IdNode) {
+            String name = ((IdNode) e).name;
+            if (!slots.containsKey(name)) {
+                throw new RuntimeException("Variable no declarada: " + name);
+            }
+            if (assigned.contains(name)) {
+                emit(Op.LOAD, slots.get(name));
+            } else if (collecting) {
+                needsFlag.add(name);
+                emit(Op.LOAD, slots.get(name));
+            } else {
+                emit(Op.LOADC, slots.get(name), flags.get(name));
+            }
+            push(1);
+        } else if (e instanceof CallNode) {
+            CallNode call = (CallNode) e;
+            Integer target = indexOf.get(call.functionName);
+            if (target == null) {
+                throw new RuntimeException("Función no definida: " + call.functionName);
+            }
+            int id = callIds++;
+            if (profile && !collecting) {
+                callLabels.add(fn.name + " -> " + call.functionName);
+                callNodes.add(call);
+            }
+            for (ExprNode arg : call.args) compileExpr(arg);
+            if (profile) emit(Op.PROF_CALL, id);
+            emit(Op.CALL, target);
+            pop(call.args.size());
+            push(1);
+        } else if (e instanceof BinOpNode) {
+            BinOpNode b = (BinOpNode) e;
+            if (b.op.equals("&&") || b.op.equals("||")) {
+                compileLogical(b);
+                return;
+            }
+            compileExpr(b.left);
+            compileExpr(b.right);
+            switch (b.op) {
+                case "+": emit(Op.ADD); break;
+                case "-": emit(Op.SUB); break;
+                case "*": emit(Op.MUL); break;
+                case "/": emit(Op.DIV); break;
+                case "==": emit(Op.EQ); break;
+                case "<": emit(Op.LT); break;
+                case ">": emit(Op.GT); break;
+                default: throw new RuntimeException("Expresión no soportada: " + b.op);
+            }
+            pop(1);
+        } else if (e instanceof UnaryOpNode) {
+            UnaryOpNode u = (UnaryOpNode) e;
+            compileExpr(u.expr);
+            switch (u.op) {
+                case "-": emit(Op.NEG); break;
+                case "!": emit(Op.NOT); break;
+                default: throw new RuntimeException("Expresión no soportada: " + u.op);
+            }
+        } else {
+            throw new RuntimeException("Expresión no soportada: " + e);
+        }
+    }
+
+    /**
+     * && y || con cortocircuito: el operando derecho solo se evalúa si el
+     * izquierdo no decide el resultado. Deja 0 o 1 en la pila.
+     *
+     *   a && b:  a; JZ f; b; JZ f; CONST 1; JMP fin; f: CONST 0; fin:
+     *   a || b:  a; NOT; JZ t; b; JZ f; t: CONST 1; JMP fin; f: CONST 0; fin:
+     */
+    private void compileLogical(BinOpNode b) {
+        boolean and = b.op.equals("&&");
+        compileExpr(b.left);
+        if (!and) emit(Op.NOT);
+        int jShort = emitJump(Op.JZ);
+        compileExpr(b.right);
+        int jFalse = emitJump(Op.JZ);
+        if (!and) patch(jShort, size);
+        emit(Op.CONST, 1);
+        push(1);
+        int jEnd = emitJump(Op.JMP);
+        pop(1);
+        patch(jFalse, size);
+        if (and) patch(jShort, size);
+        emit(Op.CONST, 0);
+        push(1);
+        patch(jEnd, size);
+    }
+
+    private void store(String name) {
+        int slot = slotFor(name);
+        emit(Op.STORE, slot);
+        pop(1);
+        if (!collecting && flags.containsKey(name)) emit(Op.SETF, flags.get(name));
+        if (trace) emit(Op.TRACE_STORE, slot);
+        assigned.add(name);
+    }
+
+    /* ---------- Emisión ---------- */
+
+    private void push(int n) {
+        depth += n;
+        if (depth > maxDepth) maxDepth = depth;
+    }
+
+    private void pop(int n) {
+        depth -= n;
+    }
+
+    private void emit(int... words) {
+        if (size + words.length > code.length) {
+            code = Arrays.copyOf(code, Math.max(code.length * 2, size + words.length));
+        }
+        for (int w : words) code[size++] = w;
+    }
+
+    private int emitJump(int op) {
+        if (op == Op.JZ) pop(1);
+        emit(op, -1);
+        return size - 1;
+    }
+
+    private void patch(int at, int target) {
+        code[at] = target;
+    }
+}
@@ -0,0 +1,320 @@
+import java.util.*;
+
+/* ---------------- Plegado y propagación de constantes ---------------- */
+
+/*
+ * Recorre cada función en orden llevando las variables locales cuyo valor se
+ * conoce en ese punto:
+ *
+ *   - Una lectura de una variable conocida se reemplaza por su valor, y los
+ *     subárboles de BinOpNode/UnaryOpNode con operandos constantes se
+ *     evalúan con la aritmética del intérprete (int de 32 bits).
+ *   - Un if cuya condición resulta constante se reemplaza por la rama que
+ *     se ejecuta; un while cuya condición es falsa al llegar desaparece.
+ *   - En un if se sigue cada rama por separado y al unirse quedan solo los
+ *     valores en que coinciden; un while olvida lo que su cuerpo asigna.
+ *
+ * Una división por cero no se pliega: sigue fallando en tiempo de
+ * ejecución. && y || solo se pliegan si el lado izquierdo es constante,
+ * porque el derecho puede no evaluarse.
+ *
+ * Todas las variables de una función comparten un ámbito plano, así que las
+ * declaraciones de una rama eliminada no se pierden: pasan sin inicializar
+ * al bloque que contenía la sentencia.
+ */
+class ConstantFolder implements ASTVisitor {
+    private int folded = 0;         // expresiones reemplazadas por su valor
+    private int propagated = 0;     // lecturas de variables reemplazadas
+    private int pruned = 0;         // if y while eliminados
+
+    public int getFolded() { return folded; }
+    public int getPropagated() { return propagated; }
+    public int getPruned() { return pruned; }
+
+    @Override
+    public void visit(ProgramNode node) {
+        if (node.functions != null) {
+            for (FunctionNode func : node.functions.functions) {
+                func.accept(this);
+            }
+        }
+    }
+
+    @Override
+    public void visit(FunctionListNode node) { }
+
+    @Override
+    public void visit(FunctionNode node) {
+        // Los parámetros llegan con valores desconocidos: el entorno arranca vacío
+        block(node.body, new HashMap<>());
+    }
+
+    /* ---------- Sentencias ---------- */
+
+    private void block(BlockNode block, Map<String, Integer> env) {
+        if (block.decls == null) block.decls = new DeclListNode();
+        for (DeclNode d : block.decls.decls) {
+            if (d.init != null) {
+                d.init = fold(d.init, env);
+                bind(env, d.name, d.init);
+            } else {
+                env.remove(d.name);
+            }
+        }
+        if (block.stmts != null) {
+            block.stmts.stmts = statements(block.stmts.stmts, env, block.decls);
+        }
+    }
+
+    /**
+     * Procesa una lista de sentencias y devuelve la lista resultante. Las
+     * declaraciones de las ramas eliminadas van a hoist.
+     */
+    private List<StmtNode> statements(List<StmtNode> in, Map<String, Integer> env, DeclListNode hoist) {
+        List<StmtNode> out = new ArrayList<>();
+        for (StmtNode s : in) {
+            if (s instanceof AssignNode) {
+                AssignNode a = (AssignNode) s;
+                a.expr = fold(a.expr, env);
+                bind(env, a.name, a.expr);
+                out.add(a);
+            } else if (s instanceof ReturnNode) {
+                ReturnNode r = (ReturnNode) s;
+                if (r.expr != null) r.expr = fold(r.expr, env);
+                out.add(r);
+            } else if (s instanceof IfNode) {
+                IfNode ifn = (IfNode) s;
+                ifn.condition = fold(ifn.condition, env);
+                if (ifn.condition instanceof NumNode) {
+                    pruned++;
+                    boolean taken = ((NumNode) ifn.condition).value != 0;
+                    BlockNode live = taken ? ifn.thenBlock : ifn.elseBlock;
+                    BlockNode dead = taken ? ifn.elseBlock : ifn.thenBlock;
+                    if (dead != null) hoistDecls(dead, hoist);
+                    if (live != null) out.addAll(inline(live, env, hoist));
+                    continue;
+                }
+                Map<String, Integer> thenEnv = new HashMap<>(env);
+                block(ifn.thenBlock, thenEnv);
+                Map<String, Integer> elseEnv = new HashMap<>(env);
+                if (ifn.elseBlock != null) block(ifn.elseBlock, elseEnv);
+                // Una rama que siempre retorna no llega a la unión
+                boolean thenExits = returns(ifn.thenBlock);
+                boolean elseExits = ifn.elseBlock != null && returns(ifn.elseBlock);
+                env.clear();
+                if (thenExits != elseExits) {
+                    env.putAll(thenExits ? elseEnv : thenEnv);
+                } else {
+                    for (Map.Entry<String, Integer> e : thenEnv.entrySet()) {
+                        if (e.getValue().equals(elseEnv.get(e.getKey()))) env.put(e.getKey(), e.getValue());
+                    }
+                }
+                out.add(ifn);
+            } else if (s instanceof WhileNode) {
+                WhileNode w = (WhileNode) s;
+                Integer entry = value(w.condition, env);
+                if (entry != null && entry == 0) {
+                    // Falsa al llegar: el cuerpo nunca se ejecuta
+                    pruned++;
+                    hoistDecls(w.body, hoist);
+                    continue;
+                }
+                // Lo que el cuerpo asigna no se conoce en ninguna vuelta
+                env.keySet().removeAll(assigned(w.body));
+                w.condition = fold(w.condition, env);
+                block(w.body, new HashMap<>(env));
+                out.add(w);
+            } else {
+                out.add(s);
+            }
+        }
+        return out;
+    }
+
+    /** Sentencias de la rama que sí se ejecuta, para ponerlas en lugar del if. */
+    private List<StmtNode> inline(BlockNode block, Map<String, Integer> env, DeclListNode hoist) {
+        List<StmtNode> stmts = new ArrayList<>();
+        if (block.decls != null) {
+            for (DeclNode d : block.decls.decls) {
+                hoist.add(new DeclNode(d.name, d.type));
+                if (d.init != null) stmts.add(new AssignNode(d.name, d.init));
+                else env.remove(d.name);
+            }
+        }
+        if (block.stmts != null) stmts.addAll(block.stmts.stmts);
+        return statements(stmts, env, hoist);
+    }
+
+    /** Declaraciones (sin inicializar) de un bloque eliminado y de los anidados. */
+    private void hoistDecls(BlockNode block, DeclListNode hoist) {
+        if (block.decls != null) {
+            for (DeclNode d : block.decls.decls) hoist.add(new DeclNode(d.name, d.type));
+        }
+        if (block.stmts == null) return;
+        for (StmtNode s : block.stmts.stmts) {
+            if (s instanceof IfNode) {
+                hoistDecls(((IfNode) s).thenBlock, hoist);
+                if (((IfNode) s).elseBlock != null) hoistDecls(((IfNode) s).elseBlock, hoist);
+            } else if (s instanceof WhileNode) {
+                hoistDecls(((WhileNode) s).body, hoist);
+            }
+        }
+    }
+
+    private static boolean returns(BlockNode block) {
+        if (block.stmts == null) return false;
+        for (StmtNode s : block.stmts.stmts) {
+            if (s instanceof ReturnNode) return true;
+        }
+        return false;
+    }
+
+    /** Variables asignadas o inicializadas en un bloque y sus anidados. */
+    private Set<String> assigned(BlockNode block) {
+        Set<String> names = new HashSet<>();
+        if (block.decls != null) {
+            for (DeclNode d : block.decls.decls) names.add(d.name);
+        }
+        if (block.stmts == null) return names;
+        for (StmtNode s : block.stmts.stmts) {
+            if (s instanceof AssignNode) {
+                names.add(((AssignNode) s).name);
+            } else if (s instanceof IfNode) {
+                names.addAll(assigned(((IfNode) s).thenBlock));
+                if (((IfNode) s).elseBlock != null) names.addAll(assigned(((IfNode) s).elseBlock));
+            } else if (s instanceof WhileNode) {
+                names.addAll(assigned(((WhileNode) s).body));
+            }
+        }
+        return names;
+    }
+
+    private static void bind(Map<String, Integer> env, String name, ExprNode value) {
+        if (value instanceof NumNode) {
+            env.put(name, ((NumNode) value).value);
+        } else {
+            env.remove(name);
+        }
+    }
+
+    /* ---------- Expresiones ---------- */
+
+    /** Pliega e en el lugar y devuelve el nodo que la reemplaza. */
+    private ExprNode fold(ExprNode e, Map<String, Integer> env) {
+        if (e instanceof IdNode) {
+            Integer v = env.get(((IdNode) e).name);
+            if (v == null) return e;
+            propagated++;
+            return new NumNode(v);
+        }
+        if (e instanceof CallNode) {
+            List<ExprNode> args = ((CallNode) e).args;
+            for (int i = 0; i < args.size(); i++) args.set(i, fold(args.get(i), env));
+            return e;
+        }
+        if (e instanceof UnaryOpNode) {
+            UnaryOpNode u = (UnaryOpNode) e;
+            u.expr = fold(u.expr, env);
+            if (!(u.expr instanceof NumNode)) return e;
+            folded++;
+            int v = ((NumNode) u.expr).value;
+            return new NumNode(u.op.equals("-") ? -v : (v == 0 ? 1 : 0));
+        }
+        if (e instanceof BinOpNode) {
+            BinOpNode b = (BinOpNode) e;
+            b.left = fold(b.left, env);
+            if (b.op.equals("&&") || b.op.equals("||")) {
+                if (!(b.left instanceof NumNode)) {
+                    b.right = fold(b.right, env);
+                    return e;
+                }
+                boolean l = ((NumNode) b.left).value != 0;
+                if (b.op.equals("&&") ? !l : l) {
+                    // El lado derecho no se evalúa
+                    folded++;
+                    return new NumNode(l ? 1 : 0);
+                }
+                b.right = fold(b.right, env);
+                if (!(b.right instanceof NumNode)) return e;
+                folded++;
+                return new NumNode(((NumNode) b.right).value != 0 ? 1 : 0);
+            }
+            b.right = fold(b.right, env);
+            if (!(b.left instanceof NumNode) || !(b.right instanceof NumNode)) return e;
+            Integer v = apply(b.op, ((NumNode) b.left).value, ((NumNode) b.right).value);
+            if (v == null) return e;
+            folded++;
+            return new NumNode(v);
+        }
+        return e;
+    }
+
+    /** Valor de e si se conoce, sin modificar el árbol. */
+    private static Integer value(ExprNode e, Map<String, Integer> env) {
+        if (e instanceof NumNode) return ((NumNode) e).value;
+        if (e instanceof IdNode) return env.get(((IdNode) e).name);
+        if (e instanceof UnaryOpNode) {
+            UnaryOpNode u = (UnaryOpNode) e;
+            Integer v = value(u.expr, env);
+            if (v == null) return null;
+            return u.op.equals("-") ? -v : (v == 0 ? 1 : 0);
+        }
+        if (e instanceof BinOpNode) {
+            BinOpNode b = (BinOpNode) e;
+            Integer l = value(b.left, env);
+            if (l == null) return null;
+            if (b.op.equals("&&") && l == 0) return 0;
+            if (b.op.equals("||") && l != 0) return 1;
+            Integer r = value(b.right, env);
+            if (r == null) return null;
+            if (b.op.equals("&&") || b.op.equals("||")) return r != 0 ? 1 : 0;
+            return apply(b.op, l, r);
+        }
+        return null;
+    }
+
+    /** a op b con la aritmética del intérprete; null si no se pliega. */
+    private static Integer apply(String op, int a, int b) {
+        switch (op) {
+            case "+":  return a + b;
+            case "-":  return a - b;
+            case "*":  return a * b;
+            case "/":  return b == 0 ? null : a / b;    // la división por cero falla al ejecutar
+            case "==": return a == b ? 1 : 0;
+            case "<":  return a < b ? 1 : 0;
+            case ">":  return a > b ? 1 : 0;
+            default:   return null;
+        }
+    }
+
+    @Override
+    public void visit(ParamListNode node) { }
+    @Override
+    public void visit(ParamNode node) { }
+    @Override
+    public void visit(BlockNode node) { }
+    @Override
+    public void visit(DeclListNode node) { }
+    @Override
+    public void visit(DeclNode node) { }
+    @Override
+    public void visit(StmtListNode node) { }
+    @Override
+    public void visit(AssignNode node) { }
+    @Override
+    public void visit(IfNode node) { }
+    @Override
+    public void visit(WhileNode node) { }
+    @Override
+    public void visit(ReturnNode node) { }
+    @Override
+    public void visit(BinOpNode node) { }
+    @Override
+    public void visit(UnaryOpNode node) { }
+    @Override
+    public void visit(NumNode node) { }
+    @Override
+    public void visit(IdNode node) { }
+    @Override
+    public void visit(CallNode node) { }
+}
@@ -0,0 +1,253 @@
+import java.util.*;
+
+/* ---------------- Eliminación de código muerto sobre el AST ---------------- */
+
+/*
+ * Análisis de variables vivas hacia atrás sobre las listas de sentencias de
+ * cada función. Se eliminan:
+ *
+ *   - las sentencias que siguen a un return (o a un if cuyas dos ramas
+ *     retornan), que nunca se ejecutan;
+ *   - las asignaciones e inicializaciones cuyo valor no se lee antes de la
+ *     próxima asignación (almacenamientos muertos);
+ *   - las declaraciones de variables que ya no se usan en ninguna parte.
+ *
+ * Un almacenamiento muerto se conserva si su expresión puede tener efectos:
+ * toda llamada (aun a una función pura, que puede no terminar) y toda
+ * división cuyo divisor no sea una constante distinta de cero. Leer una
+ * variable sin inicializar no cuenta como efecto: como en el código nativo,
+ * una lectura cuyo valor no se usa desaparece con su asignación.
+ *
+ * En un while el conjunto vivo a la entrada se calcula hasta un punto fijo
+ * antes de tocar el cuerpo, así una variable que se lee en la vuelta
+ * siguiente no se da por muerta.
+ */
+class DeadStoreEliminator implements ASTVisitor {
+    private int unreachable = 0;
+    private int deadStores = 0;
+    private int unusedDecls = 0;
+    private int instructionsSaved = 0;
+    private int slotsSaved = 0;
+
+    public int getUnreachable() { return unreachable; }
+    public int getDeadStores() { return deadStores; }
+    public int getUnusedDecls() { return unusedDecls; }
+
+    /** Instrucciones de bytecode que se ahorran. */
+    public int getInstructionsSaved() { return instructionsSaved; }
+
+    /** Posiciones del marco (variables y marcas de inicialización) que se ahorran. */
+    public int getSlotsSaved() { return slotsSaved; }
+
+    @Override
+    public void visit(ProgramNode node) {
+        if (node.functions == null) return;
+        int[] before = measure(node);
+        for (FunctionNode func : node.functions.functions) {
+            func.accept(this);
+        }
+        int[] after = measure(node);
+        instructionsSaved = before[0] - after[0];
+        slotsSaved = before[1] - after[1];
+    }
+
+    /** {instrucciones, posiciones de marco} del programa compilado a bytecode. */
+    private static int[] measure(ProgramNode node) {
+        int[] total = new int[2];
+        for (CompiledFunction f : CompiledProgram.compile(node, false, false).functions()) {
+            total[0] += f.instructionCount();
+            total[1] += f.numSlots;
+        }
+        return total;
+    }
+
+    @Override
+    public void visit(FunctionListNode node) { }
+
+    @Override
+    public void visit(FunctionNode node) {
+        block(node.body, new HashSet<>(), true);
+
+        // Declaraciones que quedaron sin ningún uso
+        Set<String> used = new HashSet<>();
+        collectNames(node.body, used);
+        removeUnusedDecls(node.body, used);
+    }
+
+    /* ---------- Variables vivas ---------- */
+
+    /**
+     * Devuelve las variables vivas a la entrada del bloque dadas las vivas a
+     * la salida. Con edit == false solo calcula, sin modificar el árbol.
+     */
+    private Set<String> block(BlockNode block, Set<String> liveOut, boolean edit) {
+        Set<String> live = block.stmts != null ? statements(block.stmts, liveOut, edit) : new HashSet<>(liveOut);
+        if (block.decls == null) return live;
+        List<DeclNode> decls = block.decls.decls;
+        for (int i = decls.size() - 1; i >= 0; i--) {
+            DeclNode d = decls.get(i);
+            if (d.init == null) continue;
+            if (!live.contains(d.name) && !AstUtil.mayFail(d.init)) {
+                if (edit) {
+                    d.init = null;
+                    deadStores++;
+                }
+                continue;
+            }
+            live.remove(d.name);
+            uses(d.init, live);
+        }
+        return live;
+    }
+
+    private Set<String> statements(StmtListNode list, Set<String> liveOut, boolean edit) {
+        List<StmtNode> stmts = edit ? list.stmts : new ArrayList<>(list.stmts);
+        if (edit) {
+            for (int i = 0; i < stmts.size() - 1; i++) {
+                if (AstUtil.exits(stmts.get(i))) {
+                    unreachable += stmts.size() - i - 1;
+                    stmts.subList(i + 1, stmts.size()).clear();
+                    break;
+                }
+            }
+        }
+
+        Set<String> live = new HashSet<>(liveOut);
+        for (int i = stmts.size() - 1; i >= 0; i--) {
+            StmtNode s = stmts.get(i);
+            if (s instanceof ReturnNode) {
+                live = new HashSet<>();
+                if (((ReturnNode) s).expr != null) uses(((ReturnNode) s).expr, live);
+            } else if (s instanceof AssignNode) {
+                AssignNode a = (AssignNode) s;
+                if (!live.contains(a.name) && !AstUtil.mayFail(a.expr)) {
+                    if (edit) {
+                        stmts.remove(i);
+                        deadStores++;
+                    }
+                    continue;
+                }
+                live.remove(a.name);
+                uses(a.expr, live);
+            } else if (s instanceof IfNode) {
+                IfNode ifn = (IfNode) s;
+                Set<String> in = block(ifn.thenBlock, live, edit);
+                if (ifn.elseBlock != null) {
+                    in.addAll(block(ifn.elseBlock, live, edit));
+                } else {
+                    in.addAll(live);
+                }
+                uses(ifn.condition, in);
+                live = in;
+            } else if (s instanceof WhileNode) {
+                WhileNode w = (WhileNode) s;
+                // Vivas en la cabecera: la salida, la condición y lo que lee el cuerpo
+                Set<String> head = new HashSet<>(live);
+                uses(w.condition, head);
+                while (true) {
+                    Set<String> next = new HashSet<>(live);
+                    uses(w.condition, next);
+                    next.addAll(block(w.body, head, false));
+                    if (next.equals(head)) break;
+                    head = next;
+                }
+                if (edit) block(w.body, head, true);
+                live = head;
+            }
+        }
+        return live;
+    }
+
+    /** Agrega a live las variables que lee e. */
+    private static void uses(ExprNode e, Set<String> live) {
+        if (e instanceof IdNode) {
+            live.add(((IdNode) e).name);
+        } else if (e instanceof BinOpNode) {
+            uses(((BinOpNode) e).left, live);
+            uses(((BinOpNode) e).right, live);
+        } else if (e instanceof UnaryOpNode) {
+            uses(((UnaryOpNode) e).expr, live);
+        } else if (e instanceof CallNode) {
+            for (ExprNode a : ((CallNode) e).args) uses(a, live);
+        }
+    }
+
+    /* ---------- Declaraciones sin uso ---------- */
+
+    /** Nombres que se leen o se asignan en el bloque y sus anidados. */
+    private static void collectNames(BlockNode block, Set<String> names) {
+        if (block.decls != null) {
+            for (DeclNode d : block.decls.decls) {
+                if (d.init != null) {
+                    names.add(d.name);
+                    uses(d.init, names);
+                }
+            }
+        }
+        if (block.stmts == null) return;
+        for (StmtNode s : block.stmts.stmts) {
+            if (s instanceof AssignNode) {
+                names.add(((AssignNode) s).name);
+                uses(((AssignNode) s).expr, names);
+            } else if (s instanceof ReturnNode) {
+                if (((ReturnNode) s).expr != null) uses(((ReturnNode) s).expr, names);
+            } else if (s instanceof IfNode) {
+                IfNode ifn = (IfNode) s;
+                uses(ifn.condition, names);
+                collectNames(ifn.thenBlock, names);
+                if (ifn.elseBlock != null) collectNames(ifn.elseBlock, names);
+            } else if (s instanceof WhileNode) {
+                uses(((WhileNode) s).condition, names);
+                collectNames(((WhileNode) s).body, names);
+            }
+        }
+    }
+
+    private void removeUnusedDecls(BlockNode block, Set<String> used) {
+        if (block.decls != null) {
+            int before = block.decls.decls.size();
+            block.decls.decls.removeIf(d -> d.init == null && !used.contains(d.name));
+            unusedDecls += before - block.decls.decls.size();
+        }
+        if (block.stmts == null) return;
+        for (StmtNode s : block.stmts.stmts) {
+            if (s instanceof IfNode) {
+                removeUnusedDecls(((IfNode) s).thenBlock, used);
+                if (((IfNode) s).elseBlock != null) removeUnusedDecls(((IfNode) s).elseBlock, used);
+            } else if (s instanceof WhileNode) {
+                removeUnusedDecls(((WhileNode) s).body, used);
+            }
+        }
+    }
+
+    @Override
+    public void visit(ParamListNode node) { }
+    @Override
+    public void visit(ParamNode node) { }
+    @Override
+    public void visit(BlockNode node) { }
+    @Override
+    public void visit(DeclListNode node) { }
+    @Override
+    public void visit(DeclNode node) { }
+    @Override
+    public void visit(StmtListNode node) { }
+    @Override
+    public void visit(AssignNode node) { }
+    @Override
+    public void visit(IfNode node) { }
+    @Override
+    public void visit(WhileNode node) { }
+    @Override
+    public void visit(ReturnNode node) { }
+    @Override
+    public void visit(BinOpNode node) { }
+    @Override
+    public void visit(UnaryOpNode node) { }
+    @Override
+    public void visit(NumNode node) { }
+    @Override
+    public void visit(IdNode node) { }
+    @Override
+    public void visit(CallNode node) { }
+}
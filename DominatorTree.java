@@ -0,0 +1,92 @@
+import java.util.*;
+
+/* ---------------- Árbol de dominadores ---------------- */
+
+/*
+ * Algoritmo iterativo de Cooper, Harvey y Kennedy ("A Simple, Fast Dominance
+ * Algorithm"): se recorre la función en orden posterior inverso intersectando
+ * los dominadores inmediatos de los predecesores hasta un punto fijo. Solo
+ * considera los bloques alcanzables desde la entrada.
+ */
+class DominatorTree {
+    private final List<Block> rpo;
+    private final Map<Block, Integer> order = new HashMap<>();
+    private final Map<Block, Block> idom = new HashMap<>();
+    private final Map<Block, List<Block>> children = new HashMap<>();
+    private final Map<Block, Integer> depth = new HashMap<>();
+
+    DominatorTree(IrFunction f) {
+        rpo = f.reversePostorder();
+        for (int i = 0; i < rpo.size(); i++) order.put(rpo.get(i), i);
+
+        Block entry = rpo.get(0);
+        idom.put(entry, entry);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 1; i < rpo.size(); i++) {
+                Block b = rpo.get(i);
+                Block newIdom = null;
+                for (Block p : b.preds) {
+                    if (!idom.containsKey(p)) continue;     // aún sin procesar o inalcanzable
+                    newIdom = newIdom == null ? p : intersect(p, newIdom);
+                }
+                if (newIdom != idom.get(b)) {
+                    idom.put(b, newIdom);
+                    changed = true;
+                }
+            }
+        }
+
+        for (Block b : rpo) children.put(b, new ArrayList<>());
+        for (int i = 1; i < rpo.size(); i++) children.get(idom.get(rpo.get(i))).add(rpo.get(i));
+        depth.put(entry, 0);
+        for (int i = 1; i < rpo.size(); i++) {
+            Block b = rpo.get(i);
+            depth.put(b, depth.get(idom.get(b)) + 1);
+        }
+    }
+
+    private Block intersect(Block a, Block b) {
+        while (a != b) {
+            while (order.get(a) > order.get(b)) a = idom.get(a);
+            while (order.get(b) > order.get(a)) b = idom.get(b);
+        }
+        return a;
+    }
+
+    /** Bloques alcanzables en orden posterior inverso. */
+    List<Block> reversePostorder() { return rpo; }
+
+    boolean isReachable(Block b) { return order.containsKey(b); }
+
+    /** Dominador inmediato (null para la entrada). */
+    Block idom(Block b) {
+        Block d = idom.get(b);
+        return d == b ? null : d;
+    }
+
+    List<Block> children(Block b) { return children.get(b); }
+
+    int depth(Block b) { return depth.get(b); }
+
+    /** a domina a b (todo camino desde la entrada hasta b pasa por a). */
+    boolean dominates(Block a, Block b) {
+        while (depth.get(b) > depth.get(a)) b = idom.get(b);
+        return a == b;
+    }
+
+    /** Recorrido del árbol en preorden (cada bloque antes que los que domina). */
+    List<Block> preorder() {
+        List<Block> out = new ArrayList<>();
+        Deque<Block> stack = new ArrayDeque<>();
+        stack.push(rpo.get(0));
+        while (!stack.isEmpty()) {
+            Block b = stack.pop();
+            out.add(b);
+            List<Block> cs = children.get(b);
+            for (int i = cs.size() - 1; i >= 0; i--) stack.push(cs.get(i));
+        }
+        return out;
+    }
+}
@@ -0,0 +1,246 @@
+import java.io.*;
+import java.util.*;
+
+/* ---------------- Estado de una ejecución de la VM ---------------- */
+
+/*
+ * Todo lo que cambia mientras corre un programa: la pila, las claves de
+ * memoización pendientes, la caché, el perfilador y la salida de la traza.
+ * El CompiledProgram es de solo lectura, así que cada hilo usa su propia
+ * Execution sobre el mismo programa sin sincronización.
+ */
+class Execution {
+    static final long DEFAULT_STACK_BUDGET = 256L * 1024 * 1024;   // bytes
+    private static final int INITIAL_STACK = 1 << 12;               // palabras
+    private static final int MAX_STACK = Integer.MAX_VALUE - 8;     // palabras: el mayor int[] posible
+
+    private final CompiledProgram program;
+    private final PrintStream out;
+    private final MemoCache memo = new MemoCache();
+    private final Profiler profiler;
+    private final ArrayList<int[]> pendingKeys = new ArrayList<>();
+    private boolean memoize = true;
+    private long stackBudget = DEFAULT_STACK_BUDGET;
+    private int[] stack = new int[0];
+
+    Execution(CompiledProgram program) {
+        this(program, System.out);
+    }
+
+    /** out recibe la traza (si el programa se compiló con traza). */
+    Execution(CompiledProgram program, PrintStream out) {
+        this.program = program;
+        this.out = out;
+        this.profiler = program.profiled ? program.newProfiler() : null;
+    }
+
+    public void setMemoization(boolean enabled) { this.memoize = enabled; }
+    public void setStackBudget(long bytes) { this.stackBudget = bytes; }
+    public long getMemoHits() { return memo.getHits(); }
+    public long getMemoMisses() { return memo.getMisses(); }
+    public Profiler getProfiler() { return profiler; }
+
+    public int call(String name, int... args) {
+        CompiledFunction f = program.function(name);
+        if (f == null) {
+            throw new RuntimeException("Función no definida: " + name);
+        }
+        if (args.length != f.numParams) {
+            throw new RuntimeException("La función '" + name + "' espera " + f.numParams + " argumentos");
+        }
+        return run(f, args);
+    }
+
+    private int[] grow(int needed) {
+        long maxWords = Math.min(stackBudget / 4, MAX_STACK);
+        if (needed > maxWords) {
+            throw new RuntimeException("Desbordamiento de pila: la recursión superó el presupuesto de "
+                                       + maxWords * 4 + " bytes");
+        }
+        int size = Math.max(INITIAL_STACK, stack.length);
+        while (size < needed) size = (int) Math.min((long) size * 2, maxWords);
+        stack = Arrays.copyOf(stack, size);
+        return stack;
+    }
+
+    /** Bucle principal de la VM: las llamadas y retornos solo mueven fp/sp/pc. */
+    private int run(CompiledFunction entry, int[] args) {
+        CompiledProgram program = this.program;
+        Profiler prof = profiler;
+        PrintStream out = this.out;
+        int[] stack = this.stack;
+        pendingKeys.clear();
+
+        CompiledFunction f = entry;
+        int[] code = f.code();
+        int fp = 0;
+        if (f.frameSize() > stack.length) stack = grow(f.frameSize());
+        System.arraycopy(args, 0, stack, 0, args.length);
+        Arrays.fill(stack, args.length, f.numSlots, 0);
+        int h = f.numSlots;
+        stack[h] = -1;          // marco base: no hay llamador
+        stack[h + 1] = 0;
+        stack[h + 2] = 0;
+        int sp = h + Op.HEADER;
+        int pc = 0;
+
+        while (true) {
+            switch (code[pc]) {
+                case Op.CONST:
+                    stack[sp++] = code[pc + 1];
+                    pc += 2;
+                    break;
+                case Op.LOAD:
+                    stack[sp++] = stack[fp + code[pc + 1]];
+                    pc += 2;
+                    break;
+                case Op.LOADC:
+                    if (stack[fp + code[pc + 2]] == 0) {
+                        throw new RuntimeException("Variable no inicializada: " + f.slotName(code[pc + 1]));
+                    }
+                    stack[sp++] = stack[fp + code[pc + 1]];
+                    pc += 3;
+                    break;
+                case Op.STORE:
+                    stack[fp + code[pc + 1]] = stack[--sp];
+                    pc += 2;
+                    break;
+                case Op.SETF:
+                    stack[fp + code[pc + 1]] = 1;
+                    pc += 2;
+                    break;
+                case Op.ADD:
+                    sp--;
+                    stack[sp - 1] += stack[sp];
+                    pc++;
+                    break;
+                case Op.SUB:
+                    sp--;
+                    stack[sp - 1] -= stack[sp];
+                    pc++;
+                    break;
+                case Op.MUL:
+                    sp--;
+                    stack[sp - 1] *= stack[sp];
+                    pc++;
+                    break;
+                case Op.DIV:
+                    sp--;
+                    if (stack[sp] == 0) throw new RuntimeException("División por cero");
+                    stack[sp - 1] /= stack[sp];
+                    pc++;
+                    break;
+                case Op.EQ:
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] == stack[sp] ? 1 : 0;
+                    pc++;
+                    break;
+                case Op.LT:
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] < stack[sp] ? 1 : 0;
+                    pc++;
+                    break;
+                case Op.GT:
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] > stack[sp] ? 1 : 0;
+                    pc++;
+                    break;
+                case Op.NEG:
+                    stack[sp - 1] = -stack[sp - 1];
+                    pc++;
+                    break;
+                case Op.NOT:
+                    stack[sp - 1] = stack[sp - 1] == 0 ? 1 : 0;
+                    pc++;
+                    break;
+                case Op.JMP:
+                    pc = code[pc + 1];
+                    break;
+                case Op.JZ:
+                    pc = stack[--sp] == 0 ? code[pc + 1] : pc + 2;
+                    break;
+                case Op.CALL: {
+                    CompiledFunction g = program.function(code[pc + 1]);
+                    int newFp = sp - g.numParams;
+                    int memoFlag = 0;
+
+                    // Funciones puras: consultar la caché antes de ejecutar
+                    if (memoize && g.pure) {
+                        int[] key = Arrays.copyOfRange(stack, newFp, sp);
+                        Integer cached = memo.lookup(g.name, key);
+                        if (cached != null) {
+                            sp = newFp;
+                            stack[sp++] = cached;
+                            pc += 2;
+                            break;
+                        }
+                        pendingKeys.add(key);
+                        memoFlag = 1;
+                    }
+
+                    if (newFp + g.frameSize() > stack.length) stack = grow(newFp + g.frameSize());
+                    Arrays.fill(stack, sp, newFp + g.numSlots, 0);
+                    h = newFp + g.numSlots;
+                    stack[h] = fp;
+                    stack[h + 1] = pc + 2;
+                    stack[h + 2] = (f.index << 1) | memoFlag;
+                    fp = newFp;
+                    sp = h + Op.HEADER;
+                    f = g;
+                    code = g.code();
+                    pc = 0;
+                    break;
+                }
+                case Op.RET: {
+                    int value = stack[--sp];
+                    h = fp + f.numSlots;
+                    int callerFp = stack[h];
+                    if (callerFp < 0) {
+                        return value;
+                    }
+                    int link = stack[h + 2];
+                    if ((link & 1) != 0) {
+                        memo.store(f.name, pendingKeys.remove(pendingKeys.size() - 1), value);
+                    }
+                    sp = fp;
+                    stack[sp++] = value;
+                    pc = stack[h + 1];
+                    fp = callerFp;
+                    f = program.function(link >>> 1);
+                    code = f.code();
+                    break;
+                }
+                case Op.TRACE_STORE:
+                    out.println("Asignación: " + f.slotName(code[pc + 1]) + " = " + stack[fp + code[pc + 1]]);
+                    pc += 2;
+                    break;
+                case Op.TRACE_RET:
+                    out.println("Return: " + stack[sp - 1]);
+                    pc++;
+                    break;
+                case Op.PROF_ENTER:
+                    prof.enter(f.index);
+                    pc++;
+                    break;
+                case Op.PROF_EXIT:
+                    prof.exit();
+                    pc++;
+                    break;
+                case Op.PROF_LOOP:
+                    prof.loop(code[pc + 1], code[pc + 2] != 0);
+                    pc += 3;
+                    break;
+                case Op.PROF_BRANCH:
+                    prof.branch(code[pc + 1], code[pc + 2] != 0);
+                    pc += 3;
+                    break;
+                case Op.PROF_CALL:
+                    prof.call(code[pc + 1]);
+                    pc += 2;
+                    break;
+                default:
+                    throw new RuntimeException("Instrucción inválida " + code[pc] + " en " + f.name);
+            }
+        }
+    }
+}
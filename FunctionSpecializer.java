@@ -0,0 +1,421 @@
+import java.util.*;
+
+/* ---------------- Propagación interprocedural de constantes ---------------- */
+
+/*
+ * Lleva los argumentos constantes de las llamadas al cuerpo de la función
+ * llamada, antes de la recursión de cola y de la expansión en línea:
+ *
+ *  1. Propagación: si todas las llamadas a una función pasan la misma
+ *     constante en un parámetro, el parámetro pasa a ser una local con ese
+ *     valor y el argumento desaparece de las llamadas.
+ *
+ *       int potencia(int b, int e) { ... }     con solo potencia(2, ...)
+ *       ->  int potencia(int e) { int b = 2; ... }
+ *
+ *  2. Especialización: si las llamadas no coinciden, cada combinación de
+ *     argumentos constantes puede tener su clon de la función con esos
+ *     parámetros fijos, y las llamadas con esa combinación pasan al clon:
+ *
+ *       potencia(2, n)   ->   potencia_b2(n)
+ *
+ * Un argumento es constante si es un número o una local de la función que
+ * llama inicializada con un número en su bloque principal y nunca
+ * reasignada (como los parámetros ya fijados). Así las constantes siguen
+ * por el grafo de llamadas: dentro de potencia_b2, potencia(b, e - 1) pasa
+ * b = 2 y también se redirige al clon. En una llamada de una función a sí
+ * misma, pasar el mismo parámetro sin cambios no rompe la coincidencia. Se
+ * repite hasta que nada cambia.
+ *
+ * Solo se clonan las combinaciones calientes, de la más frecuente a la
+ * menos, según una estimación estática: main corre una vez, cada while que
+ * rodea una llamada la multiplica por LOOP_WEIGHT y la frecuencia de una
+ * función es la suma de la de sus llamadas (las de una función a sí misma
+ * no suman). Una combinación es caliente desde HOT_WEIGHT, y se clona
+ * mientras entre en el presupuesto: la función no supera MAX_CLONE_SIZE
+ * nodos del AST, no tiene más de MAX_CLONES clones y la suma de los clones
+ * no pasa de BUDGET nodos. main nunca cambia de firma. Las constantes
+ * quedan como locales del clon y las pliegan ConstantFolder y las pasadas
+ * siguientes como cualquier otra.
+ */
+class FunctionSpecializer implements ASTVisitor {
+    static final int MAX_CLONE_SIZE = 120;
+    static final int MAX_CLONES = 4;
+    static final int BUDGET = 480;
+    static final long HOT_WEIGHT = 10;     // una llamada dentro de un while ya es caliente
+    private static final long LOOP_WEIGHT = 10;
+    private static final long MAX_WEIGHT = 1000000;
+    private static final int MAX_ROUNDS = 8;
+
+    private final Map<String, FunctionNode> functions = new LinkedHashMap<>();
+    private final Map<String, Map<String, String>> clones = new HashMap<>();   // función -> "b = 2" -> clon
+    private final List<String> report = new ArrayList<>();
+    private final Set<String> rejected = new HashSet<>();
+    private int propagated = 0;     // parámetros fijados en su función
+    private int cloned = 0;
+    private int redirected = 0;     // llamadas que pasaron a un clon
+    private int spent = 0;          // nodos de los clones
+
+    private ProgramNode program;
+
+    public List<String> getReport() { return report; }
+    public int getPropagated() { return propagated; }
+    public int getClones() { return cloned; }
+    public int getRedirected() { return redirected; }
+
+    /** Una llamada y lo que se sabe de sus argumentos. */
+    private static final class Site {
+        final FunctionNode caller;
+        final CallNode call;
+        final long weight;
+        final Map<Integer, Integer> constants = new TreeMap<>();   // posición -> valor
+        final Set<Integer> passthrough = new HashSet<>();          // f(..., p, ...) dentro de f
+
+        Site(FunctionNode caller, CallNode call, long weight) {
+            this.caller = caller;
+            this.call = call;
+            this.weight = weight;
+        }
+
+        boolean recursive() { return caller.name.equals(call.functionName); }
+    }
+
+    @Override
+    public void visit(ProgramNode node) {
+        if (node.functions == null) return;
+        program = node;
+        for (FunctionNode f : node.functions.functions) functions.put(f.name, f);
+        for (int round = 0; round < MAX_ROUNDS; round++) {
+            boolean changed = false;
+            while (propagate(sites())) changed = true;
+            if (specialize(sites())) changed = true;
+            if (!changed) break;
+        }
+    }
+
+    @Override
+    public void visit(FunctionListNode node) { }
+
+    @Override
+    public void visit(FunctionNode node) { }
+
+    /* ---------- Llamadas ---------- */
+
+    private List<Site> sites() {
+        List<Site> out = new ArrayList<>();
+        for (FunctionNode f : functions.values()) {
+            Map<String, Integer> known = knownConstants(f);
+            Set<String> assigned = new HashSet<>();
+            assignedIn(f.body, assigned);
+            List<Site> own = new ArrayList<>();
+            calls(f, f.body, 1, own);
+            for (Site s : own) {
+                FunctionNode callee = functions.get(s.call.functionName);
+                if (callee == null) continue;
+                List<ParamNode> params = params(callee);
+                for (int i = 0; i < s.call.args.size() && i < params.size(); i++) {
+                    ExprNode a = s.call.args.get(i);
+                    Integer v = constant(a, known);
+                    if (v != null) {
+                        s.constants.put(i, v);
+                    } else if (s.recursive() && a instanceof IdNode
+                               && ((IdNode) a).name.equals(params.get(i).name)
+                               && !assigned.contains(params.get(i).name)) {
+                        s.passthrough.add(i);
+                    }
+                }
+                out.add(s);
+            }
+        }
+        return out;
+    }
+
+    private static void calls(FunctionNode f, BlockNode block, long weight, List<Site> out) {
+        if (block.decls != null) {
+            for (DeclNode d : block.decls.decls) if (d.init != null) calls(f, d.init, weight, out);
+        }
+        if (block.stmts == null) return;
+        for (StmtNode s : block.stmts.stmts) {
+            if (s instanceof AssignNode) {
+                calls(f, ((AssignNode) s).expr, weight, out);
+            } else if (s instanceof ReturnNode) {
+                if (((ReturnNode) s).expr != null) calls(f, ((ReturnNode) s).expr, weight, out);
+            } else if (s instanceof IfNode) {
+                IfNode ifn = (IfNode) s;
+                calls(f, ifn.condition, weight, out);
+                calls(f, ifn.thenBlock, weight, out);
+                if (ifn.elseBlock != null) calls(f, ifn.elseBlock, weight, out);
+            } else if (s instanceof WhileNode) {
+                WhileNode w = (WhileNode) s;
+                long inner = Math.min(weight * LOOP_WEIGHT, MAX_WEIGHT);
+                calls(f, w.condition, inner, out);
+                calls(f, w.body, inner, out);
+            }
+        }
+    }
+
+    private static void calls(FunctionNode f, ExprNode e, long weight, List<Site> out) {
+        if (e instanceof CallNode) {
+            out.add(new Site(f, (CallNode) e, weight));
+            for (ExprNode a : ((CallNode) e).args) calls(f, a, weight, out);
+        } else if (e instanceof BinOpNode) {
+            calls(f, ((BinOpNode) e).left, weight, out);
+            calls(f, ((BinOpNode) e).right, weight, out);
+        } else if (e instanceof UnaryOpNode) {
+            calls(f, ((UnaryOpNode) e).expr, weight, out);
+        }
+    }
+
+    /** Locales del bloque principal inicializadas con un número y nunca reasignadas. */
+    private static Map<String, Integer> knownConstants(FunctionNode f) {
+        Map<String, Integer> out = new HashMap<>();
+        if (f.body.decls == null) return out;
+        Set<String> assigned = new HashSet<>();
+        assignedIn(f.body, assigned);
+        for (DeclNode d : f.body.decls.decls) {
+            Integer v = d.init != null ? constant(d.init, Collections.emptyMap()) : null;
+            if (v != null && !assigned.contains(d.name)) out.put(d.name, v);
+        }
+        return out;
+    }
+
+    private static Integer constant(ExprNode e, Map<String, Integer> known) {
+        if (e instanceof NumNode) return ((NumNode) e).value;
+        if (e instanceof IdNode) return known.get(((IdNode) e).name);
+        if (e instanceof UnaryOpNode && ((UnaryOpNode) e).op.equals("-")
+                && ((UnaryOpNode) e).expr instanceof NumNode) {
+            return -((NumNode) ((UnaryOpNode) e).expr).value;
+        }
+        return null;
+    }
+
+    /** Variables asignadas con una sentencia en cualquier nivel del bloque. */
+    private static void assignedIn(BlockNode block, Set<String> out) {
+        if (block.stmts == null) return;
+        for (StmtNode s : block.stmts.stmts) {
+            if (s instanceof AssignNode) {
+                out.add(((AssignNode) s).name);
+            } else if (s instanceof IfNode) {
+                assignedIn(((IfNode) s).thenBlock, out);
+                if (((IfNode) s).elseBlock != null) assignedIn(((IfNode) s).elseBlock, out);
+            } else if (s instanceof WhileNode) {
+                assignedIn(((WhileNode) s).body, out);
+            }
+        }
+    }
+
+    private static List<ParamNode> params(FunctionNode f) {
+        return f.params != null ? f.params.params : Collections.emptyList();
+    }
+
+    /* ---------- 1. Propagación ---------- */
+
+    private boolean propagate(List<Site> all) {
+        Map<String, List<Site>> byCallee = new LinkedHashMap<>();
+        for (Site s : all) byCallee.computeIfAbsent(s.call.functionName, k -> new ArrayList<>()).add(s);
+
+        for (Map.Entry<String, List<Site>> e : byCallee.entrySet()) {
+            FunctionNode f = functions.get(e.getKey());
+            if (f.name.equals("main")) continue;
+            List<Site> sites = e.getValue();
+            Map<Integer, Integer> agreed = new TreeMap<>();
+            for (int i = 0; i < params(f).size(); i++) {
+                Integer value = null;
+                boolean same = true;
+                for (Site s : sites) {
+                    if (s.passthrough.contains(i)) continue;
+                    Integer v = s.constants.get(i);
+                    if (v == null || (value != null && !value.equals(v))) {
+                        same = false;
+                        break;
+                    }
+                    value = v;
+                }
+                // Solo llamadas recursivas que lo pasan igual: no hay de dónde sacar el valor
+                if (same && value != null) agreed.put(i, value);
+            }
+            if (agreed.isEmpty()) continue;
+
+            for (Map.Entry<Integer, Integer> a : agreed.entrySet()) {
+                report.add(f.name + ": " + params(f).get(a.getKey()).name + " = " + a.getValue()
+                           + " en todas las llamadas");
+            }
+            for (Site s : sites) dropArgs(s.call, agreed.keySet());
+            bind(f, f, agreed);
+            propagated += agreed.size();
+            // Las posiciones de los argumentos cambiaron: el resto se recalcula en la próxima vuelta
+            return true;
+        }
+        return false;
+    }
+
+    /* ---------- 2. Especialización ---------- */
+
+    private boolean specialize(List<Site> all) {
+        // Combinaciones por función, con su frecuencia estimada
+        Map<String, Long> freq = frequencies(all);
+        Map<String, Long> weights = new LinkedHashMap<>();
+        Map<String, List<Site>> groups = new HashMap<>();
+        for (Site s : all) {
+            if (s.constants.isEmpty() || s.call.functionName.equals("main")) continue;
+            String key = s.call.functionName + " " + s.constants;
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(s);
+            long w = s.recursive() ? 0 : Math.min(s.weight * freq.getOrDefault(s.caller.name, 0L), MAX_WEIGHT);
+            weights.merge(key, w, (a, b) -> Math.min(a + b, MAX_WEIGHT));
+        }
+        List<String> order = new ArrayList<>(weights.keySet());
+        order.sort((a, b) -> Long.compare(weights.get(b), weights.get(a)));
+
+        boolean changed = false;
+        for (String key : order) {
+            List<Site> sites = groups.get(key);
+            FunctionNode f = functions.get(sites.get(0).call.functionName);
+            Map<Integer, Integer> bound = sites.get(0).constants;
+            // Por nombre: las posiciones cambian cuando se propaga otro parámetro
+            String combo = describe(f, bound);
+            Map<String, String> own = clones.computeIfAbsent(f.name, k -> new HashMap<>());
+
+            String name = own.get(combo);
+            if (name == null) {
+                if (weights.get(key) < HOT_WEIGHT) continue;
+                int size = Inliner.size(f.body);
+                String why = null;
+                if (size > MAX_CLONE_SIZE) why = "tamaño " + size + " > " + MAX_CLONE_SIZE;
+                else if (own.size() >= MAX_CLONES) why = "ya tiene " + MAX_CLONES + " clones";
+                else if (spent + size > BUDGET) why = "sin presupuesto";
+                if (why != null) {
+                    if (rejected.add(f.name + " " + combo)) {
+                        report.add(f.name + " " + combo + ": sin clon (" + why + ")");
+                    }
+                    continue;
+                }
+                name = cloneName(f, bound);
+                own.put(combo, name);
+                clone(f, name, bound);
+                spent += size;
+                cloned++;
+                report.add(name + ": clon de " + f.name + " con " + combo
+                           + " (frecuencia estimada " + weights.get(key) + ")");
+            }
+            for (Site s : sites) {
+                s.call.functionName = name;
+                dropArgs(s.call, bound.keySet());
+                redirected++;
+            }
+            changed = true;
+        }
+        return changed;
+    }
+
+    /**
+     * Veces que se estima que corre cada función: main una, y cada llamada
+     * suma su peso por la frecuencia de la función que llama.
+     */
+    private Map<String, Long> frequencies(List<Site> all) {
+        Map<String, Long> freq = new HashMap<>();
+        freq.put("main", 1L);
+        for (int i = 0; i < functions.size(); i++) {
+            Map<String, Long> next = new HashMap<>();
+            next.put("main", 1L);
+            for (Site s : all) {
+                if (s.recursive() || s.call.functionName.equals("main")) continue;
+                long w = Math.min(s.weight * freq.getOrDefault(s.caller.name, 0L), MAX_WEIGHT);
+                next.merge(s.call.functionName, w, (a, b) -> Math.min(a + b, MAX_WEIGHT));
+            }
+            if (next.equals(freq)) break;
+            freq = next;
+        }
+        return freq;
+    }
+
+    private static String describe(FunctionNode f, Map<Integer, Integer> bound) {
+        StringJoiner sj = new StringJoiner(", ");
+        for (Map.Entry<Integer, Integer> e : bound.entrySet()) {
+            sj.add(params(f).get(e.getKey()).name + " = " + e.getValue());
+        }
+        return sj.toString();
+    }
+
+    /** potencia con b = 2 -> potencia_b2 (m para los negativos). */
+    private String cloneName(FunctionNode f, Map<Integer, Integer> bound) {
+        StringBuilder sb = new StringBuilder(f.name);
+        for (Map.Entry<Integer, Integer> e : bound.entrySet()) {
+            int v = e.getValue();
+            sb.append('_').append(params(f).get(e.getKey()).name).append(v < 0 ? "m" + (-(long) v) : v);
+        }
+        String name = sb.toString();
+        for (int n = 2; functions.containsKey(name); n++) name = sb + "_" + n;
+        return name;
+    }
+
+    private void clone(FunctionNode f, String name, Map<Integer, Integer> bound) {
+        ParamListNode params = new ParamListNode();
+        for (ParamNode p : params(f)) params.add(new ParamNode(p.type, p.name));
+        FunctionNode c = new FunctionNode(f.returnType, name, params, AstUtil.copy(f.body, Collections.<String, String>emptyMap()));
+        bind(c, f, bound);
+
+        // El clon queda justo después del original
+        List<FunctionNode> list = program.functions.functions;
+        list.add(list.indexOf(f) + 1, c);
+        Map<String, FunctionNode> reordered = new LinkedHashMap<>();
+        for (FunctionNode g : list) reordered.put(g.name, g);
+        functions.clear();
+        functions.putAll(reordered);
+    }
+
+    /** Los parámetros de las posiciones dadas pasan a ser locales con su valor. */
+    private static void bind(FunctionNode target, FunctionNode original, Map<Integer, Integer> bound) {
+        List<ParamNode> params = params(original);
+        List<DeclNode> decls = new ArrayList<>();
+        List<ParamNode> kept = new ArrayList<>();
+        for (int i = 0; i < params.size(); i++) {
+            if (bound.containsKey(i)) {
+                decls.add(new DeclNode(params.get(i).name, "int", new NumNode(bound.get(i))));
+            } else {
+                kept.add(params.get(i));
+            }
+        }
+        if (target.params == null) target.params = new ParamListNode();
+        target.params.params = new ArrayList<>(kept);
+        if (target.body.decls == null) target.body.decls = new DeclListNode();
+        decls.addAll(target.body.decls.decls);
+        target.body.decls.decls = decls;
+    }
+
+    private static void dropArgs(CallNode call, Set<Integer> positions) {
+        List<ExprNode> args = new ArrayList<>();
+        for (int i = 0; i < call.args.size(); i++) if (!positions.contains(i)) args.add(call.args.get(i));
+        call.args = args;
+    }
+
+    @Override
+    public void visit(ParamListNode node) { }
+    @Override
+    public void visit(ParamNode node) { }
+    @Override
+    public void visit(BlockNode node) { }
+    @Override
+    public void visit(DeclListNode node) { }
+    @Override
+    public void visit(DeclNode node) { }
+    @Override
+    public void visit(StmtListNode node) { }
+    @Override
+    public void visit(AssignNode node) { }
+    @Override
+    public void visit(IfNode node) { }
+    @Override
+    public void visit(WhileNode node) { }
+    @Override
+    public void visit(ReturnNode node) { }
+    @Override
+    public void visit(BinOpNode node) { }
+    @Override
+    public void visit(UnaryOpNode node) { }
+    @Override
+    public void visit(NumNode node) { }
+    @Override
+    public void visit(IdNode node) { }
+    @Override
+    public void visit(CallNode node) { }
+}
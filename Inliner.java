@@ -0,0 +1,517 @@
+import java.util.*;
+
+/* ---------------- Expansión en línea de llamadas ---------------- */
+
+/*
+ * Reemplaza llamadas a funciones chicas por una copia de su cuerpo:
+ *
+ *   x = a + cuadrado(b);   ->   inl$1$x = b;
+ *                               inl$1$ret = inl$1$x * inl$1$x;
+ *                               x = a + inl$1$ret;
+ *
+ * Cada expansión renombra los parámetros y locales del llamado con el
+ * prefijo inl$<n>$ ('$' no es válido en identificadores del programa), los
+ * declara sin inicializar en el bloque principal del llamador (el ámbito de
+ * una función es plano) y convierte su único return en una asignación a un
+ * temporal de resultado.
+ *
+ * Candidatos: funciones int que no forman parte de un ciclo del grafo de
+ * llamadas (componentes fuertemente conexas de Tarjan), cuyo único return
+ * es la última sentencia del cuerpo y que nunca lee una variable antes de
+ * asignarla (una copia reutilizada en un bucle no volvería a empezar sin
+ * inicializar). Las funciones se procesan de las hojas hacia main, así el
+ * cuerpo que se copia ya tiene sus propias llamadas expandidas.
+ *
+ * Modelo de costo: el tamaño del cuerpo (nodos del AST) menos lo que ahorra
+ * no hacer la llamada (una base más un punto por argumento, dos más por
+ * argumento constante, que después se pliega). Se expande si el costo no
+ * supera COST_LIMIT y el llamador no crece más de GROWTH_LIMIT nodos.
+ *
+ * Con un perfil de ejecución (ProfileData) el Inliner se vuelve a correr
+ * antes de generar código y solo reconsidera las llamadas calientes (al
+ * menos HOT_CALLS ejecuciones), con un límite de costo HOT_COST_LIMIT: vale
+ * la pena copiar un cuerpo más grande si la llamada se repite mucho.
+ *
+ * Las llamadas se sacan de la expresión hacia las sentencias anteriores,
+ * así que solo se expanden las que se evalúan siempre y en ese orden: no
+ * las del lado derecho de && y ||, ni las de la condición de un while, ni
+ * las que siguen a otra llamada o a una división que puede fallar.
+ */
+class Inliner implements ASTVisitor {
+    static final String PREFIX = "inl$";
+    static final int COST_LIMIT = 24;
+    static final int HOT_COST_LIMIT = 4 * COST_LIMIT;
+    static final int GROWTH_LIMIT = 240;
+    private static final int CALL_COST = 6;
+
+    private final Map<String, FunctionNode> functions = new HashMap<>();
+    private final Set<String> recursive = new HashSet<>();
+    private final List<String> decisions = new ArrayList<>();
+    private int inlined = 0;
+    private int sites = 0;
+    private int expansions = 0;     // numera los prefijos inl$<n>$ (sigue entre corridas)
+    private ProfileData profile;
+
+    // Estado del llamador que se está procesando
+    private FunctionNode caller;
+    private int growth;
+    private boolean blocked;        // ya se evaluó algo con efectos en la sentencia
+
+    public List<String> getDecisions() { return decisions; }
+    public int getInlined() { return inlined; }
+    public int getSites() { return sites; }
+    public void setProfile(ProfileData profile) { this.profile = profile; }
+
+    @Override
+    public void visit(ProgramNode node) {
+        decisions.clear();
+        inlined = 0;
+        sites = 0;
+        if (node.functions == null) return;
+        for (FunctionNode f : node.functions.functions) functions.put(f.name, f);
+        for (FunctionNode f : bottomUp(node.functions.functions)) f.accept(this);
+    }
+
+    @Override
+    public void visit(FunctionListNode node) { }
+
+    @Override
+    public void visit(FunctionNode node) {
+        caller = node;
+        growth = 0;
+        block(node.body);
+    }
+
+    /* ---------- Grafo de llamadas ---------- */
+
+    /*
+     * Tarjan devuelve las componentes en orden topológico inverso: cada una
+     * sale después de todas las que llama. De paso marca las recursivas.
+     */
+    private List<FunctionNode> bottomUp(List<FunctionNode> all) {
+        Map<String, Integer> index = new HashMap<>();
+        Map<String, Integer> low = new HashMap<>();
+        Deque<String> stack = new ArrayDeque<>();
+        Set<String> onStack = new HashSet<>();
+        List<FunctionNode> order = new ArrayList<>();
+        for (FunctionNode f : all) {
+            if (!index.containsKey(f.name)) strongConnect(f.name, index, low, stack, onStack, order);
+        }
+        return order;
+    }
+
+    private void strongConnect(String v, Map<String, Integer> index, Map<String, Integer> low,
+                               Deque<String> stack, Set<String> onStack, List<FunctionNode> order) {
+        index.put(v, index.size());
+        low.put(v, index.get(v));
+        stack.push(v);
+        onStack.add(v);
+        Set<String> callees = new LinkedHashSet<>();
+        calls(functions.get(v).body, callees);
+        for (String w : callees) {
+            if (!functions.containsKey(w)) continue;
+            if (!index.containsKey(w)) {
+                strongConnect(w, index, low, stack, onStack, order);
+                low.put(v, Math.min(low.get(v), low.get(w)));
+            } else if (onStack.contains(w)) {
+                low.put(v, Math.min(low.get(v), index.get(w)));
+            }
+        }
+        if (!low.get(v).equals(index.get(v))) return;
+
+        List<String> component = new ArrayList<>();
+        String w;
+        do {
+            w = stack.pop();
+            onStack.remove(w);
+            component.add(w);
+        } while (!w.equals(v));
+        if (component.size() > 1 || callees.contains(v)) recursive.addAll(component);
+        for (String name : component) order.add(functions.get(name));
+    }
+
+    private static void calls(BlockNode block, Set<String> out) {
+        if (block.decls != null) {
+            for (DeclNode d : block.decls.decls) if (d.init != null) calls(d.init, out);
+        }
+        if (block.stmts == null) return;
+        for (StmtNode s : block.stmts.stmts) {
+            if (s instanceof AssignNode) {
+                calls(((AssignNode) s).expr, out);
+            } else if (s instanceof ReturnNode) {
+                if (((ReturnNode) s).expr != null) calls(((ReturnNode) s).expr, out);
+            } else if (s instanceof IfNode) {
+                IfNode ifn = (IfNode) s;
+                calls(ifn.condition, out);
+                calls(ifn.thenBlock, out);
+                if (ifn.elseBlock != null) calls(ifn.elseBlock, out);
+            } else if (s instanceof WhileNode) {
+                calls(((WhileNode) s).condition, out);
+                calls(((WhileNode) s).body, out);
+            }
+        }
+    }
+
+    private static void calls(ExprNode e, Set<String> out) {
+        if (e instanceof CallNode) {
+            out.add(((CallNode) e).functionName);
+            for (ExprNode a : ((CallNode) e).args) calls(a, out);
+        } else if (e instanceof BinOpNode) {
+            calls(((BinOpNode) e).left, out);
+            calls(((BinOpNode) e).right, out);
+        } else if (e instanceof UnaryOpNode) {
+            calls(((UnaryOpNode) e).expr, out);
+        }
+    }
+
+    /* ---------- Candidatos y costo ---------- */
+
+    /** Motivo por el que f nunca se expande, o null si es candidata. */
+    private String unsuitable(FunctionNode f) {
+        if (f == null) return "función desconocida";
+        if (recursive.contains(f.name)) return "recursiva";
+        if (!f.returnType.equals("int")) return "función void";
+        List<StmtNode> stmts = f.body.stmts != null ? f.body.stmts.stmts : Collections.emptyList();
+        if (stmts.isEmpty() || !(stmts.get(stmts.size() - 1) instanceof ReturnNode)
+                || countReturns(f.body) != 1) {
+            return "no termina en un único return";
+        }
+        if (readsUninitialized(f)) return "lee variables sin inicializar";
+        return null;
+    }
+
+    private static int countReturns(BlockNode block) {
+        int n = 0;
+        if (block.stmts == null) return 0;
+        for (StmtNode s : block.stmts.stmts) {
+            if (s instanceof ReturnNode) {
+                n++;
+            } else if (s instanceof IfNode) {
+                n += countReturns(((IfNode) s).thenBlock);
+                if (((IfNode) s).elseBlock != null) n += countReturns(((IfNode) s).elseBlock);
+            } else if (s instanceof WhileNode) {
+                n += countReturns(((WhileNode) s).body);
+            }
+        }
+        return n;
+    }
+
+    /*
+     * Asignación definida: alguna lectura de una local puede ocurrir antes
+     * de que la local tenga valor. Después de un if quedan asignadas las que
+     * asignan las dos ramas; lo que asigna un while no cuenta fuera de él.
+     */
+    private static boolean readsUninitialized(FunctionNode f) {
+        Set<String> assigned = new HashSet<>();
+        if (f.params != null) {
+            for (ParamNode p : f.params.params) assigned.add(p.name);
+        }
+        return !definite(f.body, assigned);
+    }
+
+    /** Agrega a assigned lo que el bloque asigna; false si lee algo sin asignar. */
+    private static boolean definite(BlockNode block, Set<String> assigned) {
+        if (block.decls != null) {
+            for (DeclNode d : block.decls.decls) {
+                if (d.init == null) continue;
+                if (!readsAssigned(d.init, assigned)) return false;
+                assigned.add(d.name);
+            }
+        }
+        if (block.stmts == null) return true;
+        for (StmtNode s : block.stmts.stmts) {
+            if (s instanceof AssignNode) {
+                if (!readsAssigned(((AssignNode) s).expr, assigned)) return false;
+                assigned.add(((AssignNode) s).name);
+            } else if (s instanceof ReturnNode) {
+                if (((ReturnNode) s).expr != null && !readsAssigned(((ReturnNode) s).expr, assigned)) return false;
+            } else if (s instanceof IfNode) {
+                IfNode ifn = (IfNode) s;
+                if (!readsAssigned(ifn.condition, assigned)) return false;
+                Set<String> thenSet = new HashSet<>(assigned);
+                if (!definite(ifn.thenBlock, thenSet)) return false;
+                Set<String> elseSet = new HashSet<>(assigned);
+                if (ifn.elseBlock != null && !definite(ifn.elseBlock, elseSet)) return false;
+                thenSet.retainAll(elseSet);
+                assigned.addAll(thenSet);
+            } else if (s instanceof WhileNode) {
+                WhileNode w = (WhileNode) s;
+                if (!readsAssigned(w.condition, assigned)) return false;
+                if (!definite(w.body, new HashSet<>(assigned))) return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean readsAssigned(ExprNode e, Set<String> assigned) {
+        Set<String> read = new HashSet<>();
+        reads(e, read);
+        return assigned.containsAll(read);
+    }
+
+    private static void reads(ExprNode e, Set<String> out) {
+        if (e instanceof IdNode) {
+            out.add(((IdNode) e).name);
+        } else if (e instanceof BinOpNode) {
+            reads(((BinOpNode) e).left, out);
+            reads(((BinOpNode) e).right, out);
+        } else if (e instanceof UnaryOpNode) {
+            reads(((UnaryOpNode) e).expr, out);
+        } else if (e instanceof CallNode) {
+            for (ExprNode a : ((CallNode) e).args) reads(a, out);
+        }
+    }
+
+    private static int cost(FunctionNode f, CallNode c) {
+        int saved = CALL_COST + c.args.size();
+        for (ExprNode a : c.args) if (a instanceof NumNode) saved += 2;
+        return size(f.body) - saved;
+    }
+
+    /** Nodos del AST de un bloque (declaraciones sin valor inicial no cuentan). */
+    static int size(BlockNode block) {
+        int n = 0;
+        if (block.decls != null) {
+            for (DeclNode d : block.decls.decls) if (d.init != null) n += 1 + size(d.init);
+        }
+        if (block.stmts == null) return n;
+        for (StmtNode s : block.stmts.stmts) {
+            n++;
+            if (s instanceof AssignNode) {
+                n += size(((AssignNode) s).expr);
+            } else if (s instanceof ReturnNode) {
+                if (((ReturnNode) s).expr != null) n += size(((ReturnNode) s).expr);
+            } else if (s instanceof IfNode) {
+                IfNode ifn = (IfNode) s;
+                n += size(ifn.condition) + size(ifn.thenBlock);
+                if (ifn.elseBlock != null) n += size(ifn.elseBlock);
+            } else if (s instanceof WhileNode) {
+                n += size(((WhileNode) s).condition) + size(((WhileNode) s).body);
+            }
+        }
+        return n;
+    }
+
+    static int size(ExprNode e) {
+        if (e instanceof BinOpNode) return 1 + size(((BinOpNode) e).left) + size(((BinOpNode) e).right);
+        if (e instanceof UnaryOpNode) return 1 + size(((UnaryOpNode) e).expr);
+        if (e instanceof CallNode) {
+            int n = 1;
+            for (ExprNode a : ((CallNode) e).args) n += size(a);
+            return n;
+        }
+        return 1;
+    }
+
+    /* ---------- Recorrido del llamador ---------- */
+
+    private void block(BlockNode block) {
+        if (block.stmts == null) block.stmts = new StmtListNode();
+        List<StmtNode> head = new ArrayList<>();
+        if (block.decls != null) {
+            // Desde la primera inicialización con una llamada candidata, las
+            // inicializaciones pasan a ser asignaciones al comienzo del bloque
+            // para poder insertar sentencias entre ellas
+            boolean moving = false;
+            for (DeclNode d : block.decls.decls) {
+                if (d.init == null) continue;
+                if (!moving && callsCandidate(d.init)) moving = true;
+                if (moving) {
+                    head.add(new AssignNode(d.name, d.init));
+                    d.init = null;
+                } else {
+                    List<StmtNode> pre = new ArrayList<>();
+                    blocked = false;
+                    d.init = expand(d.init, pre);    // solo registra los rechazos
+                }
+            }
+        }
+        head.addAll(block.stmts.stmts);
+        block.stmts.stmts = statements(head);
+    }
+
+    private List<StmtNode> statements(List<StmtNode> in) {
+        List<StmtNode> out = new ArrayList<>();
+        for (StmtNode s : in) {
+            List<StmtNode> pre = new ArrayList<>();
+            blocked = false;
+            if (s instanceof AssignNode) {
+                AssignNode a = (AssignNode) s;
+                a.expr = expand(a.expr, pre);
+            } else if (s instanceof ReturnNode) {
+                ReturnNode r = (ReturnNode) s;
+                if (r.expr != null) r.expr = expand(r.expr, pre);
+            } else if (s instanceof IfNode) {
+                IfNode ifn = (IfNode) s;
+                ifn.condition = expand(ifn.condition, pre);
+                block(ifn.thenBlock);
+                if (ifn.elseBlock != null) block(ifn.elseBlock);
+            } else if (s instanceof WhileNode) {
+                WhileNode w = (WhileNode) s;
+                reject(w.condition, "condición de while");
+                block(w.body);
+            }
+            out.addAll(pre);
+            out.add(s);
+        }
+        return out;
+    }
+
+    /**
+     * Recorre e en orden de evaluación. Las llamadas que se expanden dejan su
+     * cuerpo en pre y se reemplazan por el temporal de resultado.
+     */
+    private ExprNode expand(ExprNode e, List<StmtNode> pre) {
+        if (e instanceof CallNode) {
+            CallNode c = (CallNode) e;
+            for (int i = 0; i < c.args.size(); i++) c.args.set(i, expand(c.args.get(i), pre));
+            if (profile != null && !profile.isHot(c)) {
+                // Con perfil solo se reconsideran las llamadas calientes
+                blocked = true;
+                return c;
+            }
+            FunctionNode f = functions.get(c.functionName);
+            String reason = unsuitable(f);
+            int cost = f != null ? cost(f, c) : 0;
+            int limit = profile != null ? HOT_COST_LIMIT : COST_LIMIT;
+            if (reason == null && blocked) reason = "orden de evaluación";
+            if (reason == null && cost > limit) reason = "costo " + cost + " > " + limit;
+            if (reason == null && growth + size(f.body) > GROWTH_LIMIT) reason = "el llamador ya creció demasiado";
+            sites++;
+            if (reason != null) {
+                decisions.add(caller.name + " -> " + c.functionName + ": rechazada (" + reason + ")");
+                blocked = true;
+                return c;
+            }
+            decisions.add(caller.name + " -> " + c.functionName + ": expandida (costo " + cost
+                          + (profile != null ? ", " + profile.calls(c) + " llamadas" : "") + ")");
+            inlined++;
+            growth += size(f.body);
+            return inline(f, c, pre);
+        }
+        if (e instanceof BinOpNode) {
+            BinOpNode b = (BinOpNode) e;
+            b.left = expand(b.left, pre);
+            if (b.op.equals("&&") || b.op.equals("||")) {
+                // El lado derecho puede no evaluarse: sus llamadas quedan en su lugar
+                reject(b.right, "evaluación condicional");
+                if (AstUtil.mayFail(b.right)) blocked = true;
+                return b;
+            }
+            b.right = expand(b.right, pre);
+            if (b.op.equals("/") && !(b.right instanceof NumNode && ((NumNode) b.right).value != 0)) blocked = true;
+            return b;
+        }
+        if (e instanceof UnaryOpNode) {
+            UnaryOpNode u = (UnaryOpNode) e;
+            u.expr = expand(u.expr, pre);
+        }
+        return e;
+    }
+
+    /** Registra como rechazadas las llamadas de e que no se pueden sacar de su lugar. */
+    private void reject(ExprNode e, String reason) {
+        if (e instanceof CallNode) {
+            CallNode c = (CallNode) e;
+            for (ExprNode a : c.args) reject(a, reason);
+            if (profile != null && !profile.isHot(c)) return;
+            sites++;
+            String why = unsuitable(functions.get(c.functionName));
+            decisions.add(caller.name + " -> " + c.functionName + ": rechazada (" + (why != null ? why : reason) + ")");
+        } else if (e instanceof BinOpNode) {
+            reject(((BinOpNode) e).left, reason);
+            reject(((BinOpNode) e).right, reason);
+        } else if (e instanceof UnaryOpNode) {
+            reject(((UnaryOpNode) e).expr, reason);
+        }
+    }
+
+    private boolean callsCandidate(ExprNode e) {
+        Set<String> names = new HashSet<>();
+        calls(e, names);
+        for (String n : names) if (unsuitable(functions.get(n)) == null) return true;
+        return false;
+    }
+
+    /* ---------- Expansión ---------- */
+
+    private ExprNode inline(FunctionNode f, CallNode c, List<StmtNode> pre) {
+        String prefix = PREFIX + (++expansions) + "$";
+        Map<String, String> names = new HashMap<>();
+        List<ParamNode> params = f.params != null ? f.params.params : Collections.emptyList();
+        for (ParamNode p : params) names.put(p.name, prefix + p.name);
+        declaredNames(f.body, names, prefix);
+
+        // Parámetros: los argumentos se evalúan en orden, como en la llamada
+        for (int i = 0; i < params.size(); i++) {
+            String name = names.get(params.get(i).name);
+            declare(name);
+            pre.add(new AssignNode(name, c.args.get(i)));
+        }
+        // Locales del bloque principal: la inicialización pasa a asignación
+        if (f.body.decls != null) {
+            for (DeclNode d : f.body.decls.decls) {
+                declare(names.get(d.name));
+                if (d.init != null) pre.add(new AssignNode(names.get(d.name), AstUtil.copy(d.init, names)));
+            }
+        }
+        List<StmtNode> stmts = f.body.stmts.stmts;
+        for (int i = 0; i < stmts.size() - 1; i++) pre.add(AstUtil.copy(stmts.get(i), names));
+
+        String result = prefix + "ret";
+        declare(result);
+        pre.add(new AssignNode(result, AstUtil.copy(((ReturnNode) stmts.get(stmts.size() - 1)).expr, names)));
+        return new IdNode(result);
+    }
+
+    private void declare(String name) {
+        if (caller.body.decls == null) caller.body.decls = new DeclListNode();
+        caller.body.decls.add(new DeclNode(name, "int"));
+    }
+
+    private static void declaredNames(BlockNode block, Map<String, String> names, String prefix) {
+        if (block.decls != null) {
+            for (DeclNode d : block.decls.decls) names.put(d.name, prefix + d.name);
+        }
+        if (block.stmts == null) return;
+        for (StmtNode s : block.stmts.stmts) {
+            if (s instanceof IfNode) {
+                declaredNames(((IfNode) s).thenBlock, names, prefix);
+                if (((IfNode) s).elseBlock != null) declaredNames(((IfNode) s).elseBlock, names, prefix);
+            } else if (s instanceof WhileNode) {
+                declaredNames(((WhileNode) s).body, names, prefix);
+            }
+        }
+    }
+
+    @Override
+    public void visit(ParamListNode node) { }
+    @Override
+    public void visit(ParamNode node) { }
+    @Override
+    public void visit(BlockNode node) { }
+    @Override
+    public void visit(DeclListNode node) { }
+    @Override
+    public void visit(DeclNode node) { }
+    @Override
+    public void visit(StmtListNode node) { }
+    @Override
+    public void visit(AssignNode node) { }
+    @Override
+    public void visit(IfNode node) { }
+    @Override
+    public void visit(WhileNode node) { }
+    @Override
+    public void visit(ReturnNode node) { }
+    @Override
+    public void visit(BinOpNode node) { }
+    @Override
+    public void visit(UnaryOpNode node) { }
+    @Override
+    public void visit(NumNode node) { }
+    @Override
+    public void visit(IdNode node) { }
+    @Override
+    public void visit(CallNode node) { }
+}
@@ -0,0 +1,232 @@
+import java.util.*;
+
+/* ---------------- Movimiento de código invariante de bucles ---------------- */
+
+/*
+ * Saca de cada while las subexpresiones que valen lo mismo en todas las
+ * vueltas y las calcula una sola vez en un preencabezado, antes del bucle:
+ *
+ *   while (i < n * 4 - k) { s = s + (n * 4 - k); ... }
+ *
+ *   ->   licm$1 = n * 4 - k;
+ *        while (i < licm$1) { s = s + licm$1; ... }
+ *
+ * Una expresión es invariante si no lee ninguna variable que el bucle
+ * asigna y solo llama a funciones puras (PurityAnalyzer). Las mismas
+ * expresiones comparten temporal. Como el preencabezado se ejecuta aunque
+ * el bucle no dé ninguna vuelta:
+ *
+ *   - solo se sacan lecturas de variables definitivamente asignadas antes
+ *     del bucle (sacar otra podría fallar por variable sin inicializar);
+ *   - lo que puede fallar o no terminar (llamadas, divisiones por algo que
+ *     no es una constante distinta de cero) solo se saca de la condición y
+ *     fuera del lado derecho de && y ||, que se evalúa al llegar de todos
+ *     modos.
+ *
+ * Los bucles anidados se procesan de adentro hacia afuera, así lo que es
+ * invariante en los dos niveles termina antes del bucle exterior.
+ */
+class LoopInvariantMotion implements ASTVisitor {
+    static final String PREFIX = "licm$";
+
+    private PurityAnalyzer purity;
+    private int hoisted = 0;        // temporales creados
+    private int loops = 0;          // bucles con al menos uno
+    private int replaced = 0;       // apariciones reemplazadas
+
+    // Estado de la función y del bucle que se están procesando
+    private FunctionNode current;
+    private int temps;
+    private Set<String> killed;
+    private Set<String> defined;
+    private Map<String, String> loopTemps;
+    private List<StmtNode> preheader;
+
+    public int getHoisted() { return hoisted; }
+    public int getLoops() { return loops; }
+    public int getReplaced() { return replaced; }
+
+    @Override
+    public void visit(ProgramNode node) {
+        if (node.functions == null) return;
+        purity = new PurityAnalyzer();
+        node.accept(purity);
+        for (FunctionNode func : node.functions.functions) {
+            func.accept(this);
+        }
+    }
+
+    @Override
+    public void visit(FunctionListNode node) { }
+
+    @Override
+    public void visit(FunctionNode node) {
+        current = node;
+        temps = 0;
+        Set<String> assigned = new HashSet<>();
+        if (node.params != null) {
+            for (ParamNode p : node.params.params) assigned.add(p.name);
+        }
+        block(node.body, assigned);
+    }
+
+    /* ---------- Recorrido con asignación definida ---------- */
+
+    /** Procesa los bucles del bloque; assigned crece con lo que el bloque asigna seguro. */
+    private void block(BlockNode block, Set<String> assigned) {
+        if (block.decls != null) {
+            for (DeclNode d : block.decls.decls) if (d.init != null) assigned.add(d.name);
+        }
+        if (block.stmts == null) return;
+        List<StmtNode> out = new ArrayList<>();
+        for (StmtNode s : block.stmts.stmts) {
+            if (s instanceof AssignNode) {
+                assigned.add(((AssignNode) s).name);
+            } else if (s instanceof IfNode) {
+                IfNode ifn = (IfNode) s;
+                Set<String> thenSet = new HashSet<>(assigned);
+                block(ifn.thenBlock, thenSet);
+                Set<String> elseSet = new HashSet<>(assigned);
+                if (ifn.elseBlock != null) block(ifn.elseBlock, elseSet);
+                thenSet.retainAll(elseSet);
+                assigned.addAll(thenSet);
+            } else if (s instanceof WhileNode) {
+                WhileNode w = (WhileNode) s;
+                // Primero los bucles internos: sus preencabezados quedan en el cuerpo
+                block(w.body, new HashSet<>(assigned));
+                List<StmtNode> pre = hoist(w, assigned);
+                for (StmtNode p : pre) assigned.add(((AssignNode) p).name);
+                out.addAll(pre);
+            }
+            out.add(s);
+        }
+        block.stmts.stmts = out;
+    }
+
+    /* ---------- Un bucle ---------- */
+
+    private List<StmtNode> hoist(WhileNode w, Set<String> assigned) {
+        killed = new HashSet<>();
+        AstUtil.assignedIn(w.body, killed);
+        defined = assigned;
+        loopTemps = new HashMap<>();
+        preheader = new ArrayList<>();
+
+        w.condition = rewrite(w.condition, true);
+        rewriteBlock(w.body);
+
+        if (!preheader.isEmpty()) loops++;
+        return preheader;
+    }
+
+    private void rewriteBlock(BlockNode block) {
+        if (block.decls != null) {
+            for (DeclNode d : block.decls.decls) if (d.init != null) d.init = rewrite(d.init, false);
+        }
+        if (block.stmts == null) return;
+        for (StmtNode s : block.stmts.stmts) {
+            if (s instanceof AssignNode) {
+                ((AssignNode) s).expr = rewrite(((AssignNode) s).expr, false);
+            } else if (s instanceof ReturnNode) {
+                ReturnNode r = (ReturnNode) s;
+                if (r.expr != null) r.expr = rewrite(r.expr, false);
+            } else if (s instanceof IfNode) {
+                IfNode ifn = (IfNode) s;
+                ifn.condition = rewrite(ifn.condition, false);
+                rewriteBlock(ifn.thenBlock);
+                if (ifn.elseBlock != null) rewriteBlock(ifn.elseBlock);
+            } else if (s instanceof WhileNode) {
+                WhileNode w = (WhileNode) s;
+                w.condition = rewrite(w.condition, false);
+                rewriteBlock(w.body);
+            }
+        }
+    }
+
+    /**
+     * Reemplaza las subexpresiones invariantes maximales de e por su
+     * temporal. onEntry indica que e se evalúa siempre al llegar al bucle.
+     */
+    private ExprNode rewrite(ExprNode e, boolean onEntry) {
+        if (e instanceof NumNode || e instanceof IdNode) return e;
+        if (invariant(e) && (onEntry || !AstUtil.mayFail(e))) {
+            replaced++;
+            return new IdNode(tempFor(e));
+        }
+        if (e instanceof BinOpNode) {
+            BinOpNode b = (BinOpNode) e;
+            boolean shortCircuit = b.op.equals("&&") || b.op.equals("||");
+            b.left = rewrite(b.left, onEntry);
+            b.right = rewrite(b.right, onEntry && !shortCircuit);
+        } else if (e instanceof UnaryOpNode) {
+            UnaryOpNode u = (UnaryOpNode) e;
+            u.expr = rewrite(u.expr, onEntry);
+        } else if (e instanceof CallNode) {
+            List<ExprNode> args = ((CallNode) e).args;
+            for (int i = 0; i < args.size(); i++) args.set(i, rewrite(args.get(i), onEntry));
+        }
+        return e;
+    }
+
+    private String tempFor(ExprNode e) {
+        String k = AstUtil.key(e);
+        String name = loopTemps.get(k);
+        if (name == null) {
+            name = PREFIX + (++temps);
+            loopTemps.put(k, name);
+            if (current.body.decls == null) current.body.decls = new DeclListNode();
+            current.body.decls.add(new DeclNode(name, "int"));
+            preheader.add(new AssignNode(name, e));
+            hoisted++;
+        }
+        return name;
+    }
+
+    private boolean invariant(ExprNode e) {
+        if (e instanceof NumNode) return true;
+        if (e instanceof IdNode) {
+            String name = ((IdNode) e).name;
+            return !killed.contains(name) && defined.contains(name);
+        }
+        if (e instanceof BinOpNode) return invariant(((BinOpNode) e).left) && invariant(((BinOpNode) e).right);
+        if (e instanceof UnaryOpNode) return invariant(((UnaryOpNode) e).expr);
+        if (e instanceof CallNode) {
+            CallNode c = (CallNode) e;
+            if (!purity.isPure(c.functionName)) return false;
+            for (ExprNode a : c.args) if (!invariant(a)) return false;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void visit(ParamListNode node) { }
+    @Override
+    public void visit(ParamNode node) { }
+    @Override
+    public void visit(BlockNode node) { }
+    @Override
+    public void visit(DeclListNode node) { }
+    @Override
+    public void visit(DeclNode node) { }
+    @Override
+    public void visit(StmtListNode node) { }
+    @Override
+    public void visit(AssignNode node) { }
+    @Override
+    public void visit(IfNode node) { }
+    @Override
+    public void visit(WhileNode node) { }
+    @Override
+    public void visit(ReturnNode node) { }
+    @Override
+    public void visit(BinOpNode node) { }
+    @Override
+    public void visit(UnaryOpNode node) { }
+    @Override
+    public void visit(NumNode node) { }
+    @Override
+    public void visit(IdNode node) { }
+    @Override
+    public void visit(CallNode node) { }
+}
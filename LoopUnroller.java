@@ -0,0 +1,556 @@
+import java.util.*;
+
+/* ---------------- Variables de inducción y desenrollado de bucles ---------------- */
+
+/*
+ * Trabaja sobre los while con una variable de inducción básica: una
+ * variable que el cuerpo solo asigna en su nivel principal y siempre con la
+ * forma i = i + c (o i - c, c + i) con c constante.
+ *
+ *   1. Desenrollado completo: si el valor inicial (la última asignación
+ *      antes del bucle o la declaración), el límite y el paso son
+ *      constantes y el bucle da pocas vueltas, el while se reemplaza por
+ *      copias del cuerpo.
+ *
+ *   2. Reducción de fuerza: cada i * k con k invariante pasa a ser otra
+ *      variable de inducción que se inicializa antes del bucle y suma c * k
+ *      después de cada actualización de i:
+ *
+ *        while (i < n) { s = s + i * k; i = i + 1; }
+ *        ->  iv$1 = i * k;
+ *            while (i < n) { s = s + iv$1; i = i + 1; iv$1 = iv$1 + k; }
+ *
+ *   3. Desenrollado por un factor F: si la condición es i < E (o i > E al
+ *      bajar) con E constante o una variable que el bucle no asigna, se
+ *      hacen F copias del cuerpo mientras falten al menos F vueltas y un
+ *      bucle de resto termina las que quedan:
+ *
+ *        unr$1 = E - (F - 1) * c;
+ *        while (i < unr$1) { cuerpo; cuerpo; cuerpo; cuerpo; }
+ *        while (i < E) { cuerpo; }
+ *
+ *      Si E - (F - 1) * c desborda (E cerca del mínimo), unr$1 se lleva a i
+ *      y todo lo hace el bucle de resto.
+ *
+ * Las declaraciones del cuerpo de un bucle que se copia pasan al bloque
+ * principal de la función (el ámbito es plano) y sus inicializaciones a
+ * asignaciones, así cada nombre se declara una sola vez.
+ *
+ * Corre antes del plegado de constantes: las copias de un desenrollado
+ * completo quedan con i constante y se pliegan después.
+ */
+class LoopUnroller implements ASTVisitor {
+    static final int FULL_MAX_TRIPS = 8;
+    static final int FULL_MAX_SIZE = 96;        // vueltas * tamaño del cuerpo
+    static final int PARTIAL_MAX_BODY = 32;     // tamaño del cuerpo para desenrollar por F
+
+    private int factor = 4;
+    private int reduced = 0;
+    private int fullyUnrolled = 0;
+    private int partiallyUnrolled = 0;
+
+    // Estado de la función que se está procesando
+    private FunctionNode current;
+    private Map<String, Integer> constants;
+    private Set<String> declared;
+    private int temps;
+
+    /** Copias del cuerpo en el desenrollado parcial (1 lo desactiva). */
+    public void setFactor(int factor) { this.factor = factor; }
+    public int getFactor() { return factor; }
+
+    public int getReduced() { return reduced; }
+    public int getFullyUnrolled() { return fullyUnrolled; }
+    public int getPartiallyUnrolled() { return partiallyUnrolled; }
+
+    @Override
+    public void visit(ProgramNode node) {
+        if (node.functions == null) return;
+        for (FunctionNode func : node.functions.functions) {
+            func.accept(this);
+        }
+    }
+
+    @Override
+    public void visit(FunctionListNode node) { }
+
+    @Override
+    public void visit(FunctionNode node) {
+        current = node;
+        temps = 0;
+        if (node.body.decls == null) node.body.decls = new DeclListNode();
+        declared = new HashSet<>();
+        for (DeclNode d : node.body.decls.decls) declared.add(d.name);
+
+        // Variables que solo se asignan en su declaración, con una constante
+        constants = new HashMap<>();
+        Map<String, Integer> definitions = new HashMap<>();
+        countDefinitions(node.body, definitions);
+        collectConstants(node.body, definitions);
+
+        Set<String> assigned = new HashSet<>();
+        if (node.params != null) {
+            for (ParamNode p : node.params.params) assigned.add(p.name);
+        }
+        block(node.body, assigned);
+    }
+
+    /* ---------- Recorrido con asignación definida ---------- */
+
+    private void block(BlockNode block, Set<String> assigned) {
+        if (block.decls != null) {
+            for (DeclNode d : block.decls.decls) if (d.init != null) assigned.add(d.name);
+        }
+        if (block.stmts == null) return;
+        List<StmtNode> out = new ArrayList<>();
+        for (StmtNode s : block.stmts.stmts) {
+            if (s instanceof AssignNode) {
+                assigned.add(((AssignNode) s).name);
+            } else if (s instanceof IfNode) {
+                IfNode ifn = (IfNode) s;
+                Set<String> thenSet = new HashSet<>(assigned);
+                block(ifn.thenBlock, thenSet);
+                Set<String> elseSet = new HashSet<>(assigned);
+                if (ifn.elseBlock != null) block(ifn.elseBlock, elseSet);
+                thenSet.retainAll(elseSet);
+                assigned.addAll(thenSet);
+            } else if (s instanceof WhileNode) {
+                WhileNode w = (WhileNode) s;
+                block(w.body, new HashSet<>(assigned));
+                Integer start = initialValue(out, block, w);
+                List<StmtNode> replacement = loop(w, assigned, start);
+                for (StmtNode r : replacement) {
+                    if (r instanceof AssignNode) assigned.add(((AssignNode) r).name);
+                }
+                out.addAll(replacement);
+                continue;
+            }
+            out.add(s);
+        }
+        block.stmts.stmts = out;
+    }
+
+    /** Sentencias que reemplazan al while (él mismo si no se toca). */
+    private List<StmtNode> loop(WhileNode w, Set<String> assigned, Integer start) {
+        List<StmtNode> out = new ArrayList<>();
+        Map<String, Integer> steps = basicInductionVars(w.body);
+        Counter counter = counter(w, steps);
+
+        // 1. Desenrollado completo
+        if (counter != null && start != null && constant(counter.bound) != null) {
+            long trips = trips(start, constant(counter.bound), counter.step);
+            if (trips <= FULL_MAX_TRIPS && trips * Inliner.size(w.body) <= FULL_MAX_SIZE) {
+                flattenDecls(w.body);
+                for (long t = 0; t < trips; t++) {
+                    for (StmtNode s : w.body.stmts.stmts) out.add(AstUtil.copy(s));
+                }
+                fullyUnrolled++;
+                return out;
+            }
+        }
+
+        // 2. Reducción de fuerza de i * k
+        reduce(w, steps, assigned, out);
+
+        // 3. Desenrollado por el factor
+        if (factor > 1 && counter != null && Inliner.size(w.body) <= PARTIAL_MAX_BODY
+                && Math.abs((long) (factor - 1) * counter.step) < Integer.MAX_VALUE
+                && (counter.bound instanceof NumNode || assigned.contains(((IdNode) counter.bound).name))) {
+            out.addAll(unroll(w, counter));
+            partiallyUnrolled++;
+            return out;
+        }
+        out.add(w);
+        return out;
+    }
+
+    /* ---------- Variables de inducción ---------- */
+
+    /**
+     * Variables de inducción básicas del cuerpo y su paso (null si tienen
+     * más de una actualización).
+     */
+    private static Map<String, Integer> basicInductionVars(BlockNode body) {
+        Map<String, Integer> total = new HashMap<>();
+        countDefinitions(body, total);
+        Map<String, Integer> updates = new HashMap<>();
+        Map<String, Integer> steps = new HashMap<>();
+        for (StmtNode s : body.stmts.stmts) {
+            if (!(s instanceof AssignNode)) continue;
+            AssignNode a = (AssignNode) s;
+            Integer c = increment(a);
+            if (c == null) continue;
+            int n = updates.merge(a.name, 1, Integer::sum);
+            steps.put(a.name, n == 1 ? c : null);
+        }
+        Map<String, Integer> result = new HashMap<>();
+        for (Map.Entry<String, Integer> e : updates.entrySet()) {
+            // Todas las definiciones del cuerpo son actualizaciones de primer nivel
+            if (e.getValue().equals(total.get(e.getKey()))) result.put(e.getKey(), steps.get(e.getKey()));
+        }
+        return result;
+    }
+
+    /** c si la asignación es i = i + c, i = c + i o i = i - c; null si no. */
+    private static Integer increment(AssignNode a) {
+        if (!(a.expr instanceof BinOpNode)) return null;
+        BinOpNode b = (BinOpNode) a.expr;
+        if (b.op.equals("+")) {
+            if (isVar(b.left, a.name) && b.right instanceof NumNode) return ((NumNode) b.right).value;
+            if (isVar(b.right, a.name) && b.left instanceof NumNode) return ((NumNode) b.left).value;
+        } else if (b.op.equals("-")) {
+            if (isVar(b.left, a.name) && b.right instanceof NumNode && ((NumNode) b.right).value != Integer.MIN_VALUE) {
+                return -((NumNode) b.right).value;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isVar(ExprNode e, String name) {
+        return e instanceof IdNode && ((IdNode) e).name.equals(name);
+    }
+
+    /** Bucle contador: condición i < E (o i > E al bajar) con i de paso único. */
+    private static final class Counter {
+        String var;
+        int step;
+        ExprNode bound;
+    }
+
+    private Counter counter(WhileNode w, Map<String, Integer> steps) {
+        if (!(w.condition instanceof BinOpNode)) return null;
+        BinOpNode b = (BinOpNode) w.condition;
+        if (!b.op.equals("<") && !b.op.equals(">")) return null;
+        // Normalizar a "i op E"
+        ExprNode iv = b.left, bound = b.right;
+        boolean upward = b.op.equals("<");
+        if (!(iv instanceof IdNode) || steps.get(((IdNode) iv).name) == null) {
+            iv = b.right;
+            bound = b.left;
+            upward = !upward;
+        }
+        if (!(iv instanceof IdNode)) return null;
+        Integer step = steps.get(((IdNode) iv).name);
+        if (step == null || step == 0 || (step > 0) != upward) return null;
+        if (!(bound instanceof NumNode || bound instanceof IdNode)) return null;
+        if (bound instanceof IdNode && AstUtil.assignedIn(w.body).contains(((IdNode) bound).name)) return null;
+
+        Counter c = new Counter();
+        c.var = ((IdNode) iv).name;
+        c.step = step;
+        c.bound = bound;
+        return c;
+    }
+
+    /* ---------- Desenrollado completo ---------- */
+
+    /**
+     * Valor constante con que la variable del bucle llega al while: la
+     * última sentencia anterior del bloque que la asigna, o su declaración
+     * en el bloque si ninguna lo hace.
+     */
+    private Integer initialValue(List<StmtNode> before, BlockNode block, WhileNode w) {
+        Counter c = counter(w, basicInductionVars(w.body));
+        if (c == null) return null;
+        for (int k = before.size() - 1; k >= 0; k--) {
+            StmtNode prev = before.get(k);
+            if (prev instanceof AssignNode && ((AssignNode) prev).name.equals(c.var)) {
+                ExprNode e = ((AssignNode) prev).expr;
+                return e instanceof NumNode ? ((NumNode) e).value : null;
+            }
+            if (assigns(prev, c.var)) return null;
+        }
+        if (block.decls == null) return null;
+        for (DeclNode d : block.decls.decls) {
+            if (d.name.equals(c.var) && d.init instanceof NumNode) return ((NumNode) d.init).value;
+        }
+        return null;
+    }
+
+    private static boolean assigns(StmtNode s, String name) {
+        if (s instanceof AssignNode) return ((AssignNode) s).name.equals(name);
+        if (s instanceof IfNode) {
+            IfNode ifn = (IfNode) s;
+            return AstUtil.assignedIn(ifn.thenBlock).contains(name)
+                || (ifn.elseBlock != null && AstUtil.assignedIn(ifn.elseBlock).contains(name));
+        }
+        if (s instanceof WhileNode) return AstUtil.assignedIn(((WhileNode) s).body).contains(name);
+        return false;
+    }
+
+    private Integer constant(ExprNode e) {
+        if (e instanceof NumNode) return ((NumNode) e).value;
+        if (e instanceof IdNode) return constants.get(((IdNode) e).name);
+        return null;
+    }
+
+    private static long trips(long start, long bound, long step) {
+        if (step > 0) return start >= bound ? 0 : (bound - start + step - 1) / step;
+        return start <= bound ? 0 : (start - bound - step - 1) / -step;
+    }
+
+    /* ---------- Reducción de fuerza ---------- */
+
+    private void reduce(WhileNode w, Map<String, Integer> steps, Set<String> assigned, List<StmtNode> pre) {
+        Set<String> killed = AstUtil.assignedIn(w.body);
+        Map<String, String> derived = new LinkedHashMap<>();      // clave de i * k -> iv$n
+        Map<String, String> ivOf = new HashMap<>();               // iv$n -> i
+        Map<String, ExprNode> stepOf = new HashMap<>();           // iv$n -> lo que suma
+        ExprNode[] condition = { w.condition };
+
+        Reducer r = new Reducer() {
+            public ExprNode product(String i, ExprNode k) {
+                Integer c = steps.get(i);
+                if (c == null || !assigned.contains(i) || !invariant(k, killed, assigned)) return null;
+                String key = i + "*" + AstUtil.key(k);
+                String t = derived.get(key);
+                if (t == null) {
+                    ExprNode stepExpr;
+                    if (k instanceof NumNode) {
+                        long s = (long) c * ((NumNode) k).value;
+                        if (s != (int) s) return null;
+                        stepExpr = new NumNode((int) s);
+                    } else if (c == 1 && k instanceof IdNode) {
+                        stepExpr = AstUtil.copy(k);
+                    } else {
+                        String st = temp("iv$");
+                        pre.add(new AssignNode(st, new BinOpNode("*", new NumNode(c), AstUtil.copy(k))));
+                        stepExpr = new IdNode(st);
+                    }
+                    t = temp("iv$");
+                    pre.add(new AssignNode(t, new BinOpNode("*", new IdNode(i), AstUtil.copy(k))));
+                    derived.put(key, t);
+                    ivOf.put(t, i);
+                    stepOf.put(t, stepExpr);
+                    reduced++;
+                }
+                return new IdNode(t);
+            }
+        };
+        condition[0] = r.rewrite(condition[0]);
+        w.condition = condition[0];
+        rewriteBlock(w.body, r);
+        if (derived.isEmpty()) return;
+
+        // Cada actualización de i va seguida de las de sus derivadas
+        List<StmtNode> stmts = new ArrayList<>();
+        for (StmtNode s : w.body.stmts.stmts) {
+            stmts.add(s);
+            if (!(s instanceof AssignNode) || !steps.containsKey(((AssignNode) s).name)) continue;
+            for (String t : derived.values()) {
+                if (!ivOf.get(t).equals(((AssignNode) s).name)) continue;
+                stmts.add(new AssignNode(t, new BinOpNode("+", new IdNode(t), AstUtil.copy(stepOf.get(t)))));
+            }
+        }
+        w.body.stmts.stmts = stmts;
+    }
+
+    private abstract static class Reducer {
+        abstract ExprNode product(String i, ExprNode k);
+
+        ExprNode rewrite(ExprNode e) {
+            if (e instanceof BinOpNode) {
+                BinOpNode b = (BinOpNode) e;
+                if (b.op.equals("*")) {
+                    ExprNode r = null;
+                    if (b.left instanceof IdNode) r = product(((IdNode) b.left).name, b.right);
+                    if (r == null && b.right instanceof IdNode) r = product(((IdNode) b.right).name, b.left);
+                    if (r != null) return r;
+                }
+                b.left = rewrite(b.left);
+                b.right = rewrite(b.right);
+            } else if (e instanceof UnaryOpNode) {
+                ((UnaryOpNode) e).expr = rewrite(((UnaryOpNode) e).expr);
+            } else if (e instanceof CallNode) {
+                List<ExprNode> args = ((CallNode) e).args;
+                for (int i = 0; i < args.size(); i++) args.set(i, rewrite(args.get(i)));
+            }
+            return e;
+        }
+    }
+
+    private static void rewriteBlock(BlockNode block, Reducer r) {
+        if (block.decls != null) {
+            for (DeclNode d : block.decls.decls) if (d.init != null) d.init = r.rewrite(d.init);
+        }
+        if (block.stmts == null) return;
+        for (StmtNode s : block.stmts.stmts) {
+            if (s instanceof AssignNode) {
+                ((AssignNode) s).expr = r.rewrite(((AssignNode) s).expr);
+            } else if (s instanceof ReturnNode) {
+                ReturnNode ret = (ReturnNode) s;
+                if (ret.expr != null) ret.expr = r.rewrite(ret.expr);
+            } else if (s instanceof IfNode) {
+                IfNode ifn = (IfNode) s;
+                ifn.condition = r.rewrite(ifn.condition);
+                rewriteBlock(ifn.thenBlock, r);
+                if (ifn.elseBlock != null) rewriteBlock(ifn.elseBlock, r);
+            } else if (s instanceof WhileNode) {
+                WhileNode w = (WhileNode) s;
+                w.condition = r.rewrite(w.condition);
+                rewriteBlock(w.body, r);
+            }
+        }
+    }
+
+    /** No cambia en el bucle, no puede fallar y se puede evaluar antes de él. */
+    private static boolean invariant(ExprNode e, Set<String> killed, Set<String> defined) {
+        return !AstUtil.mayFail(e) && stable(e, killed, defined);
+    }
+
+    private static boolean stable(ExprNode e, Set<String> killed, Set<String> defined) {
+        if (e instanceof NumNode) return true;
+        if (e instanceof IdNode) {
+            String name = ((IdNode) e).name;
+            return !killed.contains(name) && defined.contains(name);
+        }
+        if (e instanceof UnaryOpNode) return stable(((UnaryOpNode) e).expr, killed, defined);
+        if (e instanceof BinOpNode) {
+            BinOpNode b = (BinOpNode) e;
+            return stable(b.left, killed, defined) && stable(b.right, killed, defined);
+        }
+        return false;
+    }
+
+    /* ---------- Desenrollado por un factor ---------- */
+
+    private List<StmtNode> unroll(WhileNode w, Counter c) {
+        List<StmtNode> out = new ArrayList<>();
+        flattenDecls(w.body);
+        int margin = (factor - 1) * c.step;     // unroll() solo se llama si no desborda
+
+        ExprNode limit;
+        Integer k = constant(c.bound);
+        if (c.bound instanceof NumNode) {
+            long v = k - margin;
+            if (v != (int) v) v = c.step > 0 ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+            limit = new NumNode((int) v);
+        } else {
+            // unr$n = E - margen; si desborda, ninguna vuelta desenrollada
+            String t = temp("unr$");
+            out.add(new AssignNode(t, margin >= 0
+                ? new BinOpNode("-", AstUtil.copy(c.bound), new NumNode(margin))
+                : new BinOpNode("+", AstUtil.copy(c.bound), new NumNode(-margin))));
+            BinOpNode wrapped = new BinOpNode(c.step > 0 ? ">" : "<", new IdNode(t), AstUtil.copy(c.bound));
+            StmtListNode fix = new StmtListNode();
+            fix.add(new AssignNode(t, new IdNode(c.var)));
+            out.add(new IfNode(wrapped, new BlockNode(new DeclListNode(), fix), null));
+            limit = new IdNode(t);
+        }
+
+        StmtListNode body = new StmtListNode();
+        for (int f = 0; f < factor; f++) {
+            for (StmtNode s : w.body.stmts.stmts) body.add(AstUtil.copy(s));
+        }
+        ExprNode cond = new BinOpNode(c.step > 0 ? "<" : ">", new IdNode(c.var), limit);
+        out.add(new WhileNode(cond, new BlockNode(new DeclListNode(), body)));
+        out.add(w);     // resto
+        return out;
+    }
+
+    /* ---------- Utilidades ---------- */
+
+    private String temp(String prefix) {
+        String name = prefix + (++temps);
+        declare(name);
+        return name;
+    }
+
+    private void declare(String name) {
+        if (declared.add(name)) current.body.decls.add(new DeclNode(name, "int"));
+    }
+
+    /**
+     * Lleva las declaraciones de block y sus anidados al bloque principal de
+     * la función; las inicializaciones quedan como asignaciones en su lugar.
+     */
+    private void flattenDecls(BlockNode block) {
+        if (block.stmts == null) block.stmts = new StmtListNode();
+        if (block.decls != null && !block.decls.decls.isEmpty()) {
+            List<StmtNode> head = new ArrayList<>();
+            for (DeclNode d : block.decls.decls) {
+                declare(d.name);
+                if (d.init != null) head.add(new AssignNode(d.name, d.init));
+            }
+            block.decls.decls.clear();
+            head.addAll(block.stmts.stmts);
+            block.stmts.stmts = head;
+        }
+        for (StmtNode s : block.stmts.stmts) {
+            if (s instanceof IfNode) {
+                flattenDecls(((IfNode) s).thenBlock);
+                if (((IfNode) s).elseBlock != null) flattenDecls(((IfNode) s).elseBlock);
+            } else if (s instanceof WhileNode) {
+                flattenDecls(((WhileNode) s).body);
+            }
+        }
+    }
+
+    /** Cantidad de definiciones (declaración con valor o asignación) de cada variable. */
+    private static void countDefinitions(BlockNode block, Map<String, Integer> out) {
+        if (block.decls != null) {
+            for (DeclNode d : block.decls.decls) if (d.init != null) out.merge(d.name, 1, Integer::sum);
+        }
+        if (block.stmts == null) return;
+        for (StmtNode s : block.stmts.stmts) {
+            if (s instanceof AssignNode) {
+                out.merge(((AssignNode) s).name, 1, Integer::sum);
+            } else if (s instanceof IfNode) {
+                countDefinitions(((IfNode) s).thenBlock, out);
+                if (((IfNode) s).elseBlock != null) countDefinitions(((IfNode) s).elseBlock, out);
+            } else if (s instanceof WhileNode) {
+                countDefinitions(((WhileNode) s).body, out);
+            }
+        }
+    }
+
+    private void collectConstants(BlockNode block, Map<String, Integer> definitions) {
+        if (block.decls != null) {
+            for (DeclNode d : block.decls.decls) {
+                if (d.init instanceof NumNode && definitions.get(d.name) == 1) {
+                    constants.put(d.name, ((NumNode) d.init).value);
+                }
+            }
+        }
+        if (block.stmts == null) return;
+        for (StmtNode s : block.stmts.stmts) {
+            if (s instanceof IfNode) {
+                collectConstants(((IfNode) s).thenBlock, definitions);
+                if (((IfNode) s).elseBlock != null) collectConstants(((IfNode) s).elseBlock, definitions);
+            } else if (s instanceof WhileNode) {
+                collectConstants(((WhileNode) s).body, definitions);
+            }
+        }
+    }
+
+    @Override
+    public void visit(ParamListNode node) { }
+    @Override
+    public void visit(ParamNode node) { }
+    @Override
+    public void visit(BlockNode node) { }
+    @Override
+    public void visit(DeclListNode node) { }
+    @Override
+    public void visit(DeclNode node) { }
+    @Override
+    public void visit(StmtListNode node) { }
+    @Override
+    public void visit(AssignNode node) { }
+    @Override
+    public void visit(IfNode node) { }
+    @Override
+    public void visit(WhileNode node) { }
+    @Override
+    public void visit(ReturnNode node) { }
+    @Override
+    public void visit(BinOpNode node) { }
+    @Override
+    public void visit(UnaryOpNode node) { }
+    @Override
+    public void visit(NumNode node) { }
+    @Override
+    public void visit(IdNode node) { }
+    @Override
+    public void visit(CallNode node) { }
+}
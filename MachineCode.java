@@ -0,0 +1,194 @@
+import java.util.*;
+
+/* ---------------- Instrucciones de máquina del generador x86-64 ---------------- */
+
+/*
+ * El generador emite objetos Insn en una lista por función en lugar de texto;
+ * la sintaxis AT&T se arma recién al serializar, después del peephole.
+ */
+final class Insn {
+    enum Kind { OP, LABEL, COMMENT }
+
+    final Kind kind;
+    final String op;        // mnemónico, nombre de la etiqueta o texto del comentario
+    final String[] args;    // operandos en orden AT&T (origen, destino)
+
+    private Insn(Kind kind, String op, String... args) {
+        this.kind = kind;
+        this.op = op;
+        this.args = args;
+    }
+
+    static Insn op(String op, String... args) { return new Insn(Kind.OP, op, args); }
+    static Insn label(String name) { return new Insn(Kind.LABEL, name); }
+    static Insn comment(String text) { return new Insn(Kind.COMMENT, text); }
+
+    boolean isOp() { return kind == Kind.OP; }
+    boolean isLabel() { return kind == Kind.LABEL; }
+    boolean is(String mnemonic) { return kind == Kind.OP && op.equals(mnemonic); }
+
+    String arg(int i) { return args[i]; }
+
+    /** jmp y saltos condicionales; el operando es la etiqueta destino. */
+    boolean isJump() { return kind == Kind.OP && op.startsWith("j"); }
+
+    /** Después de estas instrucciones no se sigue a la siguiente. */
+    boolean endsFlow() { return is("jmp") || is("ret"); }
+
+    @Override
+    public String toString() {
+        switch (kind) {
+            case LABEL:
+                return op + ":";
+            case COMMENT:
+                return "        # " + op;
+            default:
+                if (args.length == 0) return "        " + op;
+                return "        " + String.format("%-7s ", op) + String.join(", ", args);
+        }
+    }
+}
+
+/* ---------------- Optimizador peephole ---------------- */
+
+/*
+ * Recorre la lista de instrucciones de una función aplicando reglas locales
+ * hasta que ninguna cambia nada:
+ *
+ *   pushq X / popq Y         -> movq X, Y (o nada si X == Y)
+ *   movq A, B / movq B, A    -> movq A, B (la recarga es redundante)
+ *   movq X, X                -> nada
+ *   jmp L / L:               -> L:
+ *   jmp/jcc L, con L: jmp M  -> jmp/jcc M (salto a un salto)
+ *   jmp L, con L: ret        -> ret
+ *   L_...: sin ningún salto que la use -> se elimina la etiqueta
+ *   jmp/ret ... hasta la próxima etiqueta -> código inalcanzable, se elimina
+ */
+class Peephole {
+    private int removed = 0;
+    private boolean rewritten;      // la pasada reemplazó algún salto
+
+    public int getRemoved() { return removed; }
+
+    public List<Insn> run(List<Insn> code) {
+        List<Insn> cur = new ArrayList<>(code);
+        boolean changed = true;
+        while (changed) {
+            int before = cur.size();
+            rewritten = false;
+            cur = pass(cur);
+            changed = rewritten || cur.size() != before;
+        }
+        removed += count(code) - count(cur);
+        return cur;
+    }
+
+    /** Cantidad de instrucciones reales (sin etiquetas ni comentarios). */
+    static int count(List<Insn> code) {
+        int n = 0;
+        for (Insn i : code) if (i.isOp()) n++;
+        return n;
+    }
+
+    private List<Insn> pass(List<Insn> in) {
+        List<Insn> out = new ArrayList<>(in.size());
+        boolean unreachable = false;
+        Map<String, Insn> firstOp = firstOps(in);
+        Set<String> targets = new HashSet<>();
+        for (Insn i : in) if (i.isJump()) targets.add(thread(i.arg(0), firstOp));
+
+        for (int k = 0; k < in.size(); k++) {
+            Insn i = in.get(k);
+
+            if (i.isJump()) {
+                String target = thread(i.arg(0), firstOp);
+                Insn there = firstOp.get(target);
+                if (i.is("jmp") && there != null && there.is("ret")) {
+                    i = Insn.op("ret");
+                    rewritten = true;
+                } else if (!target.equals(i.arg(0))) {
+                    i = Insn.op(i.op, target);
+                    rewritten = true;
+                }
+            }
+
+            if (i.isLabel() && i.op.startsWith("L_") && !targets.contains(i.op)) continue;
+            if (i.isLabel()) unreachable = false;
+            if (unreachable && i.isOp()) continue;
+
+            Insn prev = lastOp(out);
+
+            if (i.is("movq") && i.arg(0).equals(i.arg(1))) continue;
+
+            if (i.is("popq") && prev != null && prev.is("pushq") && lastIsOp(out)) {
+                out.remove(out.size() - 1);
+                if (!prev.arg(0).equals(i.arg(0))) out.add(Insn.op("movq", prev.arg(0), i.arg(0)));
+                continue;
+            }
+
+            if (i.is("movq") && prev != null && prev.is("movq") && lastIsOp(out)
+                    && prev.arg(0).equals(i.arg(1)) && prev.arg(1).equals(i.arg(0))) {
+                continue;
+            }
+
+            if (i.is("jmp") && jumpsToFollowingLabel(in, k)) continue;
+
+            out.add(i);
+            if (i.endsFlow()) unreachable = true;
+        }
+        return out;
+    }
+
+    /** Primera instrucción real después de cada etiqueta. */
+    private static Map<String, Insn> firstOps(List<Insn> in) {
+        Map<String, Insn> out = new HashMap<>();
+        List<String> pending = new ArrayList<>();
+        for (Insn i : in) {
+            if (i.isLabel()) {
+                pending.add(i.op);
+            } else if (i.isOp()) {
+                for (String l : pending) out.put(l, i);
+                pending.clear();
+            }
+        }
+        return out;
+    }
+
+    /** Destino final de una cadena de jmp (se corta si vuelve sobre sí misma). */
+    private static String thread(String label, Map<String, Insn> firstOp) {
+        Set<String> seen = new HashSet<>();
+        while (seen.add(label)) {
+            Insn i = firstOp.get(label);
+            if (i == null || !i.is("jmp")) break;
+            label = i.arg(0);
+        }
+        return label;
+    }
+
+    private static Insn lastOp(List<Insn> out) {
+        for (int k = out.size() - 1; k >= 0; k--) {
+            if (out.get(k).isOp()) return out.get(k);
+            if (out.get(k).isLabel()) return null;
+        }
+        return null;
+    }
+
+    /** La instrucción anterior es contigua (sin etiqueta en el medio). */
+    private static boolean lastIsOp(List<Insn> out) {
+        for (int k = out.size() - 1; k >= 0; k--) {
+            if (out.get(k).isLabel()) return false;
+            if (out.get(k).isOp()) return true;
+        }
+        return false;
+    }
+
+    private static boolean jumpsToFollowingLabel(List<Insn> in, int k) {
+        String target = in.get(k).arg(0);
+        for (int j = k + 1; j < in.size(); j++) {
+            Insn n = in.get(j);
+            if (n.isOp()) return false;
+            if (n.isLabel() && n.op.equals(target)) return true;
+        }
+        return false;
+    }
+}
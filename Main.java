@@ -21,21 +21,103 @@ public class Main {
                 System.exit(1);
             }
 
+            // Transformaciones sobre el AST (las usan el intérprete y el generador)
+            Inliner inliner = optimize(root, argv, System.out);
+
             // Etapa 3: Interpretación simbólica (opcional)
             System.out.println("=== Etapa 3: Ejecución simbólica ===");
+            boolean pgo = java.util.Arrays.asList(argv).contains("--pgo");
+            ProfileData profile = null;
             try {
                 Interpreter interp = new Interpreter();
+                interp.setTrace(java.util.Arrays.asList(argv).contains("--traza"));
+                interp.setProfiling(java.util.Arrays.asList(argv).contains("--perfil") || pgo);
                 root.accept(interp);
+                if (pgo) {
+                    profile = ProfileData.record(interp.getProfiler(), interp.getProgram(), root);
+                    try {
+                        profile.save("perfil.pgo");
+                        System.out.println("Perfil para optimización guiada en 'perfil.pgo'");
+                    } catch (IOException e) {
+                        System.err.println("⚠️  No se pudo guardar el perfil: " + e.getMessage());
+                    }
+                }
+                if (java.util.Arrays.asList(argv).contains("--perfil")) {
+                    System.out.println("\n=== Perfil de ejecución ===");
+                    interp.getProfiler().printTable(System.out);
+                    try (PrintStream folded = new PrintStream("perfil.folded", "UTF-8")) {
+                        interp.getProfiler().writeCollapsed(folded);
+                    }
+                    System.out.println("Pilas plegadas (flame graph) en 'perfil.folded'\n");
+                }
+                System.out.println("Funciones puras (memoizadas): " + interp.getPureFunctions());
+                System.out.println("Memoización: " + interp.getMemoHits() + " aciertos, "
+                                   + interp.getMemoMisses() + " fallos");
                 System.out.println("Interpretación finalizada\n");
             } catch (RuntimeException e) {
                 System.err.println("\n⚠️  Error durante la ejecución simbólica: " + e.getMessage());
                 System.err.println("Continuando con la generación de código...\n");
             }
 
+            // Optimización guiada por perfil: el de esta ejecución (--pgo) o uno guardado
+            for (String a : argv) {
+                if (!pgo && a.startsWith("--usar-perfil=")) {
+                    try {
+                        profile = ProfileData.load(a.substring(14));
+                        profile.bind(root);
+                    } catch (IOException e) {
+                        System.err.println("⚠️  No se pudo leer el perfil: " + e.getMessage());
+                    }
+                }
+            }
+            if (profile != null) {
+                System.out.println("=== Optimización guiada por perfil ===");
+                System.out.println("Perfil: " + profile.getBranches() + " condicionales, " + profile.getLoops()
+                                   + " bucles, " + profile.getSites() + " llamadas");
+                if (!profile.getStale().isEmpty()) {
+                    System.out.println("Funciones que cambiaron desde el perfil (se ignoran): " + profile.getStale());
+                }
+                inliner.setProfile(profile);
+                root.accept(inliner);
+                for (String d : inliner.getDecisions()) System.out.println(d);
+                System.out.println("Llamadas calientes expandidas: " + inliner.getInlined() + " de "
+                                   + inliner.getSites() + "\n");
+            }
+
             // Etapa 4: Generación de código ensamblador (x86-64 para Windows)
             System.out.println("=== Etapa 4: Generación de código (x86-64 Windows) ===");
             X86_64Generator gen = new X86_64Generator();
+            gen.setProfile(profile);
+            java.util.List<String> flags = java.util.Arrays.asList(argv);
+            int level = flags.contains("-O0") ? 0 : flags.contains("-O2") ? 2 : 1;
+            gen.setOptLevel(level);
+            gen.setDumpIr(flags.contains("--ir"));
             root.accept(gen);
+            if (level >= 1) {
+                System.out.println("=== Optimización SSA (-O" + level + ") ===");
+                gen.getPassManager().printReport(System.out);
+                GlobalValueNumbering gvn = gen.getPassManager().find(GlobalValueNumbering.class);
+                System.out.println("Subexpresiones comunes eliminadas: " + gvn.getLocal() + " en el mismo bloque, "
+                                   + gvn.getGlobal() + " desde un bloque dominador");
+                if (flags.contains("--ir")) {
+                    System.out.println("\n=== IR SSA ===");
+                    System.out.print(gen.getIrDump());
+                }
+            }
+            System.out.println("Instrucciones: " + gen.getInstructionsBefore() + " antes del peephole, "
+                               + gen.getInstructionsAfter() + " después");
+            System.out.println("Derrames: " + gen.getSpilledValues() + " valores en "
+                               + gen.getFrameSlots() + " posiciones del marco");
+            System.out.println("Marcos: " + gen.getLeafFunctions() + " funciones hoja, "
+                               + gen.getFramelessFunctions() + " sin %rbp");
+            System.out.println("Selecciones sin salto (cmov): " + gen.getConditionalMoves());
+            System.out.println("Saltos: " + gen.getJumps() + " incondicionales, "
+                               + gen.getConditionalJumps() + " condicionales");
+            if (profile != null) {
+                System.out.println("Guiado por perfil: " + gen.getReorderedBranches() + " ramas reordenadas, "
+                                   + gen.getColdBlocks() + " bloques fríos, "
+                                   + gen.getColdFunctions() + " funciones frías");
+            }
 
             String asm = gen.getAsm();
             try (PrintWriter out = new PrintWriter("program.asm")) {
@@ -48,4 +130,75 @@ public class Main {
             e.printStackTrace();
         }
     }
+
+    /**
+     * Transformaciones sobre el AST, en el orden en que las ven el intérprete
+     * y el generador; cada una informa en out. La usa también BatchRunner,
+     * así los dos corren el mismo programa. Devuelve el Inliner para la
+     * segunda vuelta guiada por perfil.
+     */
+    static Inliner optimize(ProgramNode root, String[] argv, PrintStream out) {
+        out.println("=== Optimización: propagación interprocedural de constantes ===");
+        FunctionSpecializer specializer = new FunctionSpecializer();
+        root.accept(specializer);
+        for (String r : specializer.getReport()) out.println(r);
+        out.println("Parámetros constantes: " + specializer.getPropagated()
+                    + ", clones: " + specializer.getClones()
+                    + " (" + specializer.getRedirected() + " llamadas redirigidas)\n");
+
+        out.println("=== Optimización: recursión de cola ===");
+        TailCallOptimizer tco = new TailCallOptimizer();
+        root.accept(tco);
+        out.println("Funciones transformadas en bucles: " + tco.getReport() + "\n");
+
+        out.println("=== Optimización: expansión en línea ===");
+        Inliner inliner = new Inliner();
+        root.accept(inliner);
+        for (String d : inliner.getDecisions()) out.println(d);
+        out.println("Llamadas expandidas: " + inliner.getInlined() + " de " + inliner.getSites() + "\n");
+
+        out.println("=== Optimización: bucles ===");
+        LoopUnroller unroller = new LoopUnroller();
+        for (String a : argv) {
+            if (a.startsWith("--desenrollar=")) {
+                try {
+                    int n = Integer.parseInt(a.substring(14));
+                    if (n < 1) throw new NumberFormatException();
+                    unroller.setFactor(n);
+                } catch (NumberFormatException e) {
+                    System.err.println("⚠️  Factor de desenrollado inválido: " + a.substring(14)
+                                       + " (se usa " + unroller.getFactor() + ")");
+                }
+            }
+        }
+        root.accept(unroller);
+        out.println("Multiplicaciones reducidas a sumas: " + unroller.getReduced()
+                    + ", desenrollados completos: " + unroller.getFullyUnrolled()
+                    + ", desenrollados por " + unroller.getFactor() + ": "
+                    + unroller.getPartiallyUnrolled() + "\n");
+
+        out.println("=== Optimización: plegado de constantes ===");
+        ConstantFolder folder = new ConstantFolder();
+        root.accept(folder);
+        out.println("Expresiones plegadas: " + folder.getFolded()
+                    + ", variables propagadas: " + folder.getPropagated()
+                    + ", ramas podadas: " + folder.getPruned() + "\n");
+
+        out.println("=== Optimización: código muerto ===");
+        DeadStoreEliminator dse = new DeadStoreEliminator();
+        root.accept(dse);
+        out.println("Sentencias inalcanzables: " + dse.getUnreachable()
+                    + ", asignaciones muertas: " + dse.getDeadStores()
+                    + ", declaraciones sin uso: " + dse.getUnusedDecls());
+        out.println("Ahorro: " + dse.getInstructionsSaved() + " instrucciones de bytecode, "
+                    + dse.getSlotsSaved() + " posiciones de pila\n");
+
+        out.println("=== Optimización: código invariante de bucles ===");
+        LoopInvariantMotion licm = new LoopInvariantMotion();
+        root.accept(licm);
+        out.println("Expresiones sacadas de bucles: " + licm.getHoisted() + " en "
+                    + licm.getLoops() + " bucles (" + licm.getReplaced() + " usos reemplazados)\n");
+
+        return inliner;
+    }
 }
@@ -0,0 +1,75 @@
+import java.util.*;
+
+/* ---------------- Caché de memoización para funciones puras ---------------- */
+
+/*
+ * Caché acotada con desalojo LRU. La clave es la función más sus argumentos
+ * como int[] (sin boxing), así que buscar una llamada no crea Integer.
+ */
+class MemoCache {
+    static final int DEFAULT_CAPACITY = 4096;
+
+    private final int capacity;
+    private final LinkedHashMap<Key, Integer> entries;
+    private long hits = 0;
+    private long misses = 0;
+
+    MemoCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    MemoCache(int capacity) {
+        this.capacity = capacity;
+        // accessOrder = true: el recorrido va del menos al más recientemente usado
+        this.entries = new LinkedHashMap<Key, Integer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Integer> eldest) {
+                return size() > MemoCache.this.capacity;
+            }
+        };
+    }
+
+    /** Devuelve el valor memoizado o null si no está; actualiza los contadores. */
+    public Integer lookup(String function, int[] args) {
+        Integer v = entries.get(new Key(function, args));
+        if (v != null) hits++; else misses++;
+        return v;
+    }
+
+    public void store(String function, int[] args, int value) {
+        entries.put(new Key(function, args), value);
+    }
+
+    public long getHits() { return hits; }
+    public long getMisses() { return misses; }
+    public int size() { return entries.size(); }
+    public int getCapacity() { return capacity; }
+
+    public void clear() {
+        entries.clear();
+        hits = 0;
+        misses = 0;
+    }
+
+    private static final class Key {
+        final String function;
+        final int[] args;
+        final int hash;
+
+        Key(String function, int[] args) {
+            this.function = function;
+            this.args = args;
+            this.hash = 31 * function.hashCode() + Arrays.hashCode(args);
+        }
+
+        @Override
+        public int hashCode() { return hash; }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return hash == k.hash && function.equals(k.function) && Arrays.equals(args, k.args);
+        }
+    }
+}
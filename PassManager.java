@@ -0,0 +1,85 @@
+import java.io.*;
+import java.util.*;
+
+/* ---------------- Administrador de pases sobre la IR SSA ---------------- */
+
+/** Un pase de optimización sobre una función en SSA. */
+interface SsaPass {
+    String name();
+
+    /** Devuelve true si cambió la función. */
+    boolean run(IrFunction f);
+}
+
+/*
+ * Arma el pipeline de cada nivel y mide cada pase:
+ *
+ *   -O0  sin IR: el generador trabaja directo sobre el AST
+ *   -O1  una vuelta de simplify-cfg, sccp, gvn, dce, if-conversion, simplify-cfg
+ *   -O2  el mismo pipeline repetido hasta que ningún pase cambie nada
+ */
+class PassManager {
+    private static final int MAX_ROUNDS = 8;
+
+    private final int level;
+    private final List<SsaPass> pipeline = new ArrayList<>();
+
+    // Por nombre de pase: ejecuciones, ejecuciones con cambios, nanosegundos
+    private final Map<String, long[]> stats = new LinkedHashMap<>();
+
+    PassManager(int level) {
+        this.level = level;
+    }
+
+    /** Pipeline del nivel; gvn reusa llamadas solo a las funciones de pureFunctions. */
+    static PassManager forLevel(int level, Set<String> pureFunctions) {
+        PassManager pm = new PassManager(level);
+        if (level >= 1) {
+            pm.add(new SimplifyCfg());
+            pm.add(new SparseConditionalConstantPropagation());
+            pm.add(new GlobalValueNumbering(pureFunctions));
+            pm.add(new DeadCodeElimination());
+            pm.add(new IfConversion());
+            pm.add(new SimplifyCfg());
+        }
+        return pm;
+    }
+
+    public int getLevel() { return level; }
+
+    /** El pase del pipeline con ese tipo, o null si el nivel no lo usa. */
+    <T extends SsaPass> T find(Class<T> type) {
+        for (SsaPass p : pipeline) if (type.isInstance(p)) return type.cast(p);
+        return null;
+    }
+
+    void add(SsaPass pass) {
+        pipeline.add(pass);
+        stats.putIfAbsent(pass.name(), new long[3]);
+    }
+
+    public void run(IrFunction f) {
+        int rounds = level >= 2 ? MAX_ROUNDS : 1;
+        for (int r = 0; r < rounds; r++) {
+            boolean changed = false;
+            for (SsaPass pass : pipeline) {
+                long start = System.nanoTime();
+                boolean c = pass.run(f);
+                long[] s = stats.get(pass.name());
+                s[0]++;
+                if (c) s[1]++;
+                s[2] += System.nanoTime() - start;
+                changed |= c;
+            }
+            if (!changed) break;
+        }
+    }
+
+    public void printReport(PrintStream out) {
+        out.println(String.format("%-20s %10s %10s %12s", "Pase", "Ejecuciones", "Cambios", "Tiempo (ms)"));
+        for (Map.Entry<String, long[]> e : stats.entrySet()) {
+            long[] s = e.getValue();
+            out.println(String.format("%-20s %10d %10d %12.3f", e.getKey(), s[0], s[1], s[2] / 1e6));
+        }
+    }
+}
@@ -0,0 +1,249 @@
+import java.io.*;
+import java.util.*;
+
+/* ---------------- Perfil para optimización guiada ---------------- */
+
+/*
+ * Conteos de la ejecución del intérprete que aprovechan el Inliner y el
+ * generador: cuántas veces corrió cada rama de un if, cuántas vueltas dio
+ * cada while y cuántas veces se ejecutó cada llamada. Cada nodo se nombra
+ * por su función, su tipo y su posición entre los de ese tipo en la función
+ * ("if main 2" es el tercer if de main), así el perfil se guarda en un
+ * archivo de texto y sirve para otra compilación del mismo programa:
+ *
+ *   funcion main 1 2 1 3       llamadas; cantidad de if, while y llamadas
+ *   if main 0 15 3             veces que corrió el then, veces el else
+ *   while main 0 1 100         entradas, vueltas
+ *   llamada main 0 suma 15     función llamada, veces
+ *
+ * Una función cuya forma (cantidad de if, while y llamadas, o a quién llama
+ * cada llamada) no coincide con la del archivo cambió desde que se tomó el
+ * perfil: sus conteos se descartan.
+ *
+ * Las llamadas a funciones puras que resuelve la memoización del intérprete
+ * no ejecutan el cuerpo, así que los conteos de adentro cubren solo las
+ * ejecuciones reales; las proporciones entre ramas siguen valiendo.
+ */
+class ProfileData {
+    static final long HOT_CALLS = 100;     // ejecuciones para que una llamada sea caliente
+    static final long COLD_RATIO = 16;     // fría: corre menos de 1 de cada 16 veces
+
+    private final Map<String, Long> functionCalls = new LinkedHashMap<>();
+    private final Map<String, int[]> shapes = new LinkedHashMap<>();
+    private final Map<String, long[]> branches = new LinkedHashMap<>();  // "main 0" -> {then, else}
+    private final Map<String, long[]> loops = new LinkedHashMap<>();     // "main 0" -> {entradas, vueltas}
+    private final Map<String, long[]> sites = new LinkedHashMap<>();     // "main 0" -> {veces}
+    private final Map<String, String> callees = new HashMap<>();
+
+    // Conteos por nodo del programa que se está compilando (ver bind)
+    private final Map<ASTNode, long[]> byNode = new IdentityHashMap<>();
+    private final List<String> stale = new ArrayList<>();
+
+    /** Arma el perfil con los contadores de una ejecución del programa root. */
+    static ProfileData record(Profiler prof, CompiledProgram program, ProgramNode root) {
+        ProfileData p = new ProfileData();
+        Map<ASTNode, String> keys = new IdentityHashMap<>();
+        for (FunctionNode f : functions(root)) {
+            List<IfNode> ifs = new ArrayList<>();
+            List<WhileNode> whiles = new ArrayList<>();
+            List<CallNode> calls = new ArrayList<>();
+            nodes(f.body, ifs, whiles, calls);
+            p.shapes.put(f.name, new int[] {ifs.size(), whiles.size(), calls.size()});
+            for (int k = 0; k < ifs.size(); k++) keys.put(ifs.get(k), f.name + " " + k);
+            for (int k = 0; k < whiles.size(); k++) keys.put(whiles.get(k), f.name + " " + k);
+            for (int k = 0; k < calls.size(); k++) {
+                keys.put(calls.get(k), f.name + " " + k);
+                p.callees.put(f.name + " " + k, calls.get(k).functionName);
+            }
+        }
+
+        for (int fn = 0; fn < prof.getFunctionCount(); fn++) {
+            p.functionCalls.put(prof.getFunctionName(fn), prof.getCalls(fn));
+        }
+        for (int id = 0; id < prof.getBranchCount(); id++) {
+            String k = keys.get(program.branchNode(id));
+            if (k != null) p.branches.put(k, new long[] {prof.getBranchTaken(id), prof.getBranchNotTaken(id)});
+        }
+        for (int id = 0; id < prof.getLoopCount(); id++) {
+            String k = keys.get(program.loopNode(id));
+            if (k != null) p.loops.put(k, new long[] {prof.getLoopEntries(id), prof.getLoopIterations(id)});
+        }
+        for (int id = 0; id < prof.getSiteCount(); id++) {
+            String k = keys.get(program.callNode(id));
+            if (k != null) p.sites.put(k, new long[] {prof.getSiteCalls(id)});
+        }
+        p.bind(root);
+        return p;
+    }
+
+    /* ---------- Archivo ---------- */
+
+    void save(String file) throws IOException {
+        try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+            out.println("# perfil de ejecución de Mini");
+            for (Map.Entry<String, int[]> e : shapes.entrySet()) {
+                int[] s = e.getValue();
+                long calls = functionCalls.getOrDefault(e.getKey(), 0L);
+                out.println("funcion " + e.getKey() + " " + calls + " " + s[0] + " " + s[1] + " " + s[2]);
+            }
+            for (Map.Entry<String, long[]> e : branches.entrySet()) {
+                out.println("if " + e.getKey() + " " + e.getValue()[0] + " " + e.getValue()[1]);
+            }
+            for (Map.Entry<String, long[]> e : loops.entrySet()) {
+                out.println("while " + e.getKey() + " " + e.getValue()[0] + " " + e.getValue()[1]);
+            }
+            for (Map.Entry<String, long[]> e : sites.entrySet()) {
+                String[] k = e.getKey().split(" ");
+                out.println("llamada " + k[0] + " " + k[1] + " " + callees.get(e.getKey()) + " " + e.getValue()[0]);
+            }
+        }
+    }
+
+    static ProfileData load(String file) throws IOException {
+        ProfileData p = new ProfileData();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] w = line.split("\\s+");
+                try {
+                    switch (w[0]) {
+                        case "funcion":
+                            p.functionCalls.put(w[1], Long.parseLong(w[2]));
+                            p.shapes.put(w[1], new int[] {Integer.parseInt(w[3]), Integer.parseInt(w[4]),
+                                                          Integer.parseInt(w[5])});
+                            break;
+                        case "if":
+                            p.branches.put(w[1] + " " + w[2], new long[] {Long.parseLong(w[3]), Long.parseLong(w[4])});
+                            break;
+                        case "while":
+                            p.loops.put(w[1] + " " + w[2], new long[] {Long.parseLong(w[3]), Long.parseLong(w[4])});
+                            break;
+                        case "llamada":
+                            p.sites.put(w[1] + " " + w[2], new long[] {Long.parseLong(w[4])});
+                            p.callees.put(w[1] + " " + w[2], w[3]);
+                            break;
+                        default:
+                            throw new IOException("Línea inválida en el perfil: " + line);
+                    }
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    throw new IOException("Línea inválida en el perfil: " + line);
+                }
+            }
+        }
+        return p;
+    }
+
+    /* ---------- Asociación con el AST ---------- */
+
+    /** Asocia los conteos a los nodos de root; las funciones que cambiaron quedan en getStale(). */
+    void bind(ProgramNode root) {
+        byNode.clear();
+        stale.clear();
+        for (FunctionNode f : functions(root)) {
+            int[] shape = shapes.get(f.name);
+            if (shape == null) continue;
+            List<IfNode> ifs = new ArrayList<>();
+            List<WhileNode> whiles = new ArrayList<>();
+            List<CallNode> calls = new ArrayList<>();
+            nodes(f.body, ifs, whiles, calls);
+            boolean same = Arrays.equals(shape, new int[] {ifs.size(), whiles.size(), calls.size()});
+            for (int k = 0; same && k < calls.size(); k++) {
+                String callee = callees.get(f.name + " " + k);
+                same = callee == null || callee.equals(calls.get(k).functionName);
+            }
+            if (!same) {
+                stale.add(f.name);
+                continue;
+            }
+            for (int k = 0; k < ifs.size(); k++) bindNode(ifs.get(k), branches.get(f.name + " " + k));
+            for (int k = 0; k < whiles.size(); k++) bindNode(whiles.get(k), loops.get(f.name + " " + k));
+            for (int k = 0; k < calls.size(); k++) bindNode(calls.get(k), sites.get(f.name + " " + k));
+        }
+    }
+
+    private void bindNode(ASTNode node, long[] counts) {
+        if (counts != null) byNode.put(node, counts);
+    }
+
+    private static List<FunctionNode> functions(ProgramNode root) {
+        return root.functions != null ? root.functions.functions : Collections.emptyList();
+    }
+
+    /** If, while y llamadas del bloque en orden de aparición. */
+    private static void nodes(BlockNode block, List<IfNode> ifs, List<WhileNode> whiles, List<CallNode> calls) {
+        if (block.decls != null) {
+            for (DeclNode d : block.decls.decls) if (d.init != null) nodes(d.init, calls);
+        }
+        if (block.stmts == null) return;
+        for (StmtNode s : block.stmts.stmts) {
+            if (s instanceof AssignNode) {
+                nodes(((AssignNode) s).expr, calls);
+            } else if (s instanceof ReturnNode) {
+                if (((ReturnNode) s).expr != null) nodes(((ReturnNode) s).expr, calls);
+            } else if (s instanceof IfNode) {
+                IfNode ifn = (IfNode) s;
+                ifs.add(ifn);
+                nodes(ifn.condition, calls);
+                nodes(ifn.thenBlock, ifs, whiles, calls);
+                if (ifn.elseBlock != null) nodes(ifn.elseBlock, ifs, whiles, calls);
+            } else if (s instanceof WhileNode) {
+                WhileNode w = (WhileNode) s;
+                whiles.add(w);
+                nodes(w.condition, calls);
+                nodes(w.body, ifs, whiles, calls);
+            }
+        }
+    }
+
+    private static void nodes(ExprNode e, List<CallNode> calls) {
+        if (e instanceof CallNode) {
+            calls.add((CallNode) e);
+            for (ExprNode a : ((CallNode) e).args) nodes(a, calls);
+        } else if (e instanceof BinOpNode) {
+            nodes(((BinOpNode) e).left, calls);
+            nodes(((BinOpNode) e).right, calls);
+        } else if (e instanceof UnaryOpNode) {
+            nodes(((UnaryOpNode) e).expr, calls);
+        }
+    }
+
+    /* ---------- Consultas ---------- */
+
+    /** {veces then, veces else} de un if, o null si no hay datos. */
+    long[] branch(IfNode node) { return byNode.get(node); }
+
+    /** {entradas, vueltas} de un while, o null si no hay datos. */
+    long[] loop(WhileNode node) { return byNode.get(node); }
+
+    /** Veces que se ejecutó una llamada, o -1 si no hay datos. */
+    long calls(CallNode node) {
+        long[] c = byNode.get(node);
+        return c != null ? c[0] : -1;
+    }
+
+    /** Veces que se llamó a una función, o -1 si no hay datos. */
+    long calls(String function) {
+        return stale.contains(function) ? -1 : functionCalls.getOrDefault(function, -1L);
+    }
+
+    boolean isHot(CallNode node) {
+        return calls(node) >= HOT_CALLS;
+    }
+
+    /** Función que el perfil vio y que nunca se llamó. */
+    boolean isCold(String function) {
+        return !function.equals("main") && calls(function) == 0;
+    }
+
+    /** Una parte que corrió count de total veces es fría si nunca corrió o casi nunca. */
+    static boolean isCold(long count, long total) {
+        return count == 0 || count * COLD_RATIO < total;
+    }
+
+    public List<String> getStale() { return stale; }
+    public int getBranches() { return branches.size(); }
+    public int getLoops() { return loops.size(); }
+    public int getSites() { return sites.size(); }
+}
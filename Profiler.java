@@ -0,0 +1,200 @@
+import java.io.*;
+import java.util.*;
+
+/* ---------------- Perfilador de ejecución del intérprete ---------------- */
+
+/*
+ * Los contadores viven en arreglos preasignados indexados por el id que el
+ * BytecodeCompiler asigna a cada FunctionNode, WhileNode, IfNode y CallNode; la VM solo
+ * ejecuta las instrucciones PROF_* cuando el programa se compiló con perfil.
+ *
+ * Para el formato "collapsed stack" (flamegraph.pl, speedscope, etc.) se
+ * arma un árbol de contextos de llamada. La recursión directa se pliega en
+ * un solo nodo para que las pilas no crezcan con la profundidad; la
+ * profundidad máxima se reporta aparte.
+ */
+class Profiler {
+    private final String[] functionNames;
+    private final String[] loopLabels;
+    private final String[] branchLabels;
+    private final String[] callLabels;
+
+    // Por función
+    private final long[] calls;
+    private final long[] inclusiveNs;
+    private final long[] exclusiveNs;
+    private final int[] activeDepth;
+    private final int[] maxDepth;
+
+    // Por WhileNode / IfNode / CallNode
+    private final long[] loopEntries;
+    private final long[] loopIterations;
+    private final long[] branchTaken;
+    private final long[] branchNotTaken;
+    private final long[] siteCalls;
+
+    // Pila de sombra de llamadas activas
+    private int depth = 0;
+    private int[] frameNode = new int[256];
+    private long[] frameStart = new long[256];
+    private long[] frameChildNs = new long[256];
+
+    // Árbol de contextos de llamada (nodo 0 = raíz)
+    private int[] cctParent = new int[64];
+    private int[] cctFn = new int[64];
+    private long[] cctSelfNs = new long[64];
+    private int cctSize = 1;
+    private final HashMap<Long, Integer> cctChildren = new HashMap<>();
+
+    Profiler(String[] functionNames, String[] loopLabels, String[] branchLabels, String[] callLabels) {
+        this.functionNames = functionNames;
+        this.loopLabels = loopLabels;
+        this.branchLabels = branchLabels;
+        this.callLabels = callLabels;
+
+        int nf = functionNames.length;
+        calls = new long[nf];
+        inclusiveNs = new long[nf];
+        exclusiveNs = new long[nf];
+        activeDepth = new int[nf];
+        maxDepth = new int[nf];
+        loopEntries = new long[loopLabels.length];
+        loopIterations = new long[loopLabels.length];
+        branchTaken = new long[branchLabels.length];
+        branchNotTaken = new long[branchLabels.length];
+        siteCalls = new long[callLabels.length];
+        cctParent[0] = -1;
+        cctFn[0] = -1;
+    }
+
+    /* ---------- Eventos de la VM ---------- */
+
+    void enter(int fn) {
+        long now = System.nanoTime();
+        if (depth == frameNode.length) growFrames();
+
+        int parent = depth == 0 ? 0 : frameNode[depth - 1];
+        int node = cctFn[parent] == fn ? parent : cctChild(parent, fn);
+
+        frameNode[depth] = node;
+        frameStart[depth] = now;
+        frameChildNs[depth] = 0;
+        depth++;
+
+        calls[fn]++;
+        if (++activeDepth[fn] > maxDepth[fn]) maxDepth[fn] = activeDepth[fn];
+    }
+
+    void exit() {
+        long now = System.nanoTime();
+        depth--;
+        int fn = cctFn[frameNode[depth]];
+        long total = now - frameStart[depth];
+        long self = total - frameChildNs[depth];
+
+        exclusiveNs[fn] += self;
+        cctSelfNs[frameNode[depth]] += self;
+        // En recursión solo cuenta el tiempo inclusivo de la activación externa
+        if (--activeDepth[fn] == 0) inclusiveNs[fn] += total;
+        if (depth > 0) frameChildNs[depth - 1] += total;
+    }
+
+    void loop(int id, boolean entry) {
+        if (entry) loopEntries[id]++; else loopIterations[id]++;
+    }
+
+    void branch(int id, boolean taken) {
+        if (taken) branchTaken[id]++; else branchNotTaken[id]++;
+    }
+
+    void call(int id) {
+        siteCalls[id]++;
+    }
+
+    private int cctChild(int parent, int fn) {
+        long key = ((long) parent << 32) | fn;
+        Integer node = cctChildren.get(key);
+        if (node != null) return node;
+
+        if (cctSize == cctParent.length) {
+            cctParent = Arrays.copyOf(cctParent, cctSize * 2);
+            cctFn = Arrays.copyOf(cctFn, cctSize * 2);
+            cctSelfNs = Arrays.copyOf(cctSelfNs, cctSize * 2);
+        }
+        cctParent[cctSize] = parent;
+        cctFn[cctSize] = fn;
+        cctChildren.put(key, cctSize);
+        return cctSize++;
+    }
+
+    private void growFrames() {
+        int n = frameNode.length * 2;
+        frameNode = Arrays.copyOf(frameNode, n);
+        frameStart = Arrays.copyOf(frameStart, n);
+        frameChildNs = Arrays.copyOf(frameChildNs, n);
+    }
+
+    /* ---------- Consultas ---------- */
+
+    public long getCalls(int fn) { return calls[fn]; }
+    public long getInclusiveNs(int fn) { return inclusiveNs[fn]; }
+    public long getExclusiveNs(int fn) { return exclusiveNs[fn]; }
+    public int getMaxDepth(int fn) { return maxDepth[fn]; }
+    public long getLoopEntries(int id) { return loopEntries[id]; }
+    public long getLoopIterations(int id) { return loopIterations[id]; }
+    public long getBranchTaken(int id) { return branchTaken[id]; }
+    public long getBranchNotTaken(int id) { return branchNotTaken[id]; }
+    public long getSiteCalls(int id) { return siteCalls[id]; }
+    public int getLoopCount() { return loopLabels.length; }
+    public int getBranchCount() { return branchLabels.length; }
+    public int getSiteCount() { return callLabels.length; }
+    public int getFunctionCount() { return functionNames.length; }
+    public String getFunctionName(int fn) { return functionNames[fn]; }
+
+    /* ---------- Reportes ---------- */
+
+    public void printTable(PrintStream out) {
+        out.println(String.format("%-20s %10s %12s %12s %10s",
+                                  "Función", "Llamadas", "Incl (ms)", "Excl (ms)", "Prof. máx"));
+        for (int f = 0; f < functionNames.length; f++) {
+            out.println(String.format("%-20s %10d %12.3f %12.3f %10d", functionNames[f], calls[f],
+                                      inclusiveNs[f] / 1e6, exclusiveNs[f] / 1e6, maxDepth[f]));
+        }
+
+        if (loopLabels.length > 0) {
+            out.println();
+            out.println(String.format("%-44s %10s %12s", "Bucle", "Entradas", "Iteraciones"));
+            for (int i = 0; i < loopLabels.length; i++) {
+                out.println(String.format("%-44s %10d %12d", loopLabels[i], loopEntries[i], loopIterations[i]));
+            }
+        }
+
+        if (branchLabels.length > 0) {
+            out.println();
+            out.println(String.format("%-44s %10s %12s", "Condicional", "Tomado", "No tomado"));
+            for (int i = 0; i < branchLabels.length; i++) {
+                out.println(String.format("%-44s %10d %12d", branchLabels[i], branchTaken[i], branchNotTaken[i]));
+            }
+        }
+
+        if (callLabels.length > 0) {
+            out.println();
+            out.println(String.format("%-44s %10s", "Llamada", "Veces"));
+            for (int i = 0; i < callLabels.length; i++) {
+                out.println(String.format("%-44s %10d", callLabels[i], siteCalls[i]));
+            }
+        }
+    }
+
+    /** Una línea "main;f;g <microsegundos>" por contexto con tiempo propio. */
+    public void writeCollapsed(PrintStream out) {
+        for (int node = 1; node < cctSize; node++) {
+            long us = cctSelfNs[node] / 1000;
+            if (us == 0) continue;
+
+            ArrayDeque<String> path = new ArrayDeque<>();
+            for (int n = node; n > 0; n = cctParent[n]) path.addFirst(functionNames[cctFn[n]]);
+            out.println(String.join(";", path) + " " + us);
+        }
+    }
+}
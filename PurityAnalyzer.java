@@ -0,0 +1,171 @@
+import java.util.*;
+
+/* ---------------- Análisis de pureza de funciones ---------------- */
+
+/*
+ * Una función es pura si solo lee y escribe sus parámetros y variables
+ * locales, y solo llama a otras funciones puras. Para esas funciones el
+ * resultado depende únicamente de los argumentos, por lo que el intérprete
+ * puede memoizar sus llamadas.
+ *
+ * El análisis es optimista: parte de suponer puras a todas las funciones
+ * (así la recursión no se invalida a sí misma) y descarta iterativamente
+ * las que usan nombres no locales o llaman a funciones impuras/desconocidas.
+ */
+class PurityAnalyzer implements ASTVisitor {
+    private final Map<String, FunctionNode> functions = new LinkedHashMap<>();
+    private final Set<String> pure = new LinkedHashSet<>();
+
+    // Estado de la función que se está recorriendo
+    private Set<String> locals = new HashSet<>();
+    private Set<String> callees = new HashSet<>();
+    private boolean touchesNonLocal = false;
+
+    public Set<String> getPureFunctions() {
+        return Collections.unmodifiableSet(pure);
+    }
+
+    public boolean isPure(String functionName) {
+        return pure.contains(functionName);
+    }
+
+    @Override
+    public void visit(ProgramNode node) {
+        if (node.functions == null) return;
+
+        Map<String, Set<String>> callGraph = new HashMap<>();
+        for (FunctionNode func : node.functions.functions) {
+            functions.put(func.name, func);
+        }
+
+        // Paso 1: hechos locales de cada función
+        for (FunctionNode func : node.functions.functions) {
+            func.accept(this);
+            callGraph.put(func.name, callees);
+            if (!touchesNonLocal) {
+                pure.add(func.name);
+            }
+        }
+
+        // Paso 2: punto fijo sobre el grafo de llamadas
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            Iterator<String> it = pure.iterator();
+            while (it.hasNext()) {
+                String name = it.next();
+                for (String callee : callGraph.get(name)) {
+                    if (!pure.contains(callee)) {
+                        it.remove();
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void visit(FunctionListNode node) { }
+
+    @Override
+    public void visit(FunctionNode node) {
+        locals = new HashSet<>();
+        callees = new HashSet<>();
+        touchesNonLocal = false;
+
+        if (node.params != null) node.params.accept(this);
+        node.body.accept(this);
+    }
+
+    @Override
+    public void visit(ParamListNode node) {
+        for (ParamNode p : node.params) p.accept(this);
+    }
+
+    @Override
+    public void visit(ParamNode node) {
+        locals.add(node.name);
+    }
+
+    @Override
+    public void visit(BlockNode node) {
+        if (node.decls != null) node.decls.accept(this);
+        if (node.stmts != null) node.stmts.accept(this);
+    }
+
+    @Override
+    public void visit(DeclListNode node) {
+        for (DeclNode d : node.decls) d.accept(this);
+    }
+
+    @Override
+    public void visit(DeclNode node) {
+        locals.add(node.name);
+        if (node.init != null) scanExpr(node.init);
+    }
+
+    @Override
+    public void visit(StmtListNode node) {
+        for (StmtNode s : node.stmts) s.accept(this);
+    }
+
+    @Override
+    public void visit(AssignNode node) {
+        useName(node.name);
+        scanExpr(node.expr);
+    }
+
+    @Override
+    public void visit(IfNode node) {
+        scanExpr(node.condition);
+        node.thenBlock.accept(this);
+        if (node.elseBlock != null) node.elseBlock.accept(this);
+    }
+
+    @Override
+    public void visit(WhileNode node) {
+        scanExpr(node.condition);
+        node.body.accept(this);
+    }
+
+    @Override
+    public void visit(ReturnNode node) {
+        if (node.expr != null) scanExpr(node.expr);
+    }
+
+    @Override
+    public void visit(BinOpNode node) { }
+    @Override
+    public void visit(UnaryOpNode node) { }
+    @Override
+    public void visit(NumNode node) { }
+    @Override
+    public void visit(IdNode node) { }
+    @Override
+    public void visit(CallNode node) { }
+
+    private void useName(String name) {
+        if (!locals.contains(name)) {
+            touchesNonLocal = true;
+        }
+    }
+
+    private void scanExpr(ExprNode e) {
+        if (e instanceof IdNode) {
+            useName(((IdNode) e).name);
+        } else if (e instanceof CallNode) {
+            CallNode call = (CallNode) e;
+            if (!functions.containsKey(call.functionName)) {
+                touchesNonLocal = true;  // función desconocida: se asume impura
+            }
+            callees.add(call.functionName);
+            for (ExprNode arg : call.args) scanExpr(arg);
+        } else if (e instanceof BinOpNode) {
+            scanExpr(((BinOpNode) e).left);
+            scanExpr(((BinOpNode) e).right);
+        } else if (e instanceof UnaryOpNode) {
+            scanExpr(((UnaryOpNode) e).expr);
+        }
+    }
+}
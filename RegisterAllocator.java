@@ -0,0 +1,399 @@
+import java.util.*;
+
+/* ---------------- Asignación de registros (linear scan) ---------------- */
+
+/** Ubicación de un valor: un registro o una posición en memoria (N(%rbp) o N(%rsp)). */
+final class Loc {
+    final String reg;       // null si está en memoria
+    final int offset;
+    final String base;      // registro base de la posición en memoria
+
+    private Loc(String reg, int offset, String base) {
+        this.reg = reg;
+        this.offset = offset;
+        this.base = base;
+    }
+
+    static Loc reg(String r) { return new Loc(r, 0, null); }
+    static Loc slot(int offset) { return slot(offset, "%rbp"); }
+    static Loc slot(int offset, String base) { return new Loc(null, offset, base); }
+
+    boolean isReg() { return reg != null; }
+
+    /** El operando en texto es una posición de memoria. */
+    static boolean isMem(String operand) { return operand.endsWith(")"); }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Loc)) return false;
+        Loc l = (Loc) o;
+        return Objects.equals(reg, l.reg) && offset == l.offset && Objects.equals(base, l.base);
+    }
+
+    @Override
+    public int hashCode() { return Objects.hash(reg, offset, base); }
+
+    @Override
+    public String toString() {
+        return reg != null ? reg : offset + "(" + base + ")";
+    }
+}
+
+/**
+ * Rango de posiciones [start, end] en el que un valor está vivo. Las
+ * posiciones las numera el generador al recorrer la función en el mismo
+ * orden en que emite el código.
+ */
+class LiveInterval {
+    final Object key;       // nombre de variable o nodo que produce el temporal
+    int start;
+    int end;
+    boolean crossesCall;
+    Loc loc;
+    int spillSlot = -1;
+    String hint;            // registro preferido (p. ej. el del ABI para un parámetro)
+    LiveInterval sameAs;    // intervalo con el que conviene compartir registro (copias)
+
+    LiveInterval(Object key, int pos) {
+        this.key = key;
+        this.start = pos;
+        this.end = pos;
+    }
+
+    void cover(int pos) {
+        if (pos < start) start = pos;
+        if (pos > end) end = pos;
+    }
+
+    boolean spilled() { return spillSlot >= 0; }
+
+    @Override
+    public String toString() {
+        return key + "[" + start + "," + end + "]" + (loc != null ? " -> " + loc : "");
+    }
+}
+
+/*
+ * Linear scan de Poletto y Sarkar. Los intervalos que cruzan una llamada solo
+ * pueden ir a registros callee-saved (la llamada no los destruye); el resto
+ * prefiere los caller-saved, que no hay que guardar en el prólogo. Cuando no
+ * queda registro libre se derrama el intervalo que termina más lejos.
+ *
+ * %rax, %rcx y %rdx quedan fuera: son los registros de trabajo con los que
+ * el generador evalúa expresiones (resultado, operando derecho, idivq).
+ */
+class LinearScanAllocator {
+    static final String[] CALLER_SAVED = {"%rsi", "%rdi", "%r8", "%r9", "%r10", "%r11"};
+    static final String[] CALLEE_SAVED = {"%rbx", "%r12", "%r13", "%r14", "%r15"};
+
+    private final Set<String> usedCalleeSaved = new LinkedHashSet<>();
+    private int spilled = 0;
+    private int spillSlots = 0;
+
+    public Set<String> getUsedCalleeSaved() { return usedCalleeSaved; }
+
+    /** Intervalos que quedaron en memoria. */
+    public int getSpilled() { return spilled; }
+
+    /** Posiciones del marco que ocupan, después de compartirlas. */
+    public int getSpillSlots() { return spillSlots; }
+
+    public void allocate(List<LiveInterval> intervals, int[] callPositions) {
+        Arrays.sort(callPositions);
+        for (LiveInterval it : intervals) {
+            it.crossesCall = crosses(it, callPositions);
+        }
+
+        List<LiveInterval> sorted = new ArrayList<>(intervals);
+        sorted.sort(Comparator.comparingInt((LiveInterval i) -> i.start).thenComparingInt(i -> i.end));
+
+        // Activos ordenados por fin; registros libres en orden de preferencia
+        TreeSet<LiveInterval> active = new TreeSet<>(
+            Comparator.comparingInt((LiveInterval i) -> i.end).thenComparingInt(System::identityHashCode));
+        Set<String> free = new LinkedHashSet<>();
+        free.addAll(Arrays.asList(CALLER_SAVED));
+        free.addAll(Arrays.asList(CALLEE_SAVED));
+
+        for (LiveInterval cur : sorted) {
+            // Liberar los intervalos que ya terminaron
+            Iterator<LiveInterval> it = active.iterator();
+            while (it.hasNext()) {
+                LiveInterval a = it.next();
+                if (a.end >= cur.start) break;
+                it.remove();
+                free.add(a.loc.reg);
+            }
+
+            String reg = pick(free, cur);
+            if (reg != null) {
+                free.remove(reg);
+                assign(cur, reg);
+                active.add(cur);
+                continue;
+            }
+
+            // Sin registro libre: derramar el que termina más lejos entre los compatibles
+            LiveInterval victim = null;
+            for (LiveInterval a : active.descendingSet()) {
+                if (a.end <= cur.end) break;
+                if (!cur.crossesCall || isCalleeSaved(a.loc.reg)) {
+                    victim = a;
+                    break;
+                }
+            }
+            if (victim != null) {
+                active.remove(victim);
+                assign(cur, victim.loc.reg);
+                spill(victim);
+                active.add(cur);
+            } else {
+                spill(cur);
+            }
+        }
+        colorSpillSlots(sorted);
+    }
+
+    /*
+     * Un intervalo derramado vive en memoria en todo su rango, así que dos
+     * que no se solapan (variables de bloques hermanos, temporales de
+     * expresiones distintas) pueden compartir posición. Coloreo voraz en
+     * orden de inicio: es óptimo para grafos de intervalos.
+     */
+    private void colorSpillSlots(List<LiveInterval> sorted) {
+        PriorityQueue<LiveInterval> busy = new PriorityQueue<>(Comparator.comparingInt((LiveInterval i) -> i.end));
+        PriorityQueue<Integer> free = new PriorityQueue<>();
+        spillSlots = 0;
+        for (LiveInterval it : sorted) {
+            if (!it.spilled()) continue;
+            while (!busy.isEmpty() && busy.peek().end < it.start) free.add(busy.poll().spillSlot);
+            it.spillSlot = free.isEmpty() ? spillSlots++ : free.poll();
+            busy.add(it);
+        }
+    }
+
+    private String pick(Set<String> free, LiveInterval cur) {
+        String hint = cur.hint;
+        if (hint == null && cur.sameAs != null && cur.sameAs.loc != null) hint = cur.sameAs.loc.reg;
+        if (hint != null && free.contains(hint) && (!cur.crossesCall || isCalleeSaved(hint))) {
+            return hint;
+        }
+        if (!cur.crossesCall) {
+            for (String r : CALLER_SAVED) if (free.contains(r)) return r;
+        }
+        for (String r : CALLEE_SAVED) if (free.contains(r)) return r;
+        return null;
+    }
+
+    private void assign(LiveInterval it, String reg) {
+        it.loc = Loc.reg(reg);
+        if (isCalleeSaved(reg)) usedCalleeSaved.add(reg);
+    }
+
+    private void spill(LiveInterval it) {
+        it.loc = null;
+        it.spillSlot = spilled++;     // provisorio: colorSpillSlots lo reasigna
+    }
+
+    static boolean isCalleeSaved(String reg) {
+        for (String r : CALLEE_SAVED) if (r.equals(reg)) return true;
+        return false;
+    }
+
+    /** Un intervalo cruza una llamada si está vivo antes y después de ella. */
+    private static boolean crosses(LiveInterval it, int[] calls) {
+        int i = Arrays.binarySearch(calls, it.start + 1);
+        if (i < 0) i = -i - 1;
+        return i < calls.length && calls[i] < it.end;
+    }
+}
+
+/* ---------------- Marco de activación ---------------- */
+
+/*
+ * Disposición del marco después de asignar registros: los callee-saved que
+ * la función usa y una posición por valor derramado. Según la función se
+ * arma de una de tres formas:
+ *
+ *   RED_ZONE  hoja (sin llamadas) cuyo marco entra en los 128 bytes debajo
+ *             de %rsp que el ABI System V reserva: no toca %rsp ni %rbp y
+ *             direcciona todo como -N(%rsp).
+ *   PUSHES    sin derrames: los callee-saved se guardan con pushq y se
+ *             agregan 8 bytes si hace falta para que %rsp quede alineado a
+ *             16 en los call. Tampoco usa %rbp.
+ *   FULL      el resto: pushq %rbp / movq %rsp, %rbp / subq, con los
+ *             callee-saved en -8, -16, ... y los derrames a continuación.
+ *             El tamaño se redondea a 16 bytes como exige el ABI.
+ *
+ * En las dos primeras %rsp no se mueve en el cuerpo salvo al apilar
+ * argumentos, y eso ocurre solo dentro de la secuencia de un call.
+ */
+final class Frame {
+    enum Kind { RED_ZONE, PUSHES, FULL }
+
+    static final int RED_ZONE_BYTES = 128;
+
+    final List<String> saved;
+    final int size;             // bytes que se restan a %rsp después de guardar
+    final Kind kind;
+    final boolean leaf;
+
+    Frame(LinearScanAllocator allocator, List<LiveInterval> intervals, boolean leaf) {
+        this.leaf = leaf;
+        saved = new ArrayList<>(allocator.getUsedCalleeSaved());
+        int bytes = 8 * (saved.size() + allocator.getSpillSlots());
+        if (leaf && bytes <= RED_ZONE_BYTES) {
+            kind = Kind.RED_ZONE;
+            size = 0;
+        } else if (allocator.getSpillSlots() == 0) {
+            kind = Kind.PUSHES;
+            size = saved.size() % 2 == 0 ? 8 : 0;   // la dirección de retorno desalinea 8
+        } else {
+            kind = Kind.FULL;
+            if ((bytes % 16) != 0) bytes += 16 - (bytes % 16);
+            size = bytes;
+        }
+        String base = kind == Kind.FULL ? "%rbp" : "%rsp";
+        for (LiveInterval it : intervals) {
+            if (it.spilled()) it.loc = Loc.slot(-8 * (saved.size() + it.spillSlot + 1), base);
+        }
+    }
+
+    void prologue(List<Insn> code, String function) {
+        code.add(Insn.label(function));
+        switch (kind) {
+            case RED_ZONE:
+                for (int i = 0; i < saved.size(); i++) {
+                    code.add(Insn.op("movq", saved.get(i), (-8 * (i + 1)) + "(%rsp)"));
+                }
+                break;
+            case PUSHES:
+                for (String r : saved) code.add(Insn.op("pushq", r));
+                if (size > 0) code.add(Insn.op("subq", "$" + size, "%rsp"));
+                break;
+            default:
+                code.add(Insn.op("pushq", "%rbp"));
+                code.add(Insn.op("movq", "%rsp", "%rbp"));
+                if (size > 0) code.add(Insn.op("subq", "$" + size, "%rsp"));
+                for (int i = 0; i < saved.size(); i++) {
+                    code.add(Insn.op("movq", saved.get(i), (-8 * (i + 1)) + "(%rbp)"));
+                }
+        }
+    }
+
+    /**
+     * Ubicación del k-ésimo argumento que llega en la pila (el 7º es k = 0),
+     * válida mientras %rsp no se mueva desde el prólogo.
+     */
+    String stackParam(int k) {
+        switch (kind) {
+            case RED_ZONE: return (8 + 8 * k) + "(%rsp)";
+            case PUSHES:   return (8 + 8 * saved.size() + size + 8 * k) + "(%rsp)";
+            default:       return (16 + 8 * k) + "(%rbp)";
+        }
+    }
+
+    /** Epílogo único de la función: todos los return saltan a returnLabel. */
+    void epilogue(List<Insn> code, String returnLabel) {
+        code.add(Insn.label(returnLabel));
+        switch (kind) {
+            case RED_ZONE:
+                for (int i = 0; i < saved.size(); i++) {
+                    code.add(Insn.op("movq", (-8 * (i + 1)) + "(%rsp)", saved.get(i)));
+                }
+                break;
+            case PUSHES:
+                if (size > 0) code.add(Insn.op("addq", "$" + size, "%rsp"));
+                for (int i = saved.size() - 1; i >= 0; i--) code.add(Insn.op("popq", saved.get(i)));
+                break;
+            default:
+                for (int i = 0; i < saved.size(); i++) {
+                    code.add(Insn.op("movq", (-8 * (i + 1)) + "(%rbp)", saved.get(i)));
+                }
+                code.add(Insn.op("leave"));
+        }
+        code.add(Insn.op("ret"));
+    }
+}
+
+/* ---------------- Movimientos paralelos ---------------- */
+
+/*
+ * Secuencializa un conjunto de movimientos que conceptualmente ocurren a la
+ * vez (parámetros al entrar a una función, argumentos antes de un call).
+ * Los ciclos entre registros se rompen con xchgq; los que pasan por memoria,
+ * con un registro de trabajo libre.
+ */
+class ParallelMove {
+    private final List<String[]> moves = new ArrayList<>();   // {origen, destino}
+
+    void add(String src, String dst) {
+        if (!src.equals(dst)) moves.add(new String[] {src, dst});
+    }
+
+    /** Devuelve las instrucciones movq en un orden que no pisa ningún origen pendiente. */
+    List<Insn> sequence(String scratch) {
+        List<Insn> out = new ArrayList<>();
+        List<String[]> pending = new ArrayList<>();
+        for (String[] m : moves) pending.add(m.clone());
+        while (!pending.isEmpty()) {
+            boolean progress = false;
+            for (int i = 0; i < pending.size(); i++) {
+                String dst = pending.get(i)[1];
+                boolean blocked = false;
+                for (String[] m : pending) {
+                    if (m != pending.get(i) && m[0].equals(dst)) {
+                        blocked = true;
+                        break;
+                    }
+                }
+                if (!blocked) {
+                    out.add(mov(pending.get(i)[0], dst));
+                    pending.remove(i);
+                    progress = true;
+                    break;
+                }
+            }
+            if (!progress) {
+                String[] swap = null;
+                for (String[] m : pending) {
+                    if (isReg(m[0]) && isReg(m[1])) {
+                        swap = m;
+                        break;
+                    }
+                }
+                if (swap != null) {
+                    // Ciclo entre registros: xchgq completa este movimiento y
+                    // deja el valor que tenía dst en src, sin registro de trabajo
+                    String src = swap[0];
+                    String dst = swap[1];
+                    out.add(Insn.op("xchgq", src, dst));
+                    pending.remove(swap);
+                    for (String[] m : pending) {
+                        if (m[0].equals(dst)) {
+                            m[0] = src;
+                        } else if (m[0].equals(src)) {
+                            m[0] = dst;
+                        }
+                    }
+                    pending.removeIf(m -> m[0].equals(m[1]));
+                } else {
+                    // Ciclo con memoria: salvar un origen en el registro de trabajo
+                    String src = pending.get(0)[0];
+                    out.add(mov(src, scratch));
+                    for (String[] m : pending) {
+                        if (m[0].equals(src)) m[0] = scratch;
+                    }
+                }
+            }
+        }
+        return out;
+    }
+
+    private static boolean isReg(String loc) {
+        return loc.startsWith("%");
+    }
+
+    private static Insn mov(String src, String dst) {
+        return Insn.op("movq", src, dst);
+    }
+}
@@ -0,0 +1,415 @@
+import java.util.*;
+
+/* ---------------- Construcción de SSA desde el AST ---------------- */
+
+/*
+ * Algoritmo de Braun et al. ("Simple and Efficient Construction of Static
+ * Single Assignment Form", 2013): las variables se leen y escriben por
+ * bloque mientras se recorre el AST, y las phi se crean solo cuando una
+ * lectura llega a un bloque con varios predecesores. Un bloque se "sella"
+ * cuando ya se conocen todos sus predecesores; las lecturas en bloques sin
+ * sellar (la cabecera de un while antes del salto hacia atrás) dejan phi
+ * incompletas que se completan al sellar. Las phi triviales se eliminan en
+ * el momento.
+ *
+ * && y || se construyen como flujo de control (cortocircuito); en posición
+ * de valor el resultado es una phi de 1 y 0.
+ *
+ * Con un perfil, la primera rama de cada if y el cuerpo de cada while
+ * anotan cuántas veces corrieron, y los bloques de una rama o un cuerpo
+ * que casi nunca corre (y todo lo anidado adentro) quedan marcados como
+ * fríos para que SsaLowering los saque del camino caliente.
+ */
+class SsaBuilder implements ASTVisitor {
+    private final List<IrFunction> functions = new ArrayList<>();
+    private ProfileData profile;
+
+    // Estado de la función actual
+    private IrFunction fn;
+    private Block cur;
+    private Map<Block, Map<String, Instr>> currentDef;
+    private Set<Block> sealed;
+    private Map<Block, Map<String, Instr>> incompletePhis;
+    private Map<Instr, Instr> replaced;     // phi trivial -> valor que la reemplaza
+    private boolean cold;                   // los bloques nuevos están en código frío
+
+    public List<IrFunction> getFunctions() {
+        return functions;
+    }
+
+    public void setProfile(ProfileData profile) {
+        this.profile = profile;
+    }
+
+    @Override
+    public void visit(ProgramNode node) {
+        if (node.functions != null) node.functions.accept(this);
+    }
+
+    @Override
+    public void visit(FunctionListNode node) {
+        for (FunctionNode f : node.functions) f.accept(this);
+    }
+
+    @Override
+    public void visit(FunctionNode node) {
+        functions.add(build(node));
+    }
+
+    /** Construye la IR de una función. */
+    IrFunction build(FunctionNode node) {
+        List<ParamNode> params = node.params != null ? node.params.params : new ArrayList<>();
+        fn = new IrFunction(node.name, node.returnType.equals("int"), params.size());
+        currentDef = new HashMap<>();
+        sealed = new HashSet<>();
+        incompletePhis = new HashMap<>();
+        replaced = new HashMap<>();
+        cold = false;
+
+        fn.entry = fn.newBlock();
+        seal(fn.entry);
+        cur = fn.entry;
+        for (int i = 0; i < params.size(); i++) {
+            Instr p = fn.newInstr(Instr.Op.PARAM);
+            p.value = i;
+            cur.append(p);
+            write(params.get(i).name, cur, p);
+        }
+
+        node.body.accept(this);
+
+        // Caer al final de la función devuelve 0
+        if (cur.terminator() == null) {
+            ret(fn.returnsValue ? fn.constant(0) : null);
+        }
+        return fn;
+    }
+
+    /* ---------- Variables (Braun et al.) ---------- */
+
+    private void write(String var, Block b, Instr v) {
+        currentDef.computeIfAbsent(b, k -> new HashMap<>()).put(var, v);
+    }
+
+    private Instr read(String var, Block b) {
+        Map<String, Instr> defs = currentDef.get(b);
+        if (defs != null && defs.containsKey(var)) return resolve(defs.get(var));
+        return readRecursive(var, b);
+    }
+
+    private Instr readRecursive(String var, Block b) {
+        Instr v;
+        if (!sealed.contains(b)) {
+            v = newPhi(b);
+            incompletePhis.computeIfAbsent(b, k -> new LinkedHashMap<>()).put(var, v);
+        } else if (b.preds.isEmpty()) {
+            v = fn.undef();             // lectura sin asignación previa
+        } else if (b.preds.size() == 1) {
+            v = read(var, b.preds.get(0));
+        } else {
+            Instr phi = newPhi(b);
+            write(var, b, phi);
+            v = addPhiOperands(var, phi);
+        }
+        write(var, b, v);
+        return v;
+    }
+
+    private Instr newPhi(Block b) {
+        Instr phi = fn.newInstr(Instr.Op.PHI);
+        b.addPhi(phi);
+        return phi;
+    }
+
+    private Instr addPhiOperands(String var, Instr phi) {
+        for (Block p : phi.block.preds) phi.addArg(read(var, p));
+        return tryRemoveTrivialPhi(phi);
+    }
+
+    /** Una phi cuyos operandos son todos el mismo valor (o ella misma) sobra. */
+    private Instr tryRemoveTrivialPhi(Instr phi) {
+        Instr same = null;
+        for (Instr op : phi.args) {
+            if (op == same || op == phi) continue;
+            if (same != null) return phi;
+            same = op;
+        }
+        if (same == null) same = fn.undef();
+
+        List<Instr> users = new ArrayList<>(phi.users);
+        users.removeIf(u -> u == phi);
+        phi.replaceAllUsesWith(same);
+        phi.remove();
+        replaced.put(phi, same);
+
+        for (Instr u : users) {
+            if (u.isPhi() && u.block != null) tryRemoveTrivialPhi(u);
+        }
+        return same;
+    }
+
+    /** Sigue los reemplazos de phi triviales que quedaron en currentDef. */
+    private Instr resolve(Instr v) {
+        while (replaced.containsKey(v)) v = replaced.get(v);
+        return v;
+    }
+
+    private void seal(Block b) {
+        Map<String, Instr> pending = incompletePhis.remove(b);
+        sealed.add(b);
+        if (pending != null) {
+            for (Map.Entry<String, Instr> e : pending.entrySet()) {
+                addPhiOperands(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    /* ---------- Bloques y terminadores ---------- */
+
+    private Block newBlock() {
+        Block b = fn.newBlock();
+        b.cold = cold;
+        return b;
+    }
+
+    /** Anota en b las veces que corrió de total; si es frío, lo que se construya adentro también. */
+    private void profiled(Block b, long count, long total) {
+        b.count = count;
+        if (ProfileData.isCold(count, total)) b.cold = true;
+    }
+
+    private void jump(Block target) {
+        Instr j = fn.newInstr(Instr.Op.JMP);
+        j.targets.add(target);
+        cur.append(j);
+        target.preds.add(cur);
+    }
+
+    private void branch(Instr cond, Block ifTrue, Block ifFalse) {
+        Instr br = fn.newInstr(Instr.Op.BR);
+        br.addArg(cond);
+        br.targets.add(ifTrue);
+        br.targets.add(ifFalse);
+        cur.append(br);
+        ifTrue.preds.add(cur);
+        ifFalse.preds.add(cur);
+    }
+
+    private void ret(Instr value) {
+        Instr r = fn.newInstr(Instr.Op.RET);
+        if (value != null) r.addArg(value);
+        cur.append(r);
+    }
+
+    /** Después de un return el código sigue en un bloque sin predecesores. */
+    private void startUnreachable() {
+        cur = newBlock();
+        seal(cur);
+    }
+
+    /* ---------- Sentencias ---------- */
+
+    @Override
+    public void visit(ParamListNode node) { }
+
+    @Override
+    public void visit(ParamNode node) { }
+
+    @Override
+    public void visit(BlockNode node) {
+        if (node.decls != null) node.decls.accept(this);
+        if (node.stmts != null) node.stmts.accept(this);
+    }
+
+    @Override
+    public void visit(DeclListNode node) {
+        for (DeclNode d : node.decls) d.accept(this);
+    }
+
+    @Override
+    public void visit(DeclNode node) {
+        if (node.init != null) {
+            Instr v = expr(node.init);      // puede cambiar el bloque actual
+            write(node.name, cur, v);
+        }
+    }
+
+    @Override
+    public void visit(StmtListNode node) {
+        for (StmtNode s : node.stmts) s.accept(this);
+    }
+
+    @Override
+    public void visit(AssignNode node) {
+        Instr v = expr(node.expr);
+        write(node.name, cur, v);
+    }
+
+    @Override
+    public void visit(IfNode node) {
+        Block thenBlock = newBlock();
+        Block elseBlock = node.elseBlock != null ? newBlock() : null;
+        Block join = newBlock();
+        long[] counts = profile != null ? profile.branch(node) : null;
+        if (counts != null) {
+            profiled(thenBlock, counts[0], counts[0] + counts[1]);
+            if (elseBlock != null) profiled(elseBlock, counts[1], counts[0] + counts[1]);
+        }
+        boolean outer = cold;
+
+        condition(node.condition, thenBlock, elseBlock != null ? elseBlock : join);
+        seal(thenBlock);
+
+        cur = thenBlock;
+        cold = thenBlock.cold;
+        node.thenBlock.accept(this);
+        jump(join);
+
+        if (elseBlock != null) {
+            seal(elseBlock);
+            cur = elseBlock;
+            cold = elseBlock.cold;
+            node.elseBlock.accept(this);
+            jump(join);
+        }
+        cold = outer;
+
+        seal(join);
+        cur = join;
+    }
+
+    @Override
+    public void visit(WhileNode node) {
+        Block header = newBlock();
+        Block body = newBlock();
+        Block exit = newBlock();
+        long[] counts = profile != null ? profile.loop(node) : null;
+        if (counts != null) profiled(body, counts[1], counts[0] + counts[1]);
+        boolean outer = cold;
+
+        jump(header);
+        cur = header;
+        condition(node.condition, body, exit);
+
+        seal(body);
+        cur = body;
+        cold = body.cold;
+        node.body.accept(this);
+        jump(header);
+        cold = outer;
+
+        // Recién ahora se conocen todos los predecesores de la cabecera
+        seal(header);
+        seal(exit);
+        cur = exit;
+    }
+
+    @Override
+    public void visit(ReturnNode node) {
+        ret(node.expr != null ? expr(node.expr) : null);
+        startUnreachable();
+    }
+
+    /* ---------- Expresiones ---------- */
+
+    @Override
+    public void visit(BinOpNode node) { }
+    @Override
+    public void visit(UnaryOpNode node) { }
+    @Override
+    public void visit(NumNode node) { }
+    @Override
+    public void visit(IdNode node) { }
+    @Override
+    public void visit(CallNode node) { }
+
+    /** Salta a ifTrue o ifFalse según la condición, con cortocircuito. */
+    private void condition(ExprNode e, Block ifTrue, Block ifFalse) {
+        if (e instanceof UnaryOpNode && ((UnaryOpNode) e).op.equals("!")) {
+            condition(((UnaryOpNode) e).expr, ifFalse, ifTrue);
+        } else if (e instanceof BinOpNode && ((BinOpNode) e).op.equals("&&")) {
+            BinOpNode b = (BinOpNode) e;
+            Block right = newBlock();
+            condition(b.left, right, ifFalse);
+            seal(right);
+            cur = right;
+            condition(b.right, ifTrue, ifFalse);
+        } else if (e instanceof BinOpNode && ((BinOpNode) e).op.equals("||")) {
+            BinOpNode b = (BinOpNode) e;
+            Block right = newBlock();
+            condition(b.left, ifTrue, right);
+            seal(right);
+            cur = right;
+            condition(b.right, ifTrue, ifFalse);
+        } else {
+            branch(expr(e), ifTrue, ifFalse);
+        }
+    }
+
+    private Instr expr(ExprNode e) {
+        if (e instanceof NumNode) {
+            return fn.constant(((NumNode) e).value);
+        }
+        if (e instanceof IdNode) {
+            return read(((IdNode) e).name, cur);
+        }
+        if (e instanceof CallNode) {
+            CallNode c = (CallNode) e;
+            List<Instr> args = new ArrayList<>();
+            for (ExprNode a : c.args) args.add(expr(a));
+            Instr call = fn.newInstr(Instr.Op.CALL);
+            call.callee = c.functionName;
+            for (Instr a : args) call.addArg(a);
+            cur.append(call);
+            return call;
+        }
+        if (e instanceof UnaryOpNode) {
+            UnaryOpNode u = (UnaryOpNode) e;
+            Instr v = expr(u.expr);
+            Instr i = fn.newInstr(u.op.equals("-") ? Instr.Op.NEG : Instr.Op.NOT);
+            i.addArg(v);
+            cur.append(i);
+            return i;
+        }
+        BinOpNode b = (BinOpNode) e;
+        if (b.op.equals("&&") || b.op.equals("||")) {
+            // Valor 0/1 del cortocircuito
+            Block t = newBlock();
+            Block f = newBlock();
+            Block join = newBlock();
+            condition(b, t, f);
+            seal(t);
+            seal(f);
+            cur = t;
+            jump(join);
+            cur = f;
+            jump(join);
+            seal(join);
+            cur = join;
+            Instr phi = newPhi(join);
+            phi.addArg(fn.constant(1));
+            phi.addArg(fn.constant(0));
+            return phi;
+        }
+        Instr l = expr(b.left);
+        Instr r = expr(b.right);
+        Instr i = fn.newInstr(binOp(b.op));
+        i.addArg(l);
+        i.addArg(r);
+        cur.append(i);
+        return i;
+    }
+
+    private static Instr.Op binOp(String op) {
+        switch (op) {
+            case "+":  return Instr.Op.ADD;
+            case "-":  return Instr.Op.SUB;
+            case "*":  return Instr.Op.MUL;
+            case "/":  return Instr.Op.DIV;
+            case "==": return Instr.Op.EQ;
+            case "<":  return Instr.Op.LT;
+            case ">":  return Instr.Op.GT;
+            default:   throw new RuntimeException("Expresión no soportada: " + op);
+        }
+    }
+}
@@ -0,0 +1,284 @@
+import java.util.*;
+
+/* ---------------- Representación intermedia SSA ---------------- */
+
+/*
+ * Código de tres direcciones en forma SSA. Cada Instr es a la vez la
+ * instrucción y el valor que produce; los operandos son referencias a otras
+ * Instr y cada una conoce a sus usuarios (cadenas def-uso), así los pases
+ * pueden reemplazar un valor en todos sus usos.
+ *
+ * Las constantes y el valor indefinido no pertenecen a ningún bloque: son
+ * operandos compartidos de la función.
+ *
+ * select c, a, b vale a si c es distinto de 0 y b si no; lo arma la
+ * conversión de if y se baja a cmovcc, sin salto.
+ */
+final class Instr {
+    enum Op {
+        CONST, UNDEF, PARAM,
+        ADD, SUB, MUL, DIV, EQ, LT, GT, NEG, NOT,
+        CALL, PHI, SELECT,
+        JMP, BR, RET
+    }
+
+    final Op op;
+    final int id;
+    long value;                 // CONST: valor; PARAM: índice
+    String callee;              // CALL
+    Block block;                // null para CONST y UNDEF
+    final List<Instr> args = new ArrayList<>();
+    final List<Instr> users = new ArrayList<>();
+    final List<Block> targets = new ArrayList<>();   // JMP: 1, BR: then/else
+
+    Instr(Op op, int id) {
+        this.op = op;
+        this.id = id;
+    }
+
+    boolean isTerminator() { return op == Op.JMP || op == Op.BR || op == Op.RET; }
+    boolean isConst() { return op == Op.CONST; }
+    boolean isPhi() { return op == Op.PHI; }
+    boolean isCompare() { return op == Op.EQ || op == Op.LT || op == Op.GT; }
+
+    /** Produce un valor que vive en un registro o en el marco. */
+    boolean hasValue() {
+        return op != Op.JMP && op != Op.BR && op != Op.RET && op != Op.CONST && op != Op.UNDEF;
+    }
+
+    /**
+     * Puede fallar o no terminar: no se elimina aunque su valor no se use.
+     * Las llamadas pueden no terminar o dividir por cero adentro; una
+     * división solo es segura si el divisor es una constante distinta de 0.
+     */
+    boolean hasEffects() {
+        if (op == Op.CALL || isTerminator()) return true;
+        if (op == Op.DIV) {
+            Instr d = args.get(1);
+            return !(d.isConst() && d.value != 0 && d.value != -1);
+        }
+        return false;
+    }
+
+    void addArg(Instr v) {
+        args.add(v);
+        v.users.add(this);
+    }
+
+    void setArg(int i, Instr v) {
+        args.get(i).users.remove(this);
+        args.set(i, v);
+        v.users.add(this);
+    }
+
+    void removeArg(int i) {
+        args.remove(i).users.remove(this);
+    }
+
+    void clearArgs() {
+        for (Instr a : args) a.users.remove(this);
+        args.clear();
+    }
+
+    /** Reemplaza este valor por v en todos sus usos. */
+    void replaceAllUsesWith(Instr v) {
+        for (Instr u : new ArrayList<>(users)) {
+            for (int i = 0; i < u.args.size(); i++) {
+                if (u.args.get(i) == this) u.setArg(i, v);
+            }
+        }
+    }
+
+    /** Quita la instrucción de su bloque y suelta sus operandos. */
+    void remove() {
+        clearArgs();
+        if (block != null) block.instrs.remove(this);
+        block = null;
+    }
+
+    String name() {
+        switch (op) {
+            case CONST: return String.valueOf(value);
+            case UNDEF: return "undef";
+            default:    return "%" + id;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        if (hasValue()) sb.append(name()).append(" = ");
+        sb.append(op.name().toLowerCase());
+        if (op == Op.PARAM) sb.append(' ').append(value);
+        if (op == Op.CALL) sb.append(' ').append(callee);
+        for (int i = 0; i < args.size(); i++) {
+            sb.append(i == 0 ? " " : ", ").append(args.get(i).name());
+            if (op == Op.PHI && i < block.preds.size()) sb.append(" [B").append(block.preds.get(i).id).append(']');
+        }
+        for (Block t : targets) sb.append(args.isEmpty() && t == targets.get(0) ? " " : ", ").append("B").append(t.id);
+        return sb.toString();
+    }
+}
+
+final class Block {
+    final int id;
+    final List<Instr> instrs = new ArrayList<>();    // phis primero, terminador al final
+    final List<Block> preds = new ArrayList<>();
+
+    // Perfil (SsaBuilder con ProfileData): veces que corrió la rama o el
+    // cuerpo que empieza en este bloque (-1 sin datos) y si casi nunca corre
+    long count = -1;
+    boolean cold;
+
+    Block(int id) {
+        this.id = id;
+    }
+
+    Instr terminator() {
+        if (instrs.isEmpty()) return null;
+        Instr last = instrs.get(instrs.size() - 1);
+        return last.isTerminator() ? last : null;
+    }
+
+    List<Block> succs() {
+        Instr t = terminator();
+        return t != null ? t.targets : Collections.emptyList();
+    }
+
+    List<Instr> phis() {
+        List<Instr> out = new ArrayList<>();
+        for (Instr i : instrs) {
+            if (!i.isPhi()) break;
+            out.add(i);
+        }
+        return out;
+    }
+
+    /** Agrega la instrucción antes del terminador (si lo hay). */
+    void append(Instr i) {
+        i.block = this;
+        Instr t = terminator();
+        instrs.add(t != null ? instrs.size() - 1 : instrs.size(), i);
+    }
+
+    void addPhi(Instr phi) {
+        phi.block = this;
+        int at = 0;
+        while (at < instrs.size() && instrs.get(at).isPhi()) at++;
+        instrs.add(at, phi);
+    }
+
+    /** Quita el predecesor p y el operando correspondiente de cada phi. */
+    void removePred(Block p) {
+        int k = preds.indexOf(p);
+        if (k < 0) return;
+        preds.remove(k);
+        for (Instr phi : phis()) phi.removeArg(k);
+    }
+
+    /** Cambia el sucesor from por to en el terminador. */
+    void replaceSucc(Block from, Block to) {
+        Instr t = terminator();
+        for (int i = 0; i < t.targets.size(); i++) {
+            if (t.targets.get(i) == from) t.targets.set(i, to);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "B" + id;
+    }
+}
+
+final class IrFunction {
+    final String name;
+    final boolean returnsValue;
+    final int numParams;
+    final List<Block> blocks = new ArrayList<>();
+    Block entry;
+
+    private int nextInstr = 0;
+    private int nextBlock = 0;
+    private final Map<Long, Instr> constants = new HashMap<>();
+    private final Instr undef;
+
+    IrFunction(String name, boolean returnsValue, int numParams) {
+        this.name = name;
+        this.returnsValue = returnsValue;
+        this.numParams = numParams;
+        this.undef = new Instr(Instr.Op.UNDEF, nextInstr++);
+    }
+
+    Block newBlock() {
+        Block b = new Block(nextBlock++);
+        blocks.add(b);
+        return b;
+    }
+
+    Instr newInstr(Instr.Op op) {
+        return new Instr(op, nextInstr++);
+    }
+
+    Instr constant(long k) {
+        return constants.computeIfAbsent(k, v -> {
+            Instr c = new Instr(Instr.Op.CONST, nextInstr++);
+            c.value = v;
+            return c;
+        });
+    }
+
+    Instr undef() {
+        return undef;
+    }
+
+    int instrCount() {
+        int n = 0;
+        for (Block b : blocks) n += b.instrs.size();
+        return n;
+    }
+
+    /** Bloques alcanzables desde la entrada en orden posterior inverso. */
+    List<Block> reversePostorder() {
+        List<Block> post = new ArrayList<>();
+        Set<Block> seen = new HashSet<>();
+        Deque<Block> stack = new ArrayDeque<>();
+        Deque<Iterator<Block>> iters = new ArrayDeque<>();
+        seen.add(entry);
+        stack.push(entry);
+        iters.push(entry.succs().iterator());
+        while (!stack.isEmpty()) {
+            Iterator<Block> it = iters.peek();
+            if (it.hasNext()) {
+                Block s = it.next();
+                if (seen.add(s)) {
+                    stack.push(s);
+                    iters.push(s.succs().iterator());
+                }
+            } else {
+                post.add(stack.pop());
+                iters.pop();
+            }
+        }
+        Collections.reverse(post);
+        return post;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(returnsValue ? "int " : "void ").append(name).append(":\n");
+        for (Block b : blocks) {
+            sb.append("  B").append(b.id);
+            if (!b.preds.isEmpty()) {
+                StringJoiner ps = new StringJoiner(", ", "  <- ", "");
+                for (Block p : b.preds) ps.add("B" + p.id);
+                sb.append(ps);
+            }
+            if (b.count >= 0) sb.append("  ; ").append(b.count).append(" veces");
+            if (b.cold) sb.append("  ; fría");
+            sb.append('\n');
+            for (Instr i : b.instrs) sb.append("    ").append(i).append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,772 @@
+import java.util.*;
+
+/* ---------------- Bajada de la IR SSA a x86-64 ---------------- */
+
+/*
+ * Salida de SSA y selección de instrucciones para una función:
+ *
+ *  1. Se parten las aristas críticas, así cada phi se resuelve con copias
+ *     al final de un predecesor que tiene un solo sucesor.
+ *  2. Los bloques se ordenan en orden posterior inverso, eligiendo el orden
+ *     para que el then de cada br (el cuerpo, en un while) siga a su bloque
+ *     sin salto, o el else si el perfil dice que corre más; los bloques
+ *     fríos del perfil van al final, después del epílogo, y el camino
+ *     caliente queda contiguo. Se numeran las posiciones; la vida de cada
+ *     valor sale de un análisis de variables vivas por bloque y se aproxima
+ *     con un único intervalo. Una phi y el valor que le llega por una arista comparten
+ *     intervalo si no interfieren: la copia del salto hacia atrás desaparece.
+ *  3. LinearScanAllocator asigna registros como en el generador directo.
+ *  4. Se emiten las instrucciones; las phi se vuelven un movimiento paralelo
+ *     antes del salto. Un jmp a un bloque que solo tiene la prueba de un br
+ *     se reemplaza por una copia de esa prueba: el while queda con la
+ *     condición al final del cuerpo (rotado) y cada vuelta hace un único
+ *     salto condicional en lugar de jmp + br. Una comparación que solo
+ *     alimenta al br de su bloque (o al select que la sigue) se fusiona con
+ *     el salto condicional (o con el cmovcc).
+ */
+class SsaLowering {
+    private final IrFunction f;
+    private final X86_64Generator gen;
+    private final List<Insn> code = new ArrayList<>();
+
+    private List<Block> order;
+    private DominatorTree dom;
+    private final Map<Block, String> labels = new HashMap<>();
+    private final Set<Instr> fused = new HashSet<>();
+    private final Set<Instr> inRax = new HashSet<>();      // se calculan directo en %rax
+    private final Map<Instr, LiveInterval> intervals = new LinkedHashMap<>();
+    private final Map<Block, Integer> blockStart = new HashMap<>();
+    private final Map<Block, Integer> blockEnd = new HashMap<>();
+    private final List<Integer> callPositions = new ArrayList<>();
+    private String returnLabel;
+
+    SsaLowering(IrFunction f, X86_64Generator gen) {
+        this.f = f;
+        this.gen = gen;
+    }
+
+    List<Insn> lower() {
+        Set<Block> reachable = new HashSet<>(f.reversePostorder());
+        SimplifyCfg.removeBlocks(f, b -> !reachable.contains(b));
+        splitCriticalEdges();
+        order = layout();
+        dom = new DominatorTree(f);
+        for (Block b : order) labels.put(b, gen.newLabel("L_B" + b.id));
+        returnLabel = gen.newLabel("L_ret");
+
+        findFusedBranches();
+        findReturnValues();
+        number();
+        liveness();
+
+        // Las phi unidas con su operando comparten el objeto: uno por valor real
+        List<LiveInterval> all = new ArrayList<>(new LinkedHashSet<>(intervals.values()));
+        int[] calls = new int[callPositions.size()];
+        for (int i = 0; i < calls.length; i++) calls[i] = callPositions.get(i);
+        LinearScanAllocator allocator = new LinearScanAllocator();
+        allocator.allocate(all, calls);
+        Frame frame = new Frame(allocator, all, calls.length == 0);
+        gen.account(allocator, frame);
+
+        frame.prologue(code, f.name);
+        ParallelMove entry = new ParallelMove();
+        for (Instr i : f.entry.instrs) {
+            if (i.op == Instr.Op.PARAM && i.value < 6 && intervals.containsKey(i)) {
+                entry.add(X86_64Generator.ARG_REGS[(int) i.value], loc(i));
+            }
+        }
+        code.addAll(entry.sequence("%rax"));
+        // Del 7º en adelante llegan en la pila
+        for (Instr i : f.entry.instrs) {
+            if (i.op != Instr.Op.PARAM || i.value < 6 || !intervals.containsKey(i)) continue;
+            String src = frame.stackParam((int) i.value - 6);
+            String dst = loc(i);
+            if (isMem(dst)) {
+                emit("movq", src, "%rax");
+                emit("movq", "%rax", dst);
+            } else {
+                emit("movq", src, dst);
+            }
+        }
+
+        int hot = 0;
+        while (hot < order.size() && !order.get(hot).cold) hot++;
+        for (int k = 0; k < order.size(); k++) {
+            Block b = order.get(k);
+            Block next = k + 1 < order.size() && k + 1 != hot ? order.get(k + 1) : null;
+            if (k == hot) {
+                // El camino caliente termina en el epílogo; lo frío queda aparte
+                frame.epilogue(code, returnLabel);
+                code.add(Insn.comment("bloques fríos"));
+            }
+            if (!b.preds.isEmpty()) code.add(Insn.label(labels.get(b)));
+            for (Instr i : b.instrs) {
+                if (i.isPhi() || fused.contains(i) || i.op == Instr.Op.PARAM) continue;
+                if (i.isTerminator()) {
+                    terminator(b, i, next);
+                } else {
+                    instr(i);
+                }
+            }
+        }
+        if (hot == order.size()) frame.epilogue(code, returnLabel);
+        gen.countColdBlocks(order.size() - hot);
+        return code;
+    }
+
+    /* ---------- Preparación ---------- */
+
+    /**
+     * Orden posterior inverso de un recorrido que visita el else antes que
+     * el then: en el orden final el then queda justo después de su bloque,
+     * y en un while el cuerpo sigue a la prueba y la salida al cuerpo. Si el
+     * perfil dice que el else corre más, se visita al revés. Los bloques
+     * fríos pasan al final, en el mismo orden.
+     */
+    private List<Block> layout() {
+        List<Block> post = new ArrayList<>();
+        Set<Block> seen = new HashSet<>();
+        Deque<Block> stack = new ArrayDeque<>();
+        Deque<Iterator<Block>> iters = new ArrayDeque<>();
+        seen.add(f.entry);
+        stack.push(f.entry);
+        iters.push(visitOrder(f.entry.succs()).iterator());
+        while (!stack.isEmpty()) {
+            Iterator<Block> it = iters.peek();
+            if (it.hasNext()) {
+                Block s = it.next();
+                if (seen.add(s)) {
+                    stack.push(s);
+                    iters.push(visitOrder(s.succs()).iterator());
+                }
+            } else {
+                post.add(stack.pop());
+                iters.pop();
+            }
+        }
+        Collections.reverse(post);
+        List<Block> out = new ArrayList<>();
+        for (Block b : post) if (!b.cold) out.add(b);
+        for (Block b : post) if (b.cold) out.add(b);
+        return out;
+    }
+
+    /** El sucesor que se visita último queda justo después en el orden. */
+    private List<Block> visitOrder(List<Block> succs) {
+        List<Block> out = new ArrayList<>(succs);
+        boolean elseHotter = out.size() == 2 && out.get(0).count >= 0 && out.get(1).count > out.get(0).count;
+        if (elseHotter) {
+            gen.countReorderedBranch();
+        } else {
+            Collections.reverse(out);
+        }
+        return out;
+    }
+
+    /** Arista de un bloque con varios sucesores a uno con varios predecesores. */
+    private void splitCriticalEdges() {
+        for (Block b : new ArrayList<>(f.blocks)) {
+            Instr t = b.terminator();
+            if (t == null || t.targets.size() < 2) continue;
+            for (int k = 0; k < t.targets.size(); k++) {
+                Block s = t.targets.get(k);
+                if (s.preds.size() < 2 || s.phis().isEmpty()) continue;
+                Block mid = f.newBlock();
+                Instr j = f.newInstr(Instr.Op.JMP);
+                j.targets.add(s);
+                mid.append(j);
+                mid.preds.add(b);
+                t.targets.set(k, mid);
+                s.preds.set(s.preds.indexOf(b), mid);
+            }
+        }
+    }
+
+    /**
+     * br o select cuya condición (con posibles ! encima) es una comparación
+     * calculada justo antes y usada solo ahí: no se materializa el 0/1.
+     */
+    private void findFusedBranches() {
+        for (Block b : order) {
+            for (int k = 0; k < b.instrs.size(); k++) {
+                Instr t = b.instrs.get(k);
+                if (t.op != Instr.Op.BR && t.op != Instr.Op.SELECT) continue;
+                int idx = k - 1;
+                Instr c = t.args.get(0);
+                while (idx >= 0 && b.instrs.get(idx) == c && c.users.size() == 1) {
+                    if (c.op == Instr.Op.NOT) {
+                        fused.add(c);
+                        c = c.args.get(0);
+                        idx--;
+                    } else {
+                        if (c.isCompare()) fused.add(c);
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /** Valor que solo usa el ret que lo sigue: se deja en %rax, sin registro propio. */
+    private void findReturnValues() {
+        for (Block b : order) {
+            Instr t = b.terminator();
+            int n = b.instrs.size();
+            if (t.op != Instr.Op.RET || t.args.isEmpty() || n < 2) continue;
+            Instr v = t.args.get(0);
+            if (b.instrs.get(n - 2) == v && v.users.size() == 1 && !v.isPhi() && v.op != Instr.Op.PARAM) inRax.add(v);
+        }
+    }
+
+    /* ---------- Posiciones, vida e intervalos ---------- */
+
+    private final Map<Instr, Integer> defPos = new HashMap<>();
+    private final Map<Instr, List<Integer>> usePos = new HashMap<>();
+
+    private void number() {
+        int p = 2;          // los parámetros nacen en 0
+        for (Block b : order) {
+            blockStart.put(b, p);
+            for (Instr i : b.instrs) {
+                if (i.isPhi()) defPos.put(i, p);
+            }
+            p += 2;
+            for (Instr i : b.instrs) {
+                if (i.isPhi() || fused.contains(i)) continue;
+                if (i.op == Instr.Op.PARAM) {
+                    defPos.put(i, 0);
+                    continue;
+                }
+                if (i.isTerminator()) {
+                    blockEnd.put(b, p);
+                    addUses(i, p);
+                    // Las copias de phi del sucesor leen sus operandos acá
+                    if (i.op == Instr.Op.JMP) {
+                        Block s = i.targets.get(0);
+                        int k = s.preds.indexOf(b);
+                        for (Instr phi : s.phis()) use(phi.args.get(k), p);
+                    }
+                } else {
+                    addUses(i, p);
+                    if (i.op == Instr.Op.CALL) callPositions.add(p);
+                    if (i.hasValue()) defPos.put(i, p + 1);
+                }
+                p += 2;
+            }
+        }
+    }
+
+    /** Usos de una instrucción; los de una comparación fusionada cuentan en el br. */
+    private void addUses(Instr i, int p) {
+        for (Instr a : i.args) {
+            if (fused.contains(a)) {
+                addUses(a, p);
+            } else {
+                use(a, p);
+            }
+        }
+    }
+
+    private void use(Instr v, int p) {
+        if (v.block == null) return;        // constante o indefinido
+        usePos.computeIfAbsent(v, k -> new ArrayList<>()).add(p);
+    }
+
+    private void liveness() {
+        // Conjuntos por bloque: definidos y usados antes de definirse
+        Map<Block, Set<Instr>> defs = new HashMap<>();
+        Map<Block, Set<Instr>> upward = new HashMap<>();
+        for (Block b : order) {
+            Set<Instr> d = new HashSet<>();
+            Set<Instr> u = new HashSet<>();
+            for (Instr i : b.instrs) {
+                if (fused.contains(i)) continue;
+                if (!i.isPhi()) {
+                    for (Instr a : operands(i)) {
+                        if (a.block != null && !d.contains(a)) u.add(a);
+                    }
+                }
+                if (i.hasValue()) d.add(i);
+            }
+            defs.put(b, d);
+            upward.put(b, u);
+        }
+
+        Map<Block, Set<Instr>> liveIn = new HashMap<>();
+        Map<Block, Set<Instr>> liveOut = new HashMap<>();
+        for (Block b : order) {
+            liveIn.put(b, new HashSet<>());
+            liveOut.put(b, new HashSet<>());
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int k = order.size() - 1; k >= 0; k--) {
+                Block b = order.get(k);
+                Set<Instr> out = new HashSet<>();
+                for (Block s : b.succs()) {
+                    for (Instr v : liveIn.get(s)) if (!(v.isPhi() && v.block == s)) out.add(v);
+                    int idx = s.preds.indexOf(b);
+                    for (Instr phi : s.phis()) {
+                        Instr a = phi.args.get(idx);
+                        if (a.block != null) out.add(a);
+                    }
+                }
+                Set<Instr> in = new HashSet<>(out);
+                in.removeAll(defs.get(b));
+                in.addAll(upward.get(b));
+                if (!out.equals(liveOut.get(b)) || !in.equals(liveIn.get(b))) {
+                    liveOut.put(b, out);
+                    liveIn.put(b, in);
+                    changed = true;
+                }
+            }
+        }
+
+        // Un intervalo por valor: definición, usos y bordes de bloque donde está vivo
+        for (Block b : order) {
+            for (Instr i : b.instrs) {
+                if (!i.hasValue() || fused.contains(i) || inRax.contains(i)) continue;
+                LiveInterval it = new LiveInterval(i, defPos.get(i));
+                for (int p : usePos.getOrDefault(i, Collections.emptyList())) it.cover(p);
+                if (i.isPhi()) {
+                    // La copia escribe la phi después de leer los operandos del salto
+                    for (Block p : b.preds) it.cover(blockEnd.get(p) + 1);
+                }
+                if (i.op == Instr.Op.PARAM && i.value < 6) it.hint = X86_64Generator.ARG_REGS[(int) i.value];
+                intervals.put(i, it);
+            }
+        }
+        // Una phi y sus operandos prefieren el mismo registro: la copia desaparece
+        for (Block b : order) {
+            for (Instr phi : b.phis()) {
+                LiveInterval it = intervals.get(phi);
+                for (Instr a : phi.args) {
+                    LiveInterval ia = intervals.get(a);
+                    if (ia == null) continue;
+                    if (it.sameAs == null) it.sameAs = ia;
+                    if (ia.sameAs == null) ia.sameAs = it;
+                }
+            }
+        }
+        for (Block b : order) {
+            for (Instr v : liveIn.get(b)) intervals.get(v).cover(blockStart.get(b));
+            for (Instr v : liveOut.get(b)) intervals.get(v).cover(blockEnd.get(b));
+        }
+        coalesce(liveIn, liveOut);
+    }
+
+    /**
+     * Une cada phi con los operandos que no interfieren con ella ni con lo
+     * ya unido: ninguno está vivo donde se define el otro. Es el caso de
+     * i = i + 1 en un while: el intervalo único de la phi llega hasta el
+     * salto hacia atrás y se solapa con el de i + 1, así que la preferencia
+     * de registro sola no alcanza. Unidos comparten intervalo y la copia del
+     * movimiento paralelo es sobre sí misma.
+     */
+    private void coalesce(Map<Block, Set<Instr>> liveIn, Map<Block, Set<Instr>> liveOut) {
+        Map<LiveInterval, List<Instr>> members = new HashMap<>();
+        for (Map.Entry<Instr, LiveInterval> e : intervals.entrySet()) {
+            members.computeIfAbsent(e.getValue(), k -> new ArrayList<>()).add(e.getKey());
+        }
+        for (Block b : order) {
+            for (Instr phi : b.phis()) {
+                for (Instr a : phi.args) {
+                    LiveInterval it = intervals.get(phi);
+                    LiveInterval ia = intervals.get(a);
+                    if (ia == null || ia == it || a.op == Instr.Op.PARAM) continue;
+                    if (interferes(members.get(it), members.get(ia), liveIn, liveOut)) continue;
+                    it.cover(ia.start);
+                    it.cover(ia.end);
+                    for (Instr m : members.remove(ia)) {
+                        intervals.put(m, it);
+                        members.get(it).add(m);
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean interferes(List<Instr> xs, List<Instr> ys, Map<Block, Set<Instr>> liveIn,
+                               Map<Block, Set<Instr>> liveOut) {
+        for (Instr x : xs) {
+            for (Instr y : ys) {
+                if (liveAtDef(x, y, liveIn, liveOut) || liveAtDef(y, x, liveIn, liveOut)) return true;
+            }
+        }
+        return false;
+    }
+
+    /** v está vivo justo después de la definición de w. */
+    private boolean liveAtDef(Instr v, Instr w, Map<Block, Set<Instr>> liveIn, Map<Block, Set<Instr>> liveOut) {
+        Block bw = w.block;
+        int def = defPos.get(w);
+        if (v.block == bw) {
+            if (v.isPhi() && w.isPhi()) return true;        // nacen juntas al entrar al bloque
+            if (defPos.get(v) > def) return false;          // v se define después
+        } else if (!liveIn.get(bw).contains(v)) {
+            return false;
+        }
+        if (liveOut.get(bw).contains(v)) return true;
+        int end = blockEnd.get(bw);
+        for (int p : usePos.getOrDefault(v, Collections.emptyList())) {
+            if (p > def && p <= end) return true;
+        }
+        return false;
+    }
+
+    /** Operandos reales de una instrucción (los de una comparación fusionada incluidos). */
+    private List<Instr> operands(Instr i) {
+        List<Instr> out = new ArrayList<>();
+        for (Instr a : i.args) {
+            if (fused.contains(a)) {
+                out.addAll(operands(a));
+            } else {
+                out.add(a);
+            }
+        }
+        return out;
+    }
+
+    /* ---------- Emisión ---------- */
+
+    private void emit(String op, String... args) {
+        code.add(Insn.op(op, args));
+    }
+
+    private static boolean fitsImm(long k) {
+        return k == (int) k;
+    }
+
+    /** Ubicación de un valor: $k, registro o posición de memoria. */
+    private String loc(Instr v) {
+        if (v.isConst()) return "$" + v.value;
+        if (v.op == Instr.Op.UNDEF) return "$0";
+        if (inRax.contains(v)) return "%rax";
+        return intervals.get(v).loc.toString();
+    }
+
+    private static boolean isMem(String loc) {
+        return Loc.isMem(loc);
+    }
+
+    /** Operando fuente; una constante que no entra en 32 bits pasa por el registro dado. */
+    private String src(Instr v, String scratch) {
+        if (v.isConst() && !fitsImm(v.value)) {
+            emit("movabsq", "$" + v.value, scratch);
+            return scratch;
+        }
+        return loc(v);
+    }
+
+    private void load(Instr v, String reg) {
+        if (v.isConst() && !fitsImm(v.value)) {
+            emit("movabsq", "$" + v.value, reg);
+        } else {
+            emit("movq", loc(v), reg);
+        }
+    }
+
+    private void store(String reg, Instr v) {
+        if (v.users.isEmpty() && v.op == Instr.Op.CALL) return;   // resultado descartado
+        emit("movq", reg, loc(v));
+    }
+
+    private void instr(Instr i) {
+        switch (i.op) {
+            case ADD:
+            case SUB:
+            case MUL:
+                arithmetic(i);
+                break;
+            case DIV: {
+                load(i.args.get(0), "%rax");
+                Instr d = i.args.get(1);
+                List<Insn> reduced = d.isConst() ? StrengthReducer.divide(d.value) : null;
+                if (reduced != null) {
+                    code.addAll(reduced);
+                } else {
+                    String s = src(d, "%rcx");
+                    if (s.startsWith("$")) {
+                        emit("movq", s, "%rcx");
+                        s = "%rcx";
+                    }
+                    emit("cqto");
+                    emit("idivq", s);
+                }
+                store("%rax", i);
+                break;
+            }
+            case EQ:
+            case LT:
+            case GT:
+                setcc(compare(i));
+                store("%rax", i);
+                break;
+            case NEG: {
+                String dst = loc(i);
+                if (dst.startsWith("%")) {
+                    load(i.args.get(0), dst);
+                    emit("negq", dst);
+                } else {
+                    load(i.args.get(0), "%rax");
+                    emit("negq", "%rax");
+                    store("%rax", i);
+                }
+                break;
+            }
+            case NOT:
+                setcc(X86_64Generator.negate(test(i.args.get(0))));
+                store("%rax", i);
+                break;
+            case CALL:
+                call(i);
+                break;
+            case SELECT:
+                select(i);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /** + - *: directo en el registro destino cuando no pisa al operando derecho. */
+    private void arithmetic(Instr i) {
+        Instr a = i.args.get(0);
+        Instr b = i.args.get(1);
+        if (i.op != Instr.Op.SUB && a.block == null && b.block != null) {
+            Instr t = a;
+            a = b;
+            b = t;
+        }
+        String mnemonic = i.op == Instr.Op.ADD ? "addq" : i.op == Instr.Op.SUB ? "subq" : "imulq";
+
+        if (i.op == Instr.Op.MUL && b.isConst()) {
+            List<Insn> reduced = StrengthReducer.multiply(b.value);
+            if (reduced != null) {
+                load(a, "%rax");
+                code.addAll(reduced);
+                store("%rax", i);
+                return;
+            }
+        }
+
+        String dst = loc(i);
+        boolean direct = dst.startsWith("%") && (b.block == null || !loc(b).equals(dst));
+        String acc = direct ? dst : "%rax";
+        load(a, acc);
+        emit(mnemonic, src(b, "%rcx"), acc);
+        if (!direct) store("%rax", i);
+    }
+
+    /**
+     * select c, a, b: primero las banderas de c, después b al registro
+     * destino (movq no las toca) y cmovcc con a, que no admite inmediato.
+     */
+    private void select(Instr i) {
+        String cc = condition(i.args.get(0));
+        Instr a = i.args.get(1);
+        Instr b = i.args.get(2);
+        String dst = loc(i);
+        if (dst.startsWith("%") && a.block != null && b.block != null && loc(a).equals(dst)) {
+            // a ya está en el destino: solo se mueve b con la condición opuesta
+            if (!loc(b).equals(dst)) emit("cmov" + X86_64Generator.negate(cc), loc(b), dst);
+            return;
+        }
+        String acc = dst.startsWith("%") && (a.block == null || !loc(a).equals(dst)) ? dst : "%rax";
+        if (b.block == null || !loc(b).equals(acc)) load(b, acc);
+        String s = loc(a);
+        if (a.block == null) {
+            load(a, "%rcx");
+            s = "%rcx";
+        }
+        emit("cmov" + cc, s, acc);
+        if (!acc.equals(dst)) emit("movq", acc, dst);
+    }
+
+    /** Emite cmpq para a op b y devuelve el código de condición que vale si es verdadera. */
+    private String compare(Instr c) {
+        String cc = c.op == Instr.Op.EQ ? "e" : c.op == Instr.Op.LT ? "l" : "g";
+        Instr a = c.args.get(0);
+        Instr b = c.args.get(1);
+        String l = loc(a);
+        String r = loc(b);
+
+        if (a.block == null && b.block != null) {
+            // cmpq no admite inmediato como destino: invertir los operandos
+            String s = src(a, "%rcx");
+            emit("cmpq", s, r);
+            return X86_64Generator.swap(cc);
+        }
+        if (a.block == null || (isMem(l) && isMem(r))) {
+            load(a, "%rax");
+            l = "%rax";
+        }
+        emit("cmpq", src(b, "%rcx"), l);
+        return cc;
+    }
+
+    /** Compara un valor con 0 y devuelve la condición "distinto de cero". */
+    private String test(Instr v) {
+        String l = loc(v);
+        if (v.isConst() || v.op == Instr.Op.UNDEF) {
+            load(v, "%rax");
+            l = "%rax";
+        }
+        if (l.startsWith("%")) {
+            emit("testq", l, l);
+        } else {
+            emit("cmpq", "$0", l);
+        }
+        return "ne";
+    }
+
+    /** Condición de una rama: comparación o ! fusionados, o prueba contra 0. */
+    private String condition(Instr c) {
+        if (fused.contains(c)) {
+            if (c.op == Instr.Op.NOT) return X86_64Generator.negate(condition(c.args.get(0)));
+            return compare(c);
+        }
+        return test(c);
+    }
+
+    private void setcc(String cc) {
+        emit("set" + cc, "%al");
+        emit("movzbq", "%al", "%rax");
+    }
+
+    private void call(Instr i) {
+        code.add(Insn.comment("Preparando llamada a " + i.callee));
+        ParallelMove moves = new ParallelMove();
+        List<Insn> constants = new ArrayList<>();
+        // Del 7º en adelante van en la pila, con relleno si hace falta para
+        // que %rsp quede alineado a 16 bytes en el call (el marco ya lo está)
+        int onStack = Math.max(0, i.args.size() - 6);
+        int padding = (8 * onStack) % 16;
+        if (padding != 0) emit("subq", "$" + padding, "%rsp");
+        for (int k = i.args.size() - 1; k >= 6; k--) {
+            emit("pushq", src(i.args.get(k), "%rax"));
+        }
+
+        int n = Math.min(i.args.size(), 6);
+        for (int k = 0; k < n; k++) {
+            Instr a = i.args.get(k);
+            String reg = X86_64Generator.ARG_REGS[k];
+            if (a.block == null) {
+                // Las constantes no son origen de ningún otro movimiento: van al final
+                long v = a.isConst() ? a.value : 0;
+                constants.add(Insn.op(fitsImm(v) ? "movq" : "movabsq", "$" + v, reg));
+            } else {
+                moves.add(loc(a), reg);
+            }
+        }
+        code.addAll(moves.sequence("%rax"));
+        code.addAll(constants);
+        emit("call", i.callee);
+        if (onStack > 0) emit("addq", "$" + (8 * onStack + padding), "%rsp");
+        store("%rax", i);
+    }
+
+    private void terminator(Block b, Instr t, Block next) {
+        switch (t.op) {
+            case RET:
+                if (!t.args.isEmpty()) load(t.args.get(0), "%rax");
+                emit("jmp", returnLabel);
+                break;
+            case JMP: {
+                Block s = t.targets.get(0);
+                phiCopies(b, s);
+                if (s != next && isTestOnly(s)) {
+                    // Se copia la prueba de s: no hace falta pasar por su salto
+                    branch(b, s.terminator(), next);
+                } else {
+                    emit("jmp", labels.get(s));
+                }
+                break;
+            }
+            case BR:
+                branch(b, t, next);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Salto condicional de un br al final de b; se cae al destino que sigue
+     * en el orden. Si ninguno sigue, el condicional va al que cierra un
+     * bucle (vuelve a un bloque que domina a b), así cada vuelta es un solo
+     * salto tomado y el jmp queda para la salida.
+     */
+    private void branch(Block b, Instr t, Block next) {
+        String cc = condition(t.args.get(0));
+        Block thenB = t.targets.get(0);
+        Block elseB = t.targets.get(1);
+        if (thenB == next) {
+            emit("j" + X86_64Generator.negate(cc), labels.get(elseB));
+        } else if (elseB != next && backEdge(b, elseB) && !backEdge(b, thenB)) {
+            emit("j" + X86_64Generator.negate(cc), labels.get(elseB));
+            emit("jmp", labels.get(thenB));
+        } else {
+            emit("j" + cc, labels.get(thenB));
+            if (elseB != next) emit("jmp", labels.get(elseB));
+        }
+    }
+
+    /** La arista b -> s vuelve al encabezado de un bucle. */
+    private boolean backEdge(Block b, Block s) {
+        return dom.dominates(s, b);
+    }
+
+    /**
+     * Bloque cuya única instrucción con código es un br (con su comparación
+     * fusionada) y cuyos destinos no tienen phi: se puede repetir al final
+     * de cualquier predecesor, después de sus copias de phi, porque cada
+     * valor ocupa el mismo lugar en toda la función.
+     */
+    private boolean isTestOnly(Block s) {
+        Instr t = s.terminator();
+        if (t == null || t.op != Instr.Op.BR) return false;
+        for (Instr i : s.instrs) {
+            if (i != t && !i.isPhi() && !fused.contains(i)) return false;
+        }
+        for (Block d : t.targets) if (!d.phis().isEmpty()) return false;
+        return true;
+    }
+
+    /** Copias de las phi de s al final de su predecesor b. */
+    private void phiCopies(Block b, Block s) {
+        int k = s.preds.indexOf(b);
+        ParallelMove moves = new ParallelMove();
+        List<Instr[]> constants = new ArrayList<>();
+        for (Instr phi : s.phis()) {
+            Instr a = phi.args.get(k);
+            if (a.block == null) {
+                constants.add(new Instr[] {a, phi});
+            } else {
+                moves.add(loc(a), loc(phi));
+            }
+        }
+        // movq no admite memoria a memoria: esas copias pasan por %rcx
+        for (Insn mv : moves.sequence("%rax")) {
+            if (isMem(mv.arg(0)) && isMem(mv.arg(1))) {
+                emit("movq", mv.arg(0), "%rcx");
+                emit("movq", "%rcx", mv.arg(1));
+            } else {
+                code.add(mv);
+            }
+        }
+        for (Instr[] c : constants) {
+            String dst = loc(c[1]);
+            long v = c[0].isConst() ? c[0].value : 0;
+            if (fitsImm(v)) {
+                emit("movq", "$" + v, dst);
+            } else if (dst.startsWith("%")) {
+                emit("movabsq", "$" + v, dst);
+            } else {
+                emit("movabsq", "$" + v, "%rax");
+                emit("movq", "%rax", dst);
+            }
+        }
+    }
+}
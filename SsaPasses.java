@@ -0,0 +1,646 @@
+import java.util.*;
+
+/* ---------------- Pases de optimización sobre la IR SSA ---------------- */
+
+/*
+ * Propagación de constantes condicional dispersa (Wegman y Zadeck). Cada
+ * valor arranca en TOP (sin información) y baja a CONST o BOTTOM; solo se
+ * evalúan los bloques alcanzables por aristas ejecutables, así una rama
+ * cuya condición resulta constante no contamina las phi de la otra.
+ *
+ * La aritmética es la del código nativo (64 bits). Una división por cero
+ * nunca se pliega: queda como falla en tiempo de ejecución.
+ */
+class SparseConditionalConstantPropagation implements SsaPass {
+    private static final int TOP = 0, CONST = 1, BOTTOM = 2;
+
+    private final Map<Instr, Integer> state = new HashMap<>();
+    private final Map<Instr, Long> values = new HashMap<>();
+    private final Set<Block> executable = new HashSet<>();
+    private final Set<Long> executableEdges = new HashSet<>();
+    private final Deque<Block[]> flowWork = new ArrayDeque<>();
+    private final Deque<Instr> ssaWork = new ArrayDeque<>();
+
+    @Override
+    public String name() { return "sccp"; }
+
+    @Override
+    public boolean run(IrFunction f) {
+        state.clear();
+        values.clear();
+        executable.clear();
+        executableEdges.clear();
+
+        flowWork.add(new Block[] {null, f.entry});
+        while (!flowWork.isEmpty() || !ssaWork.isEmpty()) {
+            while (!flowWork.isEmpty()) {
+                Block[] edge = flowWork.poll();
+                if (edge[0] != null && !executableEdges.add(edgeKey(edge[0], edge[1]))) continue;
+                Block b = edge[1];
+                for (Instr phi : b.phis()) visit(phi);
+                if (executable.add(b)) {
+                    for (Instr i : b.instrs) if (!i.isPhi()) visit(i);
+                }
+            }
+            while (!ssaWork.isEmpty()) {
+                Instr i = ssaWork.poll();
+                if (i.block != null && executable.contains(i.block)) visit(i);
+            }
+        }
+        return rewrite(f);
+    }
+
+    private static long edgeKey(Block from, Block to) {
+        return ((long) from.id << 32) | to.id;
+    }
+
+    private int stateOf(Instr v) {
+        if (v.isConst()) return CONST;
+        if (v.op == Instr.Op.UNDEF) return BOTTOM;
+        return state.getOrDefault(v, TOP);
+    }
+
+    private long valueOf(Instr v) {
+        return v.isConst() ? v.value : values.get(v);
+    }
+
+    private void lower(Instr i, int s, long v) {
+        int old = state.getOrDefault(i, TOP);
+        if (old == BOTTOM) return;
+        if (s == CONST && old == CONST) {
+            if (values.get(i) == v) return;
+            s = BOTTOM;                 // dos constantes distintas
+        } else if (s <= old) {
+            return;
+        }
+        state.put(i, s);
+        if (s == CONST) values.put(i, v);
+        ssaWork.addAll(i.users);
+    }
+
+    private void visit(Instr i) {
+        switch (i.op) {
+            case PHI: {
+                int s = TOP;
+                long v = 0;
+                for (int k = 0; k < i.args.size(); k++) {
+                    if (!executableEdges.contains(edgeKey(i.block.preds.get(k), i.block))) continue;
+                    Instr a = i.args.get(k);
+                    int sa = stateOf(a);
+                    if (sa == TOP) continue;
+                    if (sa == BOTTOM || (s == CONST && valueOf(a) != v)) {
+                        s = BOTTOM;
+                        break;
+                    }
+                    s = CONST;
+                    v = valueOf(a);
+                }
+                if (s != TOP) lower(i, s, v);
+                break;
+            }
+            case JMP:
+                flowWork.add(new Block[] {i.block, i.targets.get(0)});
+                break;
+            case BR: {
+                Instr c = i.args.get(0);
+                int s = stateOf(c);
+                if (s == CONST) {
+                    flowWork.add(new Block[] {i.block, i.targets.get(valueOf(c) != 0 ? 0 : 1)});
+                } else if (s == BOTTOM) {
+                    flowWork.add(new Block[] {i.block, i.targets.get(0)});
+                    flowWork.add(new Block[] {i.block, i.targets.get(1)});
+                }
+                break;
+            }
+            case SELECT: {
+                // Con la condición constante vale el operando elegido; si no,
+                // es constante solo si los dos lo son y coinciden
+                int sc = stateOf(i.args.get(0));
+                if (sc == TOP) break;
+                Instr a = i.args.get(1);
+                Instr b = i.args.get(2);
+                if (sc == CONST) {
+                    Instr chosen = valueOf(i.args.get(0)) != 0 ? a : b;
+                    int s = stateOf(chosen);
+                    if (s != TOP) lower(i, s, s == CONST ? valueOf(chosen) : 0);
+                    break;
+                }
+                int sa = stateOf(a);
+                int sb = stateOf(b);
+                if (sa == BOTTOM || sb == BOTTOM) {
+                    lower(i, BOTTOM, 0);
+                } else if (sa == CONST && sb == CONST) {
+                    if (valueOf(a) == valueOf(b)) {
+                        lower(i, CONST, valueOf(a));
+                    } else {
+                        lower(i, BOTTOM, 0);
+                    }
+                }
+                break;
+            }
+            case RET:
+                break;
+            case PARAM:
+            case CALL:
+                lower(i, BOTTOM, 0);
+                break;
+            default: {
+                boolean pending = false;
+                boolean bottom = false;
+                for (Instr a : i.args) {
+                    int sa = stateOf(a);
+                    pending |= sa == TOP;
+                    bottom |= sa == BOTTOM;
+                }
+                if (bottom) {
+                    lower(i, BOTTOM, 0);
+                    break;
+                }
+                if (pending) break;
+                Long v = fold(i.op, valueOf(i.args.get(0)), i.args.size() > 1 ? valueOf(i.args.get(1)) : 0);
+                if (v == null) {
+                    lower(i, BOTTOM, 0);
+                } else {
+                    lower(i, CONST, v);
+                }
+            }
+        }
+    }
+
+    /** Resultado de una operación con operandos constantes, o null si no se pliega. */
+    static Long fold(Instr.Op op, long a, long b) {
+        switch (op) {
+            case ADD: return a + b;
+            case SUB: return a - b;
+            case MUL: return a * b;
+            case DIV:
+                if (b == 0 || (a == Long.MIN_VALUE && b == -1)) return null;   // idivq fallaría
+                return a / b;
+            case EQ:  return a == b ? 1L : 0L;
+            case LT:  return a < b ? 1L : 0L;
+            case GT:  return a > b ? 1L : 0L;
+            case NEG: return -a;
+            case NOT: return a == 0 ? 1L : 0L;
+            default:  return null;
+        }
+    }
+
+    private boolean rewrite(IrFunction f) {
+        boolean changed = false;
+
+        // Valores constantes: reemplazar en sus usos
+        for (Block b : f.blocks) {
+            if (!executable.contains(b)) continue;
+            for (Instr i : new ArrayList<>(b.instrs)) {
+                if (i.hasValue() && stateOf(i) == CONST && i.op != Instr.Op.CALL) {
+                    i.replaceAllUsesWith(f.constant(values.get(i)));
+                    i.remove();
+                    changed = true;
+                }
+            }
+        }
+
+        // Ramas con una sola arista ejecutable
+        for (Block b : f.blocks) {
+            if (!executable.contains(b)) continue;
+            Instr t = b.terminator();
+            if (t == null || t.op != Instr.Op.BR) continue;
+            boolean toThen = executableEdges.contains(edgeKey(b, t.targets.get(0)));
+            boolean toElse = executableEdges.contains(edgeKey(b, t.targets.get(1)));
+            if (toThen != toElse) {
+                Block keep = t.targets.get(toThen ? 0 : 1);
+                Block drop = t.targets.get(toThen ? 1 : 0);
+                if (keep != drop) drop.removePred(b);
+                t.remove();
+                Instr j = f.newInstr(Instr.Op.JMP);
+                j.targets.add(keep);
+                b.append(j);
+                changed = true;
+            }
+        }
+
+        // Bloques nunca ejecutados
+        changed |= SimplifyCfg.removeBlocks(f, b -> !executable.contains(b));
+        return changed;
+    }
+}
+
+/*
+ * Numeración de valores global (GVN) sobre el árbol de dominadores: se
+ * recorre en preorden con una tabla de expresiones disponibles, así al
+ * llegar a un bloque la tabla tiene exactamente lo calculado en los bloques
+ * que lo dominan. Una instrucción cuya clave (operación y operandos) ya está
+ * en la tabla se reemplaza por la anterior:
+ *
+ *   %4 = mul %1, %2            %4 = mul %1, %2
+ *   %5 = mul %1, %2     ->     %6 = add %4, %4
+ *   %6 = add %4, %5
+ *
+ * Dentro de un bloque es numeración local; entre bloques solo se reusa lo
+ * que domina, que ya se ejecutó en todo camino. Por eso también se reusan
+ * divisiones (si la primera no falló, la repetida tampoco) y llamadas a
+ * funciones puras (PurityAnalyzer): mismo resultado con los mismos
+ * argumentos. + * == son conmutativas y a > b se numera como b < a.
+ */
+class GlobalValueNumbering implements SsaPass {
+    private final Set<String> pureFunctions;
+    private int local = 0;          // reusadas del mismo bloque
+    private int global = 0;         // reusadas de un bloque dominador
+
+    private final Map<List<Object>, Instr> available = new HashMap<>();
+    private boolean changed;
+
+    GlobalValueNumbering(Set<String> pureFunctions) {
+        this.pureFunctions = pureFunctions;
+    }
+
+    public int getLocal() { return local; }
+    public int getGlobal() { return global; }
+
+    @Override
+    public String name() { return "gvn"; }
+
+    @Override
+    public boolean run(IrFunction f) {
+        DominatorTree dom = new DominatorTree(f);
+        available.clear();
+        changed = false;
+        visit(dom, f.entry);
+        return changed;
+    }
+
+    private void visit(DominatorTree dom, Block b) {
+        List<List<Object>> added = new ArrayList<>();
+        for (Instr i : new ArrayList<>(b.instrs)) {
+            List<Object> k = key(i);
+            if (k == null) continue;
+            Instr prev = available.get(k);
+            if (prev == null) {
+                available.put(k, i);
+                added.add(k);
+                continue;
+            }
+            if (prev.block == b) {
+                local++;
+            } else {
+                global++;
+            }
+            i.replaceAllUsesWith(prev);
+            i.remove();
+            changed = true;
+        }
+        for (Block c : dom.children(b)) visit(dom, c);
+        for (List<Object> k : added) available.remove(k);
+    }
+
+    /** Clave de la expresión que calcula i, o null si no se puede reusar. */
+    private List<Object> key(Instr i) {
+        List<Object> k = new ArrayList<>();
+        switch (i.op) {
+            case ADD:
+            case MUL:
+            case EQ: {
+                int a = i.args.get(0).id;
+                int b = i.args.get(1).id;
+                return Arrays.asList(i.op, Math.min(a, b), Math.max(a, b));
+            }
+            case GT:
+                return Arrays.asList(Instr.Op.LT, i.args.get(1).id, i.args.get(0).id);
+            case SUB:
+            case DIV:
+            case LT:
+            case NEG:
+            case NOT:
+            case SELECT:
+                k.add(i.op);
+                break;
+            case PHI:
+                // Solo phi del mismo bloque: los operandos dependen de por dónde se llegó
+                k.add(i.op);
+                k.add(i.block);
+                break;
+            case CALL:
+                if (!pureFunctions.contains(i.callee)) return null;
+                k.add(i.op);
+                k.add(i.callee);
+                break;
+            default:
+                return null;
+        }
+        for (Instr a : i.args) k.add(a.id);
+        return k;
+    }
+}
+
+/*
+ * Elimina instrucciones cuyo valor no se usa. Se marcan vivas las que
+ * tienen efectos (terminadores, llamadas, divisiones que pueden fallar) y
+ * todo lo que ellas usan; el resto, incluidas las phi que solo se usan
+ * entre sí, se borra.
+ */
+class DeadCodeElimination implements SsaPass {
+    @Override
+    public String name() { return "dce"; }
+
+    @Override
+    public boolean run(IrFunction f) {
+        Set<Instr> live = new HashSet<>();
+        Deque<Instr> work = new ArrayDeque<>();
+        for (Block b : f.blocks) {
+            for (Instr i : b.instrs) {
+                if (i.hasEffects() && live.add(i)) work.add(i);
+            }
+        }
+        while (!work.isEmpty()) {
+            for (Instr a : work.poll().args) {
+                if (a.block != null && live.add(a)) work.add(a);
+            }
+        }
+
+        List<Instr> dead = new ArrayList<>();
+        for (Block b : f.blocks) {
+            for (Instr i : b.instrs) if (!live.contains(i)) dead.add(i);
+        }
+        for (Instr i : dead) i.clearArgs();
+        for (Instr i : dead) i.remove();
+        return !dead.isEmpty();
+    }
+}
+
+/*
+ * Limpieza del grafo de flujo hasta un punto fijo:
+ *   - borra bloques inalcanzables y ajusta las phi de sus sucesores
+ *   - br con condición constante o con ambos destinos iguales -> jmp
+ *   - reemplaza phi triviales (un solo valor distinto)
+ *   - une un bloque con su único sucesor si este no tiene otro predecesor
+ *   - saltea bloques vacíos que solo contienen un jmp
+ */
+class SimplifyCfg implements SsaPass {
+    @Override
+    public String name() { return "simplify-cfg"; }
+
+    @Override
+    public boolean run(IrFunction f) {
+        boolean any = false;
+        boolean changed = true;
+        while (changed) {
+            Set<Block> reachable = new HashSet<>(f.reversePostorder());
+            changed = removeBlocks(f, b -> !reachable.contains(b));
+            changed |= foldBranches(f);
+            changed |= removeTrivialPhis(f);
+            changed |= mergeBlocks(f);
+            changed |= skipEmptyBlocks(f);
+            any |= changed;
+        }
+        return any;
+    }
+
+    /** Borra los bloques que cumplen la condición (deben ser inalcanzables). */
+    static boolean removeBlocks(IrFunction f, java.util.function.Predicate<Block> doomed) {
+        List<Block> gone = new ArrayList<>();
+        for (Block b : f.blocks) if (b != f.entry && doomed.test(b)) gone.add(b);
+        if (gone.isEmpty()) return false;
+
+        for (Block b : gone) {
+            for (Block s : new ArrayList<>(b.succs())) s.removePred(b);
+        }
+        for (Block b : gone) {
+            for (Instr i : new ArrayList<>(b.instrs)) {
+                if (!i.users.isEmpty()) i.replaceAllUsesWith(f.undef());
+                i.clearArgs();
+            }
+            b.instrs.clear();
+            b.preds.clear();
+        }
+        f.blocks.removeAll(gone);
+        return true;
+    }
+
+    private static boolean foldBranches(IrFunction f) {
+        boolean changed = false;
+        for (Block b : f.blocks) {
+            Instr t = b.terminator();
+            if (t == null || t.op != Instr.Op.BR) continue;
+            Instr c = t.args.get(0);
+            Block keep;
+            if (t.targets.get(0) == t.targets.get(1)) {
+                keep = t.targets.get(0);
+                keep.removePred(b);         // queda una sola arista desde b
+            } else if (c.isConst()) {
+                keep = t.targets.get(c.value != 0 ? 0 : 1);
+                t.targets.get(c.value != 0 ? 1 : 0).removePred(b);
+            } else {
+                continue;
+            }
+            t.remove();
+            Instr j = f.newInstr(Instr.Op.JMP);
+            j.targets.add(keep);
+            b.append(j);
+            changed = true;
+        }
+        return changed;
+    }
+
+    static boolean removeTrivialPhis(IrFunction f) {
+        boolean changed = false;
+        boolean again = true;
+        while (again) {
+            again = false;
+            for (Block b : f.blocks) {
+                for (Instr phi : b.phis()) {
+                    Instr same = null;
+                    boolean trivial = true;
+                    for (Instr a : phi.args) {
+                        if (a == phi || a == same) continue;
+                        if (same != null) {
+                            trivial = false;
+                            break;
+                        }
+                        same = a;
+                    }
+                    if (!trivial) continue;
+                    phi.replaceAllUsesWith(same != null ? same : f.undef());
+                    phi.remove();
+                    again = changed = true;
+                }
+            }
+        }
+        return changed;
+    }
+
+    private static boolean mergeBlocks(IrFunction f) {
+        boolean changed = false;
+        for (Block b : new ArrayList<>(f.blocks)) {
+            if (!f.blocks.contains(b)) continue;
+            Instr t = b.terminator();
+            if (t == null || t.op != Instr.Op.JMP) continue;
+            Block s = t.targets.get(0);
+            if (s == b || s == f.entry || s.preds.size() != 1) continue;
+
+            // Con un solo predecesor las phi de s son copias
+            for (Instr phi : s.phis()) {
+                phi.replaceAllUsesWith(phi.args.get(0));
+                phi.remove();
+            }
+            t.remove();
+            for (Instr i : new ArrayList<>(s.instrs)) {
+                s.instrs.remove(i);
+                i.block = b;
+                b.instrs.add(i);
+            }
+            for (Block succ : b.succs()) {
+                Collections.replaceAll(succ.preds, s, b);
+            }
+            s.preds.clear();
+            f.blocks.remove(s);
+            changed = true;
+        }
+        return changed;
+    }
+
+    private static boolean skipEmptyBlocks(IrFunction f) {
+        boolean changed = false;
+        for (Block b : new ArrayList<>(f.blocks)) {
+            if (b == f.entry || b.instrs.size() != 1) continue;
+            Instr t = b.terminator();
+            if (t == null || t.op != Instr.Op.JMP) continue;
+            Block target = t.targets.get(0);
+            if (target == b) continue;
+
+            int k = target.preds.indexOf(b);
+            for (Block p : new ArrayList<>(b.preds)) {
+                // Si p ya llega a target, las phi necesitarían dos operandos para la misma arista
+                if (target.preds.contains(p) && !target.phis().isEmpty()) continue;
+                if (p.terminator().op == Instr.Op.BR && p.succs().contains(target)) continue;
+                p.replaceSucc(b, target);
+                b.preds.remove(p);
+                target.preds.add(p);
+                for (Instr phi : target.phis()) phi.addArg(phi.args.get(k));
+                changed = true;
+            }
+        }
+        return changed;
+    }
+}
+
+/*
+ * Conversión de if: un if/else cuyas ramas solo calculan el valor de una
+ * misma variable se reemplaza por un select, que la bajada emite como
+ * cmovcc. Sin el salto no hay predicción que fallar, lo que conviene cuando
+ * la condición depende de los datos (máximo, mínimo, valor absoluto):
+ *
+ *   B0: br %c, B1, B2          B0: %a = ...
+ *   B1: %a = ...; jmp B3   ->      %b = ...
+ *   B2: %b = ...; jmp B3           %m = select %c, %a, %b
+ *   B3: %m = phi %a, %b            jmp B3
+ *
+ * También vale la forma de triángulo (una rama vacía salta directo al
+ * bloque de unión). Como las dos ramas pasan a ejecutarse siempre, cada una
+ * puede tener a lo sumo MAX_ARM instrucciones y ninguna con efectos (sin
+ * llamadas ni divisiones que puedan fallar), y la unión tiene una sola phi.
+ */
+class IfConversion implements SsaPass {
+    private static final int MAX_ARM = 1;
+
+    @Override
+    public String name() { return "if-conversion"; }
+
+    @Override
+    public boolean run(IrFunction f) {
+        boolean changed = false;
+        for (Block h : new ArrayList<>(f.blocks)) {
+            if (f.blocks.contains(h)) changed |= convert(f, h);
+        }
+        return changed;
+    }
+
+    private static boolean convert(IrFunction f, Block h) {
+        Instr br = h.terminator();
+        if (br == null || br.op != Instr.Op.BR) return false;
+        Block x = br.targets.get(0);
+        Block y = br.targets.get(1);
+        if (x == y) return false;
+
+        // Bloque de unión y arista por la que llega cada lado
+        Block join;
+        Block fromThen;
+        Block fromElse;
+        if (isArm(h, x) && target(x) == y) {
+            join = y;
+            fromThen = x;
+            fromElse = h;
+        } else if (isArm(h, y) && target(y) == x) {
+            join = x;
+            fromThen = h;
+            fromElse = y;
+        } else if (isArm(h, x) && isArm(h, y) && target(x) == target(y)) {
+            join = target(x);
+            fromThen = x;
+            fromElse = y;
+        } else {
+            return false;
+        }
+        if (join == h || join.preds.size() != 2 || join.phis().size() != 1) return false;
+        Instr phi = join.phis().get(0);
+
+        // Las instrucciones de las ramas pasan a h, antes de la comparación
+        // si no la usan (así sigue pegada al select y se fusiona con él),
+        // pero siempre después de los operandos que se calculan en h
+        Instr c = br.args.get(0);
+        List<Instr> moved = new ArrayList<>();
+        for (Block arm : new Block[] {fromThen, fromElse}) {
+            if (arm == h) continue;
+            for (Instr i : arm.instrs) if (!i.isTerminator()) moved.add(i);
+        }
+        boolean before = c.block == h;
+        for (Instr i : moved) before &= !i.args.contains(c);
+        int at = before ? h.instrs.indexOf(c) : h.instrs.size() - 1;
+        for (Instr i : moved) {
+            for (Instr a : i.args) at = Math.max(at, h.instrs.indexOf(a) + 1);
+        }
+        for (Instr i : moved) {
+            i.block.instrs.remove(i);
+            i.block = h;
+            h.instrs.add(at++, i);
+        }
+
+        Instr sel = f.newInstr(Instr.Op.SELECT);
+        sel.addArg(c);
+        sel.addArg(phi.args.get(join.preds.indexOf(fromThen)));
+        sel.addArg(phi.args.get(join.preds.indexOf(fromElse)));
+        h.append(sel);
+        phi.replaceAllUsesWith(sel);
+        phi.remove();
+
+        br.remove();
+        Instr j = f.newInstr(Instr.Op.JMP);
+        j.targets.add(join);
+        h.append(j);
+        for (Block arm : new Block[] {fromThen, fromElse}) {
+            if (arm == h) continue;
+            for (Instr i : new ArrayList<>(arm.instrs)) i.remove();
+            arm.preds.clear();
+            f.blocks.remove(arm);
+        }
+        join.preds.clear();
+        join.preds.add(h);
+        return true;
+    }
+
+    /** Rama que solo se alcanza desde h, salta a un único sucesor y se puede ejecutar siempre. */
+    private static boolean isArm(Block h, Block b) {
+        if (b == h || b.preds.size() != 1 || b.preds.get(0) != h) return false;
+        Instr t = b.terminator();
+        if (t == null || t.op != Instr.Op.JMP || t.targets.get(0) == b) return false;
+        int n = 0;
+        for (Instr i : b.instrs) {
+            if (i.isTerminator()) continue;
+            if (i.isPhi() || i.hasEffects() || ++n > MAX_ARM) return false;
+        }
+        return true;
+    }
+
+    private static Block target(Block arm) {
+        return arm.terminator().targets.get(0);
+    }
+}
@@ -0,0 +1,111 @@
+import java.util.*;
+
+/* ---------------- Reducción de fuerza para * y / por constante ---------------- */
+
+/*
+ * Secuencias equivalentes a imulq/idivq cuando un operando es una constante.
+ * Todas operan sobre %rax (dividendo o factor) y dejan el resultado en %rax;
+ * solo usan los registros de trabajo %rcx y %rdx.
+ *
+ * La división usa el número mágico de Hacker's Delight (cap. 10): para d
+ * fijo existen M y s tales que n / d = hi(n * M) >> s, corrigiendo con n
+ * cuando el signo de M no coincide con el de d, y sumando 1 si el cociente
+ * es negativo. El resultado trunca hacia cero igual que idivq.
+ */
+class StrengthReducer {
+
+    /** Instrucciones para %rax *= c, o null si imulq es la mejor opción. */
+    static List<Insn> multiply(long c) {
+        List<Insn> out = new ArrayList<>();
+        if (c == 0) {
+            out.add(Insn.op("xorq", "%rax", "%rax"));
+            return out;
+        }
+        long a = Math.abs(c);
+        int shift = Long.numberOfTrailingZeros(a);
+        long odd = a >> shift;
+
+        if (odd == 3 || odd == 5 || odd == 9) {
+            out.add(Insn.op("leaq", "(%rax,%rax," + (odd - 1) + ")", "%rax"));
+        } else if (odd != 1) {
+            return null;
+        }
+        if (shift > 0) out.add(Insn.op("salq", "$" + shift, "%rax"));
+        if (c < 0) out.add(Insn.op("negq", "%rax"));
+        return out;
+    }
+
+    /** Instrucciones para %rax /= d, o null si hay que usar idivq (d == 0). */
+    static List<Insn> divide(long d) {
+        if (d == 0) return null;
+
+        List<Insn> out = new ArrayList<>();
+        long a = Math.abs(d);
+        if (Long.bitCount(a) == 1) {
+            // Potencia de dos: sesgar los negativos por 2^k - 1 antes del corrimiento
+            int k = Long.numberOfTrailingZeros(a);
+            if (k > 0) {
+                out.add(Insn.op("movq", "%rax", "%rcx"));
+                if (k > 1) out.add(Insn.op("sarq", "$63", "%rcx"));
+                out.add(Insn.op("shrq", "$" + (64 - k), "%rcx"));
+                out.add(Insn.op("addq", "%rcx", "%rax"));
+                out.add(Insn.op("sarq", "$" + k, "%rax"));
+            }
+            if (d < 0) out.add(Insn.op("negq", "%rax"));
+            return out;
+        }
+
+        long[] ms = magic(d);
+        long m = ms[0];
+        int s = (int) ms[1];
+        out.add(Insn.op("movq", "%rax", "%rcx"));
+        out.add(Insn.op("movabsq", "$" + m, "%rdx"));
+        out.add(Insn.op("imulq", "%rdx"));                  // %rdx = hi(n * M)
+        if (d > 0 && m < 0) out.add(Insn.op("addq", "%rcx", "%rdx"));
+        if (d < 0 && m > 0) out.add(Insn.op("subq", "%rcx", "%rdx"));
+        out.add(Insn.op("movq", "%rdx", "%rax"));
+        if (s > 0) out.add(Insn.op("sarq", "$" + s, "%rax"));
+        out.add(Insn.op("movq", "%rax", "%rdx"));
+        out.add(Insn.op("shrq", "$63", "%rdx"));
+        out.add(Insn.op("addq", "%rdx", "%rax"));
+        return out;
+    }
+
+    /**
+     * Número mágico y corrimiento para dividir por d (|d| >= 2, no potencia
+     * de dos), algoritmo de Hacker's Delight para palabras de 64 bits. Las
+     * comparaciones son sin signo.
+     */
+    static long[] magic(long d) {
+        final long two63 = Long.MIN_VALUE;      // 2^63 sin signo
+        long ad = Math.abs(d);
+        long t = two63 + (d >>> 63);
+        long anc = t - 1 - Long.remainderUnsigned(t, ad);
+        int p = 63;
+        long q1 = Long.divideUnsigned(two63, anc);
+        long r1 = two63 - q1 * anc;
+        long q2 = Long.divideUnsigned(two63, ad);
+        long r2 = two63 - q2 * ad;
+        long delta;
+        do {
+            p++;
+            q1 <<= 1;
+            r1 <<= 1;
+            if (Long.compareUnsigned(r1, anc) >= 0) {
+                q1++;
+                r1 -= anc;
+            }
+            q2 <<= 1;
+            r2 <<= 1;
+            if (Long.compareUnsigned(r2, ad) >= 0) {
+                q2++;
+                r2 -= ad;
+            }
+            delta = ad - r2;
+        } while (Long.compareUnsigned(q1, delta) < 0 || (q1 == delta && r1 == 0));
+
+        long m = q2 + 1;
+        if (d < 0) m = -m;
+        return new long[] {m, p - 64};
+    }
+}
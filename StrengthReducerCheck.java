@@ -0,0 +1,161 @@
+import java.util.*;
+
+/* ---------------- Verificación de StrengthReducer ---------------- */
+
+/*
+ * Ejecuta las secuencias de StrengthReducer.multiply y divide con un
+ * intérprete chico de las instrucciones que usan (registros de 64 bits
+ * %rax, %rcx y %rdx) y compara cada resultado con * y / de Java, que
+ * truncan hacia cero igual que idivq:
+ *
+ *  - factores y divisores en [-RANGE, RANGE] más SAMPLES valores de 32
+ *    bits al azar
+ *  - dividendos en [-VALUES, VALUES], valores alrededor de los límites de
+ *    int y long y SAMPLES valores de 64 bits al azar
+ *
+ * Uso: java StrengthReducerCheck [semilla]
+ * Termina con código 1 si alguna secuencia no coincide.
+ */
+class StrengthReducerCheck {
+    static final int RANGE = 1100;
+    static final int VALUES = 5000;
+    static final int SAMPLES = 200;
+    private static final int MAX_REPORTED = 10;
+
+    private long rax, rcx, rdx;
+    private long checked = 0;
+    private int failures = 0;
+
+    public static void main(String[] argv) {
+        long seed = argv.length > 0 ? Long.parseLong(argv[0]) : 1;
+        StrengthReducerCheck check = new StrengthReducerCheck();
+        Random rnd = new Random(seed);
+
+        List<Long> constants = new ArrayList<>();
+        for (long c = -RANGE; c <= RANGE; c++) constants.add(c);
+        for (int i = 0; i < SAMPLES; i++) constants.add((long) rnd.nextInt());
+        constants.add((long) Integer.MAX_VALUE);
+        constants.add((long) Integer.MIN_VALUE);
+
+        long[] values = values(rnd);
+        for (long c : constants) {
+            List<Insn> mul = StrengthReducer.multiply(c);
+            if (mul != null) {
+                for (long n : values) check.compare(mul, n, n * c, "* " + c);
+            }
+            List<Insn> div = StrengthReducer.divide(c);
+            if (div != null) {
+                for (long n : values) {
+                    if (n == Long.MIN_VALUE && c == -1) continue;   // idivq falla
+                    check.compare(div, n, n / c, "/ " + c);
+                }
+            }
+        }
+
+        System.out.println("Reducción de fuerza: " + check.checked + " casos, " + check.failures + " errores");
+        if (check.failures > 0) System.exit(1);
+    }
+
+    private static long[] values(Random rnd) {
+        List<Long> out = new ArrayList<>();
+        for (long n = -VALUES; n <= VALUES; n++) out.add(n);
+        long[] limits = {Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE};
+        for (long l : limits) {
+            for (long k = -2; k <= 2; k++) out.add(l + k);
+        }
+        for (int i = 0; i < SAMPLES; i++) out.add(rnd.nextLong());
+        long[] a = new long[out.size()];
+        for (int i = 0; i < a.length; i++) a[i] = out.get(i);
+        return a;
+    }
+
+    private void compare(List<Insn> code, long n, long expected, String what) {
+        rax = n;
+        rcx = 0x5a5a5a5a5a5a5a5aL;      // basura: la secuencia no debe leerlos antes de escribirlos
+        rdx = 0xa5a5a5a5a5a5a5a5L;
+        for (Insn i : code) run(i);
+        checked++;
+        if (rax != expected) {
+            if (++failures <= MAX_REPORTED) {
+                System.out.println(n + " " + what + ": se esperaba " + expected + ", dio " + rax);
+            }
+        }
+    }
+
+    private void run(Insn i) {
+        switch (i.op) {
+            case "movq":
+            case "movabsq":
+                set(i.arg(1), get(i.arg(0)));
+                break;
+            case "xorq":
+                set(i.arg(1), get(i.arg(1)) ^ get(i.arg(0)));
+                break;
+            case "addq":
+                set(i.arg(1), get(i.arg(1)) + get(i.arg(0)));
+                break;
+            case "subq":
+                set(i.arg(1), get(i.arg(1)) - get(i.arg(0)));
+                break;
+            case "negq":
+                set(i.arg(0), -get(i.arg(0)));
+                break;
+            case "salq":
+                set(i.arg(1), get(i.arg(1)) << get(i.arg(0)));
+                break;
+            case "sarq":
+                set(i.arg(1), get(i.arg(1)) >> get(i.arg(0)));
+                break;
+            case "shrq":
+                set(i.arg(1), get(i.arg(1)) >>> get(i.arg(0)));
+                break;
+            case "leaq": {
+                // Solo la forma (%rax,%rax,k)
+                String[] p = i.arg(0).replaceAll("[()]", "").split(",");
+                set(i.arg(1), get(p[0]) + get(p[1]) * Long.parseLong(p[2]));
+                break;
+            }
+            case "imulq": {
+                // Un operando: %rdx:%rax = %rax * operando, con signo
+                long x = get(i.arg(0));
+                long lo = rax * x;
+                rdx = multiplyHigh(rax, x);
+                rax = lo;
+                break;
+            }
+            default:
+                throw new IllegalStateException("Instrucción no soportada: " + i);
+        }
+    }
+
+    /** Parte alta del producto con signo de 128 bits (Math.multiplyHigh no está en Java 8). */
+    static long multiplyHigh(long x, long y) {
+        long x1 = x >> 32, x2 = x & 0xFFFFFFFFL;
+        long y1 = y >> 32, y2 = y & 0xFFFFFFFFL;
+        long z2 = x2 * y2;
+        long t = x1 * y2 + (z2 >>> 32);
+        long z1 = t & 0xFFFFFFFFL;
+        long z0 = t >> 32;
+        z1 += x2 * y1;
+        return x1 * y1 + z0 + (z1 >> 32);
+    }
+
+    private long get(String operand) {
+        if (operand.startsWith("$")) return Long.parseLong(operand.substring(1));
+        switch (operand) {
+            case "%rax": return rax;
+            case "%rcx": return rcx;
+            case "%rdx": return rdx;
+            default: throw new IllegalStateException("Operando no soportado: " + operand);
+        }
+    }
+
+    private void set(String operand, long v) {
+        switch (operand) {
+            case "%rax": rax = v; break;
+            case "%rcx": rcx = v; break;
+            case "%rdx": rdx = v; break;
+            default: throw new IllegalStateException("Destino no soportado: " + operand);
+        }
+    }
+}
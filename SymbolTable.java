@@ -1,16 +1,29 @@
+import java.io.PrintStream;
 import java.util.HashMap;
 import java.util.ArrayList;
 import java.util.List;
 
 class SymbolTable {
     private HashMap<String, SymbolInfo> table = new HashMap<>();
+    private final PrintStream out;
+    private final PrintStream err;
+
+    public SymbolTable() {
+        this(System.out, System.err);
+    }
+
+    /** Los mensajes van a out/err en lugar de la consola compartida. */
+    public SymbolTable(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+    }
 
     public void add(String name, String type) {
         if (table.containsKey(name)) {
-            System.err.println("Error: variable '" + name + "' ya declarada.");
+            err.println("Error: variable '" + name + "' ya declarada.");
         } else {
             table.put(name, new SymbolInfo(name, type));
-            System.out.println("Se agregó '" + name + "' de tipo " + type + " a la tabla de símbolos.");
+            out.println("Se agregó '" + name + "' de tipo " + type + " a la tabla de símbolos.");
         }
     }
 
@@ -21,11 +34,11 @@ class SymbolTable {
     public void assign(String name, Integer value) {
         SymbolInfo s = table.get(name);
         if (s == null) {
-            System.err.println("Error: variable '" + name + "' no declarada.");
+            err.println("Error: variable '" + name + "' no declarada.");
         } else {
             s.setValue(value);
             s.setInitialized(true);
-            System.out.println("Asignación: " + name + " = " + value);
+            out.println("Asignación: " + name + " = " + value);
         }
     }
 
@@ -37,9 +50,9 @@ class SymbolTable {
     }
 
     public void printTable() {
-        System.out.println("Tabla de símbolos:");
+        out.println("Tabla de símbolos:");
         for (SymbolInfo s : table.values()) {
-            System.out.println(s);
+            out.println(s);
         }
     }
 }
@@ -92,16 +105,28 @@ class FunctionInfo {
 
 class SymbolTableBuilder implements ASTVisitor {
     private HashMap<String, FunctionInfo> functions = new HashMap<>();
-    private SymbolTable currentScope = new SymbolTable();
+    private final PrintStream out;
+    private final PrintStream err;
+    private SymbolTable currentScope;
     private String currentFunctionReturnType = null;
     private boolean hasReturn = false;
     private int errorCount = 0;
 
+    public SymbolTableBuilder() {
+        this(System.out, System.err);
+    }
+
+    public SymbolTableBuilder(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+        this.currentScope = new SymbolTable(out, err);
+    }
+
     public int getErrorCount() { return errorCount; }
 
     @Override
     public void visit(ProgramNode node) {
-        System.out.println("=== Fase 1: Registro de funciones ===");
+        out.println("=== Fase 1: Registro de funciones ===");
         
         // Paso 1: Registrar todas las funciones
         if (node.functions != null) {
@@ -114,11 +139,11 @@ class SymbolTableBuilder implements ASTVisitor {
                 }
                 
                 if (functions.containsKey(func.name)) {
-                    System.err.println("Error: función '" + func.name + "' ya declarada.");
+                    err.println("Error: función '" + func.name + "' ya declarada.");
                     errorCount++;
                 } else {
                     functions.put(func.name, new FunctionInfo(func.name, func.returnType, paramTypes));
-                    System.out.println("Registrada función: " + func.returnType + " " + func.name + 
+                    out.println("Registrada función: " + func.returnType + " " + func.name + 
                                      "(" + paramTypes.size() + " parámetros)");
                 }
             }
@@ -126,11 +151,11 @@ class SymbolTableBuilder implements ASTVisitor {
         
         // Verificar que existe main
         if (!functions.containsKey("main")) {
-            System.err.println("Error: No se encontró la función 'main'");
+            err.println("Error: No se encontró la función 'main'");
             errorCount++;
         }
         
-        System.out.println("\n=== Fase 2: Validación semántica de funciones ===");
+        out.println("\n=== Fase 2: Validación semántica de funciones ===");
         
         // Paso 2: Validar cada función
         if (node.functions != null) {
@@ -140,9 +165,9 @@ class SymbolTableBuilder implements ASTVisitor {
         }
         
         if (errorCount == 0) {
-            System.out.println("\n✅ Análisis semántico completado sin errores");
+            out.println("\n✅ Análisis semántico completado sin errores");
         } else {
-            System.err.println("\n❌ Se encontraron " + errorCount + " errores semánticos");
+            err.println("\n❌ Se encontraron " + errorCount + " errores semánticos");
         }
     }
 
@@ -153,10 +178,10 @@ class SymbolTableBuilder implements ASTVisitor {
 
     @Override
     public void visit(FunctionNode node) {
-        System.out.println("\nValidando función: " + node.returnType + " " + node.name + "()");
+        out.println("\nValidando función: " + node.returnType + " " + node.name + "()");
         
         // Crear nuevo scope para la función
-        currentScope = new SymbolTable();
+        currentScope = new SymbolTable(out, err);
         currentFunctionReturnType = node.returnType;
         hasReturn = false;
         
@@ -173,7 +198,7 @@ class SymbolTableBuilder implements ASTVisitor {
         
         // Verificar que funciones int tengan return
         if (node.returnType.equals("int") && !hasReturn) {
-            System.err.println("Error: función '" + node.name + "' de tipo 'int' debe tener al menos un return con valor");
+            err.println("Error: función '" + node.name + "' de tipo 'int' debe tener al menos un return con valor");
             errorCount++;
         }
     }
@@ -212,7 +237,7 @@ class SymbolTableBuilder implements ASTVisitor {
                 if (d.init != null) {
                     String initType = getExprType(d.init);
                     if (!initType.equals("error") && !initType.equals(d.type)) {
-                        System.err.println("Error: no se puede inicializar '" + d.name + 
+                        err.println("Error: no se puede inicializar '" + d.name + 
                                          "' de tipo '" + d.type + "' con expresión de tipo '" + initType + "'");
                         errorCount++;
                     }
@@ -247,12 +272,12 @@ class SymbolTableBuilder implements ASTVisitor {
     public void visit(AssignNode node) {
         SymbolInfo var = currentScope.lookup(node.name);
         if (var == null) {
-            System.err.println("Error: variable '" + node.name + "' no declarada");
+            err.println("Error: variable '" + node.name + "' no declarada");
             errorCount++;
         } else {
             String exprType = getExprType(node.expr);
             if (!exprType.equals("error") && !exprType.equals(var.getType())) {
-                System.err.println("Error: no se puede asignar expresión de tipo '" + exprType + 
+                err.println("Error: no se puede asignar expresión de tipo '" + exprType + 
                                  "' a variable '" + node.name + "' de tipo '" + var.getType() + "'");
                 errorCount++;
             }
@@ -264,7 +289,7 @@ class SymbolTableBuilder implements ASTVisitor {
     public void visit(IfNode node) {
         String condType = getExprType(node.condition);
         if (!condType.equals("error") && !condType.equals("int")) {
-            System.err.println("Error: condición del 'if' debe ser de tipo 'int'");
+            err.println("Error: condición del 'if' debe ser de tipo 'int'");
             errorCount++;
         }
         
@@ -276,7 +301,7 @@ class SymbolTableBuilder implements ASTVisitor {
     public void visit(WhileNode node) {
         String condType = getExprType(node.condition);
         if (!condType.equals("error") && !condType.equals("int")) {
-            System.err.println("Error: condición del 'while' debe ser de tipo 'int'");
+            err.println("Error: condición del 'while' debe ser de tipo 'int'");
             errorCount++;
         }
         
@@ -289,17 +314,17 @@ class SymbolTableBuilder implements ASTVisitor {
         
         if (currentFunctionReturnType.equals("void")) {
             if (node.expr != null) {
-                System.err.println("Error: función 'void' no debe retornar un valor");
+                err.println("Error: función 'void' no debe retornar un valor");
                 errorCount++;
             }
         } else if (currentFunctionReturnType.equals("int")) {
             if (node.expr == null) {
-                System.err.println("Error: función 'int' debe retornar un valor");
+                err.println("Error: función 'int' debe retornar un valor");
                 errorCount++;
             } else {
                 String returnType = getExprType(node.expr);
                 if (!returnType.equals("error") && !returnType.equals("int")) {
-                    System.err.println("Error: return debe ser de tipo 'int', se encontró '" + returnType + "'");
+                    err.println("Error: return debe ser de tipo 'int', se encontró '" + returnType + "'");
                     errorCount++;
                 }
             }
@@ -323,7 +348,7 @@ class SymbolTableBuilder implements ASTVisitor {
     public void visit(IdNode node) {
         SymbolInfo s = currentScope.lookup(node.name);
         if (s == null) {
-            System.err.println("Error: variable '" + node.name + "' no declarada");
+            err.println("Error: variable '" + node.name + "' no declarada");
             errorCount++;
         }
     }
@@ -343,13 +368,13 @@ class SymbolTableBuilder implements ASTVisitor {
             SymbolInfo s = currentScope.lookup(id.name);
 
             if (s == null) {
-                System.err.println("Error: variable '" + id.name + "' no declarada");
+                err.println("Error: variable '" + id.name + "' no declarada");
                 errorCount++;
                 return "error";
             }
 
             if (!s.isInitialized()) {
-                System.err.println("Error: variable '" + id.name + "' puede no haber sido inicializada");
+                err.println("Error: variable '" + id.name + "' puede no haber sido inicializada");
                 errorCount++;
             }
             return s.getType();
@@ -360,14 +385,14 @@ class SymbolTableBuilder implements ASTVisitor {
             FunctionInfo func = functions.get(call.functionName);
             
             if (func == null) {
-                System.err.println("Error: función '" + call.functionName + "' no declarada");
+                err.println("Error: función '" + call.functionName + "' no declarada");
                 errorCount++;
                 return "error";
             }
             
             // Verificar número de argumentos
             if (call.args.size() != func.paramTypes.size()) {
-                System.err.println("Error: función '" + call.functionName + "' espera " + 
+                err.println("Error: función '" + call.functionName + "' espera " + 
                                  func.paramTypes.size() + " argumentos, se pasaron " + call.args.size());
                 errorCount++;
                 return func.returnType;
@@ -379,7 +404,7 @@ class SymbolTableBuilder implements ASTVisitor {
                 String expectedType = func.paramTypes.get(i);
                 
                 if (!argType.equals("error") && !argType.equals(expectedType)) {
-                    System.err.println("Error: argumento " + (i+1) + " de función '" + call.functionName + 
+                    err.println("Error: argumento " + (i+1) + " de función '" + call.functionName + 
                                      "' debe ser de tipo '" + expectedType + "', se pasó '" + argType + "'");
                     errorCount++;
                 }
@@ -395,7 +420,7 @@ class SymbolTableBuilder implements ASTVisitor {
             
             if (!lt.equals("error") && !rt.equals("error")) {
                 if (!lt.equals("int") || !rt.equals("int")) {
-                    System.err.println("Error: operador '" + b.op + "' requiere operandos de tipo 'int'");
+                    err.println("Error: operador '" + b.op + "' requiere operandos de tipo 'int'");
                     errorCount++;
                     return "error";
                 }
@@ -408,7 +433,7 @@ class SymbolTableBuilder implements ASTVisitor {
             String t = getExprType(u.expr);
             
             if (!t.equals("error") && !t.equals("int")) {
-                System.err.println("Error: operador unario '" + u.op + "' requiere operando de tipo 'int'");
+                err.println("Error: operador unario '" + u.op + "' requiere operando de tipo 'int'");
                 errorCount++;
                 return "error";
             }
@@ -0,0 +1,320 @@
+import java.util.*;
+
+/* ---------------- Eliminación de recursión de cola ---------------- */
+
+/*
+ * Transforma la recursión directa en un bucle sobre el mismo AST, para que
+ * tanto el intérprete como el generador x86-64 ejecuten en pila constante.
+ *
+ *   - Llamada de cola:   return f(a1, ..., an);
+ *       se reemplaza por la reasignación de los parámetros y otra vuelta.
+ *   - Acumulador:        return e * f(a1, ..., an);   (o +, en cualquier orden)
+ *       se reemplaza por acc = acc * e; más la reasignación de parámetros,
+ *       y cada "return r" restante pasa a ser "return acc * r".
+ *
+ * El cuerpo transformado queda:
+ *
+ *   { int tco$loop = 1; int tco$acc = <neutro>; <temporales>; <decls izadas>
+ *     while (tco$loop) { tco$loop = 0; <cuerpo> }
+ *     return <valor por defecto>; }
+ *
+ * Los nombres generados llevan '$', que el lexer no acepta en identificadores,
+ * así que no pueden chocar con variables del programa.
+ */
+class TailCallOptimizer implements ASTVisitor {
+    static final String LOOP_VAR = "tco$loop";
+    static final String ACC_VAR = "tco$acc";
+
+    private final List<String> report = new ArrayList<>();
+
+    // Estado de la función que se está transformando
+    private FunctionNode current;
+    private String accOp;
+    private int tempCount;
+    private List<DeclNode> hoisted;
+
+    public List<String> getReport() { return report; }
+
+    @Override
+    public void visit(ProgramNode node) {
+        if (node.functions != null) {
+            for (FunctionNode func : node.functions.functions) {
+                func.accept(this);
+            }
+        }
+    }
+
+    @Override
+    public void visit(FunctionListNode node) { }
+
+    @Override
+    public void visit(FunctionNode node) {
+        current = node;
+
+        // Paso 1: llevar la continuación de cada if a la rama que no retorna,
+        // así toda llamada de cola queda al final de su lista de sentencias
+        sinkContinuations(node.body.stmts);
+
+        // Paso 2: clasificar los returns en posición de cola
+        List<ReturnNode> sites = new ArrayList<>();
+        collectTailReturns(node.body.stmts, sites);
+
+        int tailCalls = 0;
+        Set<String> ops = new HashSet<>();
+        for (ReturnNode r : sites) {
+            if (isSelfCall(r.expr)) {
+                tailCalls++;
+            } else if (accumulatorOp(r.expr) != null) {
+                ops.add(accumulatorOp(r.expr));
+            }
+        }
+
+        // Solo un operador de acumulación por función (+ y * no se combinan)
+        accOp = ops.size() == 1 && node.returnType.equals("int") ? ops.iterator().next() : null;
+        if (tailCalls == 0 && accOp == null) return;
+
+        // Paso 3: reescribir
+        tempCount = 0;
+        hoisted = new ArrayList<>();
+        rewriteBlock(node.body, sites);
+        if (accOp != null) {
+            rewriteBaseReturns(node.body.stmts);
+        }
+
+        DeclListNode decls = new DeclListNode();
+        decls.add(new DeclNode(LOOP_VAR, "int", new NumNode(1)));
+        if (accOp != null) {
+            decls.add(new DeclNode(ACC_VAR, "int", new NumNode(accOp.equals("*") ? 1 : 0)));
+        }
+        for (DeclNode d : hoisted) decls.add(d);
+
+        StmtListNode loopStmts = new StmtListNode();
+        loopStmts.add(new AssignNode(LOOP_VAR, new NumNode(0)));
+        for (StmtNode s : node.body.stmts.stmts) loopStmts.add(s);
+
+        StmtListNode stmts = new StmtListNode();
+        stmts.add(new WhileNode(new IdNode(LOOP_VAR), new BlockNode(new DeclListNode(), loopStmts)));
+        if (node.returnType.equals("int")) {
+            // Caer al final del cuerpo equivale a "return 0"
+            stmts.add(new ReturnNode(accumulate(new NumNode(0))));
+        } else {
+            stmts.add(new ReturnNode(null));
+        }
+
+        node.body = new BlockNode(decls, stmts);
+        report.add(node.name + (accOp != null ? " (acumulador " + accOp + ")" : " (llamada de cola)"));
+    }
+
+    /* ---------- Normalización ---------- */
+
+    private void sinkContinuations(StmtListNode list) {
+        List<StmtNode> stmts = list.stmts;
+        for (int i = 0; i < stmts.size(); i++) {
+            StmtNode s = stmts.get(i);
+            if (s instanceof ReturnNode) {
+                // Lo que sigue a un return es inalcanzable
+                stmts.subList(i + 1, stmts.size()).clear();
+                return;
+            }
+            if (!(s instanceof IfNode) || i == stmts.size() - 1) continue;
+
+            IfNode ifn = (IfNode) s;
+            boolean thenExits = AstUtil.alwaysReturns(ifn.thenBlock);
+            boolean elseExits = ifn.elseBlock != null && AstUtil.alwaysReturns(ifn.elseBlock);
+            if (!thenExits && !elseExits) continue;
+
+            List<StmtNode> rest = new ArrayList<>(stmts.subList(i + 1, stmts.size()));
+            stmts.subList(i + 1, stmts.size()).clear();
+            if (!thenExits) {
+                ifn.thenBlock.stmts.stmts.addAll(rest);
+            } else if (!elseExits) {
+                if (ifn.elseBlock == null) {
+                    ifn.elseBlock = new BlockNode(new DeclListNode(), new StmtListNode());
+                }
+                ifn.elseBlock.stmts.stmts.addAll(rest);
+            }
+        }
+        for (StmtNode s : stmts) {
+            if (s instanceof IfNode) {
+                IfNode ifn = (IfNode) s;
+                sinkContinuations(ifn.thenBlock.stmts);
+                if (ifn.elseBlock != null) sinkContinuations(ifn.elseBlock.stmts);
+            }
+        }
+    }
+
+    private void collectTailReturns(StmtListNode list, List<ReturnNode> sites) {
+        if (list.stmts.isEmpty()) return;
+        StmtNode last = list.stmts.get(list.stmts.size() - 1);
+        if (last instanceof ReturnNode) {
+            sites.add((ReturnNode) last);
+        } else if (last instanceof IfNode) {
+            IfNode ifn = (IfNode) last;
+            collectTailReturns(ifn.thenBlock.stmts, sites);
+            if (ifn.elseBlock != null) collectTailReturns(ifn.elseBlock.stmts, sites);
+        }
+    }
+
+    /* ---------- Clasificación ---------- */
+
+    private boolean isSelfCall(ExprNode e) {
+        return e instanceof CallNode
+            && ((CallNode) e).functionName.equals(current.name)
+            && ((CallNode) e).args.size() == paramCount();
+    }
+
+    private String accumulatorOp(ExprNode e) {
+        if (!(e instanceof BinOpNode)) return null;
+        BinOpNode b = (BinOpNode) e;
+        if (!b.op.equals("+") && !b.op.equals("*")) return null;
+        if (isSelfCall(b.right) && !callsSelf(b.left)) return b.op;
+        if (isSelfCall(b.left) && !callsSelf(b.right)) return b.op;
+        return null;
+    }
+
+    private boolean callsSelf(ExprNode e) {
+        if (e instanceof CallNode) {
+            CallNode c = (CallNode) e;
+            if (c.functionName.equals(current.name)) return true;
+            for (ExprNode a : c.args) if (callsSelf(a)) return true;
+        } else if (e instanceof BinOpNode) {
+            return callsSelf(((BinOpNode) e).left) || callsSelf(((BinOpNode) e).right);
+        } else if (e instanceof UnaryOpNode) {
+            return callsSelf(((UnaryOpNode) e).expr);
+        }
+        return false;
+    }
+
+    private int paramCount() {
+        return current.params == null ? 0 : current.params.params.size();
+    }
+
+    /* ---------- Reescritura ---------- */
+
+    private void rewriteBlock(BlockNode block, List<ReturnNode> sites) {
+        // Las declaraciones se izan al inicio de la función; las que tienen
+        // inicialización se convierten en asignaciones en su lugar original
+        List<StmtNode> out = new ArrayList<>();
+        if (block.decls != null) {
+            for (DeclNode d : block.decls.decls) {
+                hoisted.add(new DeclNode(d.name, d.type));
+                if (d.init != null) out.add(new AssignNode(d.name, d.init));
+            }
+            block.decls = new DeclListNode();
+        }
+
+        for (StmtNode s : block.stmts.stmts) {
+            if (s instanceof ReturnNode && sites.contains(s)) {
+                ExprNode e = ((ReturnNode) s).expr;
+                if (isSelfCall(e)) {
+                    emitJump(out, (CallNode) e, null);
+                    continue;
+                }
+                if (accOp != null && accOp.equals(accumulatorOp(e))) {
+                    BinOpNode b = (BinOpNode) e;
+                    boolean callOnRight = isSelfCall(b.right) && !callsSelf(b.left);
+                    emitJump(out, (CallNode) (callOnRight ? b.right : b.left), callOnRight ? b.left : b.right);
+                    continue;
+                }
+            } else if (s instanceof IfNode) {
+                IfNode ifn = (IfNode) s;
+                rewriteBlock(ifn.thenBlock, sites);
+                if (ifn.elseBlock != null) rewriteBlock(ifn.elseBlock, sites);
+            } else if (s instanceof WhileNode) {
+                rewriteBlock(((WhileNode) s).body, sites);
+            }
+            out.add(s);
+        }
+        block.stmts.stmts = out;
+    }
+
+    /** Reemplaza "return f(args)" por la reasignación de parámetros y otra vuelta del bucle. */
+    private void emitJump(List<StmtNode> out, CallNode call, ExprNode accTerm) {
+        if (accTerm != null) {
+            out.add(new AssignNode(ACC_VAR, new BinOpNode(accOp, new IdNode(ACC_VAR), accTerm)));
+        }
+
+        // Solo hacen falta los parámetros que cambian
+        List<String> names = new ArrayList<>();
+        List<ExprNode> values = new ArrayList<>();
+        for (int i = 0; i < call.args.size(); i++) {
+            String p = current.params.params.get(i).name;
+            ExprNode a = call.args.get(i);
+            if (a instanceof IdNode && ((IdNode) a).name.equals(p)) continue;
+            names.add(p);
+            values.add(a);
+        }
+
+        // Todos los argumentos se evalúan antes de modificar cualquier parámetro:
+        // los primeros n-1 van a temporales y el último se asigna directo
+        List<String> temps = new ArrayList<>();
+        for (int i = 0; i < names.size() - 1; i++) {
+            String t = "tco$arg" + (tempCount++);
+            hoisted.add(new DeclNode(t, "int"));
+            temps.add(t);
+            out.add(new AssignNode(t, values.get(i)));
+        }
+        if (!names.isEmpty()) {
+            out.add(new AssignNode(names.get(names.size() - 1), values.get(values.size() - 1)));
+        }
+        for (int i = 0; i < temps.size(); i++) {
+            out.add(new AssignNode(names.get(i), new IdNode(temps.get(i))));
+        }
+        out.add(new AssignNode(LOOP_VAR, new NumNode(1)));
+    }
+
+    private void rewriteBaseReturns(StmtListNode list) {
+        for (StmtNode s : list.stmts) {
+            if (s instanceof ReturnNode) {
+                ReturnNode r = (ReturnNode) s;
+                if (r.expr != null) r.expr = accumulate(r.expr);
+            } else if (s instanceof IfNode) {
+                IfNode ifn = (IfNode) s;
+                rewriteBaseReturns(ifn.thenBlock.stmts);
+                if (ifn.elseBlock != null) rewriteBaseReturns(ifn.elseBlock.stmts);
+            } else if (s instanceof WhileNode) {
+                rewriteBaseReturns(((WhileNode) s).body.stmts);
+            }
+        }
+    }
+
+    private ExprNode accumulate(ExprNode e) {
+        if (accOp == null) return e;
+        // acc * 1 y acc + 0 se reducen a acc
+        if (e instanceof NumNode && ((NumNode) e).value == (accOp.equals("*") ? 1 : 0)) {
+            return new IdNode(ACC_VAR);
+        }
+        return new BinOpNode(accOp, new IdNode(ACC_VAR), e);
+    }
+
+    @Override
+    public void visit(ParamListNode node) { }
+    @Override
+    public void visit(ParamNode node) { }
+    @Override
+    public void visit(BlockNode node) { }
+    @Override
+    public void visit(DeclListNode node) { }
+    @Override
+    public void visit(DeclNode node) { }
+    @Override
+    public void visit(StmtListNode node) { }
+    @Override
+    public void visit(AssignNode node) { }
+    @Override
+    public void visit(IfNode node) { }
+    @Override
+    public void visit(WhileNode node) { }
+    @Override
+    public void visit(ReturnNode node) { }
+    @Override
+    public void visit(BinOpNode node) { }
+    @Override
+    public void visit(UnaryOpNode node) { }
+    @Override
+    public void visit(NumNode node) { }
+    @Override
+    public void visit(IdNode node) { }
+    @Override
+    public void visit(CallNode node) { }
+}
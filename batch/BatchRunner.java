@@ -0,0 +1,114 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/* ---------------- Ejecución por lotes en hilos virtuales ---------------- */
+
+/*
+ * Corre muchos programas Mini (o el mismo programa con distintas entradas)
+ * en paralelo. Cada trabajo comparte el CompiledProgram y crea su propia
+ * Execution, así que no hay estado mutable compartido entre hilos.
+ *
+ * Uso: java BatchRunner [archivo] [ejecuciones] [concurrencia máxima]
+ * Mide ejecuciones por segundo de main() con concurrencia 1, 2, 4, ...
+ *
+ * Los hilos virtuales piden JDK 21, así que este archivo queda fuera del
+ * build principal (que compila con JDK 8) y se compila aparte sobre las
+ * clases del compilador (ver README).
+ */
+class BatchRunner {
+
+    static final class Job {
+        final CompiledProgram program;
+        final String function;
+        final int[] args;
+
+        Job(CompiledProgram program, String function, int... args) {
+            this.program = program;
+            this.function = function;
+            this.args = args;
+        }
+    }
+
+    /**
+     * Ejecuta cada trabajo en su propio hilo virtual, con a lo sumo
+     * `concurrency` ejecuciones simultáneas. Devuelve los resultados en orden.
+     */
+    static int[] runAll(List<Job> jobs, int concurrency) throws InterruptedException {
+        int[] results = new int[jobs.size()];
+        Semaphore permits = new Semaphore(concurrency);
+        List<Future<?>> pending = new ArrayList<>(jobs.size());
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < jobs.size(); i++) {
+                final int idx = i;
+                final Job job = jobs.get(i);
+                pending.add(executor.submit(() -> {
+                    permits.acquireUninterruptibly();
+                    try {
+                        Execution exec = new Execution(job.program);
+                        results[idx] = exec.call(job.function, job.args);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+            for (Future<?> f : pending) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    throw new RuntimeException("Falló una ejecución del lote: " + e.getCause().getMessage(), e.getCause());
+                }
+            }
+        }
+        return results;
+    }
+
+    /** Parsing, análisis semántico y las mismas transformaciones que Main, sin salida por consola. */
+    static CompiledProgram compileFile(String path) throws Exception {
+        ProgramNode root;
+        try (Reader in = new FileReader(path)) {
+            root = (ProgramNode) new parser(new Lexer(in)).parse().value;
+        }
+
+        PrintStream quiet = new PrintStream(OutputStream.nullOutputStream());
+        SymbolTableBuilder stb = new SymbolTableBuilder(quiet, System.err);
+        root.accept(stb);
+        if (stb.getErrorCount() > 0) {
+            throw new RuntimeException(path + ": " + stb.getErrorCount() + " errores semánticos");
+        }
+
+        Main.optimize(root, new String[0], quiet);
+        return CompiledProgram.compile(root, false, false);
+    }
+
+    public static void main(String[] argv) throws Exception {
+        String file = argv.length > 0 ? argv[0] : "test.txt";
+        int runs = argv.length > 1 ? Integer.parseInt(argv[1]) : 20000;
+        int maxConcurrency = argv.length > 2 ? Integer.parseInt(argv[2])
+                                             : 4 * Runtime.getRuntime().availableProcessors();
+
+        CompiledProgram program = compileFile(file);
+        List<Job> jobs = new ArrayList<>(runs);
+        for (int i = 0; i < runs; i++) jobs.add(new Job(program, "main"));
+
+        // Calentamiento del JIT antes de medir
+        runAll(jobs, maxConcurrency);
+
+        System.out.println("\n=== Rendimiento por lotes: " + file + " (" + runs + " ejecuciones de main) ===");
+        System.out.println(String.format("%12s %16s %10s", "Concurrencia", "Ejecuciones/s", "Speedup"));
+        double base = 0;
+        for (int c = 1; c <= maxConcurrency; c *= 2) {
+            long start = System.nanoTime();
+            int[] results = runAll(jobs, c);
+            double secs = (System.nanoTime() - start) / 1e9;
+
+            for (int r : results) {
+                if (r != results[0]) throw new IllegalStateException("Resultados distintos entre ejecuciones");
+            }
+            double rate = runs / secs;
+            if (c == 1) base = rate;
+            System.out.println(String.format("%12d %16.0f %9.2fx", c, rate, rate / base));
+        }
+    }
+}
@@ -15,7 +15,9 @@ echo [3] Ejecutar compilador (test.txt)
 echo [4] Todo (1+2+3)
 echo [5] Ver program.asm
 echo [6] Limpiar archivos generados
-echo [7] Salir
+echo [7] Compilar ejecución por lotes (BatchRunner, JDK 21+)
+echo [8] Verificar reducción de fuerza (StrengthReducerCheck)
+echo [9] Salir
 echo.
 set /p opcion="Opción: "
 
@@ -25,7 +27,9 @@ if "%opcion%"=="3" goto ejecutar
 if "%opcion%"=="4" goto todo
 if "%opcion%"=="5" goto ver_asm
 if "%opcion%"=="6" goto limpiar
-if "%opcion%"=="7" goto salir
+if "%opcion%"=="7" goto lotes
+if "%opcion%"=="8" goto verificar
+if "%opcion%"=="9" goto salir
 goto menu
 
 :generar
@@ -148,6 +152,36 @@ echo.
 pause
 goto menu
 
+:lotes
+echo.
+echo Compilando BatchRunner (requiere JDK 21+ y el proyecto ya compilado)...
+javac -cp ".;java-cup-11b-runtime.jar" batch/BatchRunner.java -d .
+if errorlevel 1 (
+    echo ERROR: Fallo al compilar BatchRunner
+    pause
+    goto menu
+)
+
+echo.
+echo ✅ BatchRunner compilado. Uso: java -cp ".;java-cup-11b-runtime.jar" BatchRunner test.txt 20000 16
+echo.
+pause
+goto menu
+
+:verificar
+echo.
+echo Comparando las secuencias de * y / por constante con la aritmética de Java...
+java -cp . StrengthReducerCheck
+if errorlevel 1 (
+    echo ERROR: StrengthReducer generó secuencias incorrectas
+    pause
+    goto menu
+)
+
+echo.
+pause
+goto menu
+
 :salir
 echo.
 echo Saliendo...